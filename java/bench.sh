@@ -0,0 +1,10 @@
+#! /bin/bash
+DBNAME=$USER"_DB"
+PORT=$PGPORT
+USER=$USER
+
+# Example: source ./bench.sh -t 4 'MenuBenchmark.list.*'
+# arguments: JMH options and benchmark name patterns (default every menu operation), see java -jar ../jmh/target/benchmarks.jar -h
+# build first with: mvn -B package (from the project root)
+# write the results to a csv with: source ./bench.sh -rf csv -rff bench.csv
+java $JAVA_OPTS -Ddbproject.db=$DBNAME -Ddbproject.port=$PORT -Ddbproject.user=$USER -jar ../jmh/target/benchmarks.jar "$@"
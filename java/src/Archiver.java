@@ -0,0 +1,169 @@
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class moves past (PA) appointments older than a cutoff, with their
+ * has_appointment, searches and schedules rows, to the archive tables of
+ * migration V005, in batches of one transaction each.  The archived rows
+ * keep counting in Q7 and Q8 when the clerk asks for the archive, through
+ * the archive counters updated in the same transaction.
+ *
+ * Settings of the background job: -Ddbproject.archive.intervalSec (default
+ * 0, no background job), -Ddbproject.archive.afterDays (default 365) and
+ * -Ddbproject.archive.batchSize (default 1000).
+ */
+
+public class Archiver {
+    public static final int DEFAULT_AFTER_DAYS = 365;
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    //the oldest PA rows first, rows locked by a concurrent archiver are left to it
+    static final String PICK_BATCH =
+            "select appnt_id, extract(year from adate)::int from appointment where status = 'PA' and adate < ?::date" +
+            " order by adate, appnt_id limit ? for update skip locked;";
+    //the V002 counters of the batch, before the triggers of the deletes below take them off the live counters
+    static final String ARCHIVE_DOCTOR_COUNTS =
+            "insert into doctor_status_counts_archive (doctor_id, status, n)" +
+            " select h.doctor_id, coalesce(a.status, ''), count(*) from appointment a join has_appointment h on a.appnt_id = h.appt_id" +
+            " where a.appnt_id = any(?) group by 1, 2 order by 1, 2" +
+            " on conflict (doctor_id, status) do update set n = doctor_status_counts_archive.n + excluded.n;";
+    static final String ARCHIVE_HOSPITAL_COUNTS =
+            "insert into doctor_hospital_status_counts_archive (doctor_id, hid, status, n)" +
+            " select h.doctor_id, s.hid, coalesce(a.status, ''), count(*) from appointment a join has_appointment h on a.appnt_id = h.appt_id" +
+            " join searches s on s.aid = a.appnt_id where a.appnt_id = any(?) group by 1, 2, 3 order by 1, 2, 3" +
+            " on conflict (doctor_id, hid, status) do update set n = doctor_hospital_status_counts_archive.n + excluded.n;";
+    /*
+     * One statement per table, referencing rows first.  The V002 triggers of
+     * searches and has_appointment join the rows still in place, so each
+     * pair is taken off the live counters exactly once.
+     */
+    static final String MOVE_SEARCHES =
+            "with moved as (delete from searches where aid = any(?) returning hid, pid, aid)" +
+            " insert into searches_archive (hid, pid, aid) select hid, pid, aid from moved;";
+    static final String MOVE_SCHEDULES =
+            "with moved as (delete from schedules where appt_id = any(?) returning appt_id, staff_id)" +
+            " insert into schedules_archive (appt_id, staff_id) select appt_id, staff_id from moved;";
+    static final String MOVE_HAS_APPOINTMENT =
+            "with moved as (delete from has_appointment h using appointment a where a.appnt_id = h.appt_id and h.appt_id = any(?)" +
+            " returning h.appt_id, h.doctor_id, a.adate)" +
+            " insert into has_appointment_archive (appt_id, doctor_id, adate) select appt_id, doctor_id, adate from moved;";
+    static final String MOVE_APPOINTMENT =
+            "with moved as (delete from appointment where appnt_id = any(?) returning appnt_id, adate, time_slot, status)" +
+            " insert into appointment_archive (appnt_ID, adate, time_slot, status) select appnt_id, adate, time_slot, status from moved;";
+
+    //years whose archive partitions exist, shared by every archiver of the JVM
+    private static final Set<Integer> _partitions = ConcurrentHashMap.newKeySet();
+    private static ScheduledExecutorService _job = null;
+
+    private final DBproject _esql;
+    private final int _batchSize;
+
+    public Archiver(DBproject esql, int batchSize) {
+        this._esql = esql;
+        this._batchSize = batchSize;
+    }
+
+    /**
+     * Method to archive every PA appointment dated before the cutoff.
+     *
+     * @return the number of appointments archived
+     * @throws java.sql.SQLException when a batch failed, it is rolled back
+     */
+    public long archiveBefore(LocalDate cutoff) throws SQLException {
+        long total = 0;
+        int moved;
+        do {
+            moved = archiveBatch(cutoff);
+            total += moved;
+            // hand the connection back between batches, so a long run does not hold one
+            this._esql.release();
+        } while (moved == this._batchSize);
+        return total;
+    }
+
+    /**
+     * Method to archive one batch of PA appointments dated before the
+     * cutoff, in one transaction.
+     *
+     * @return the number of appointments archived
+     * @throws java.sql.SQLException when the batch failed, it is rolled back
+     */
+    public int archiveBatch(LocalDate cutoff) throws SQLException {
+        Connection conn = this._esql.getConnection();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            List<List<String>> rows = this._esql.executeQueryAndReturnResult(PICK_BATCH, cutoff.toString(), this._batchSize);
+            if (rows.isEmpty()) {
+                conn.commit();
+                return 0;
+            }
+            int[] ids = new int[rows.size()];
+            Set<Integer> created = new HashSet<Integer>();
+            for (int i = 0; i < ids.length; ++i) {
+                ids[i] = Integer.parseInt(rows.get(i).get(0));
+                int year = Integer.parseInt(rows.get(i).get(1));
+                if (!_partitions.contains(year) && created.add(year)) createPartitions(year);
+            }
+            // the six statements in one round trip, in order
+            Object[] batch = new Object[]{this._esql.createIntArray(ids)};
+            this._esql.executePipelined(Arrays.asList(ARCHIVE_DOCTOR_COUNTS, ARCHIVE_HOSPITAL_COUNTS, MOVE_SEARCHES,
+                    MOVE_SCHEDULES, MOVE_HAS_APPOINTMENT, MOVE_APPOINTMENT), Collections.nCopies(6, batch));
+            conn.commit();
+            // only now, a rollback drops the partitions again
+            _partitions.addAll(created);
+            return ids.length;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    //creates the year's partition of both partitioned archive tables
+    private void createPartitions(int year) throws SQLException {
+        String bounds = " FOR VALUES FROM ('" + year + "-01-01') TO ('" + (year + 1) + "-01-01');";
+        this._esql.executeUpdate("CREATE TABLE IF NOT EXISTS appointment_archive_y" + year + " PARTITION OF appointment_archive" + bounds);
+        this._esql.executeUpdate("CREATE TABLE IF NOT EXISTS has_appointment_archive_y" + year + " PARTITION OF has_appointment_archive" + bounds);
+    }
+
+    /**
+     * Method to start the background job, if -Ddbproject.archive.intervalSec
+     * is set, on a daemon thread with its own session of the pool.
+     */
+    public static synchronized void start(final ConnectionPool pool, final PrintStream err) {
+        long interval = Long.getLong("dbproject.archive.intervalSec", 0);
+        if (interval <= 0 || _job != null) return;
+        final int afterDays = Integer.getInteger("dbproject.archive.afterDays", DEFAULT_AFTER_DAYS);
+        final int batchSize = Integer.getInteger("dbproject.archive.batchSize", DEFAULT_BATCH_SIZE);
+        _job = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        _job.scheduleWithFixedDelay(() -> {
+            DBproject esql = new DBproject(pool, null, err, err);
+            esql.beginOperation("Archiver");
+            try {
+                new Archiver(esql, batchSize).archiveBefore(LocalDate.now().minusDays(afterDays));
+            } catch (SQLException e) {
+                err.println("Archiver: " + e.getMessage());
+            } finally {
+                esql.endOperation();
+                esql.release();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+}
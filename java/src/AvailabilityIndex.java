@@ -0,0 +1,375 @@
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * This class keeps the AV appointments linked to a doctor in memory, by
+ * department and date, for Q6 and the next available slots lookup.  Every
+ * (department, day) holds an immutable sorted array of appointment ids and
+ * their time slots, so lookups never lock and never touch the database.
+ *
+ * The index is loaded when the listener starts and then follows the
+ * 'availability' channel of migration V003, which reports every committed
+ * change made by any session, in commit order.  The index changes only
+ * through the channel; the writers of this JVM call changed() after their
+ * commit, so the listener reads the channel at once instead of at the end
+ * of the poll interval.  Until the first load finishes, and while
+ * migration V003 is not applied, isReady() is false and callers use SQL.
+ */
+
+public class AvailabilityIndex {
+    public static final String CHANNEL = "availability";
+    public static final long DEFAULT_POLL_MS = 500;
+
+    static final String LOAD =
+            "select d.did, a.appnt_id, a.adate, a.time_slot from appointment a" +
+            " join has_appointment h on h.appt_id = a.appnt_id join doctor d on d.doctor_ID = h.doctor_id" +
+            " where a.status = 'AV';";
+    //whether the triggers of migration V003 feed the channel, without them the index would never change
+    static final String HAS_FEED =
+            "select exists (select 1 from pg_trigger where tgfoid = to_regprocedure('availability_updated()'));";
+
+    /**
+     * An available appointment.
+     */
+    public static final class Slot {
+        public final int id;
+        public final LocalDate date;
+        public final String timeSlot;
+
+        Slot(int id, LocalDate date, String timeSlot) {
+            this.id = id;
+            this.date = date;
+            this.timeSlot = timeSlot;
+        }
+    }
+
+    //the available appointments of one department on one day, sorted by start time and id
+    private static final class Day {
+        static final Day EMPTY = new Day(new int[0], new String[0]);
+
+        final int[] ids;
+        final String[] slots;
+
+        Day(int[] ids, String[] slots) {
+            this.ids = ids;
+            this.slots = slots;
+        }
+
+        private int position(int id, String slot) {
+            int lo = 0, hi = this.ids.length;
+            int start = startMinute(slot);
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = Integer.compare(startMinute(this.slots[mid]), start);
+                if (c == 0) c = Integer.compare(this.ids[mid], id);
+                if (c < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        Day with(int id, String slot) {
+            if (indexOf(id) >= 0) return this;
+            int at = position(id, slot);
+            int[] ids = new int[this.ids.length + 1];
+            String[] slots = new String[ids.length];
+            System.arraycopy(this.ids, 0, ids, 0, at);
+            System.arraycopy(this.slots, 0, slots, 0, at);
+            ids[at] = id;
+            slots[at] = slot;
+            System.arraycopy(this.ids, at, ids, at + 1, this.ids.length - at);
+            System.arraycopy(this.slots, at, slots, at + 1, this.slots.length - at);
+            return new Day(ids, slots);
+        }
+
+        Day without(int id) {
+            int at = indexOf(id);
+            if (at < 0) return this;
+            int[] ids = new int[this.ids.length - 1];
+            String[] slots = new String[ids.length];
+            System.arraycopy(this.ids, 0, ids, 0, at);
+            System.arraycopy(this.slots, 0, slots, 0, at);
+            System.arraycopy(this.ids, at + 1, ids, at, ids.length - at);
+            System.arraycopy(this.slots, at + 1, slots, at, slots.length - at);
+            return new Day(ids, slots);
+        }
+
+        private int indexOf(int id) {
+            for (int i = 0; i < this.ids.length; ++i)
+                if (this.ids[i] == id) return i;
+            return -1;
+        }
+    }
+
+    private volatile ConcurrentSkipListMap<Long, Day> _days = new ConcurrentSkipListMap<Long, Day>();
+    private volatile boolean _ready = false;
+    private volatile boolean _stopped = false;
+    private Thread _listener = null;
+    //released by changed(), ends the wait of the listener before the poll interval is up
+    private final Semaphore _changed = new Semaphore(0);
+
+    //department in the high half, the day in the low half, so a department's days are contiguous and ordered
+    private static long key(int dept, long epochDay) {
+        return ((long) dept << 32) | ((epochDay - Integer.MIN_VALUE) & 0xffffffffL);
+    }
+
+    private static long epochDay(long key) {
+        return (key & 0xffffffffL) + Integer.MIN_VALUE;
+    }
+
+    //minutes after midnight of the start of a slot, unparsable slots sort last
+    static int startMinute(String slot) {
+        TimeSlot parsed = TimeSlot.parse(slot);
+        return parsed == null ? Integer.MAX_VALUE : parsed.getStart();
+    }
+
+    public boolean isReady() {
+        return this._ready;
+    }
+
+    /**
+     * Method to wake the listener after this JVM committed a change to the
+     * availability, so the change shows without waiting for the next poll.
+     */
+    public void changed() {
+        this._changed.release();
+    }
+
+    //an appointment of a department became available
+    private synchronized void add(int dept, LocalDate date, int id, String slot) {
+        long key = key(dept, date.toEpochDay());
+        Day day = this._days.get(key);
+        this._days.put(key, (day == null ? Day.EMPTY : day).with(id, slot == null ? "" : slot));
+    }
+
+    //an appointment of a department is no longer available
+    private synchronized void remove(int dept, LocalDate date, int id) {
+        long key = key(dept, date.toEpochDay());
+        Day day = this._days.get(key);
+        if (day == null) return;
+        day = day.without(id);
+        if (day.ids.length == 0) this._days.remove(key);
+        else this._days.put(key, day);
+    }
+
+    /**
+     * Method to list the available appointments of the departments on a day.
+     */
+    public List<Slot> available(int[] depts, LocalDate date) {
+        List<Slot> slots = new ArrayList<Slot>();
+        ConcurrentSkipListMap<Long, Day> days = this._days;
+        for (int dept : depts) {
+            Day day = days.get(key(dept, date.toEpochDay()));
+            if (day == null) continue;
+            for (int i = 0; i < day.ids.length; ++i)
+                slots.add(new Slot(day.ids[i], date, day.slots[i]));
+        }
+        return slots;
+    }
+
+    /**
+     * Method to list the first n available appointments of the departments
+     * on or after a day, in date and start time order.
+     */
+    public List<Slot> next(int[] depts, LocalDate from, int n) {
+        ConcurrentSkipListMap<Long, Day> days = this._days;
+        // one cursor over the days of every department, merged by day
+        PriorityQueue<Map.Entry<Long, Day>> heads = new PriorityQueue<Map.Entry<Long, Day>>(
+                Math.max(1, depts.length), (a, b) -> Long.compare(epochDay(a.getKey()), epochDay(b.getKey())));
+        Map<Map.Entry<Long, Day>, Iterator<Map.Entry<Long, Day>>> cursors = new HashMap<Map.Entry<Long, Day>, Iterator<Map.Entry<Long, Day>>>();
+        for (int dept : depts) {
+            NavigableMap<Long, Day> tail = days.subMap(key(dept, from.toEpochDay()), true, key(dept, Integer.MAX_VALUE), true);
+            Iterator<Map.Entry<Long, Day>> it = tail.entrySet().iterator();
+            if (!it.hasNext()) continue;
+            Map.Entry<Long, Day> head = it.next();
+            cursors.put(head, it);
+            heads.add(head);
+        }
+        List<Slot> slots = new ArrayList<Slot>();
+        while (slots.size() < n && !heads.isEmpty()) {
+            long epochDay = epochDay(heads.peek().getKey());
+            // the same day of several departments is merged by start time
+            List<Slot> sameDay = new ArrayList<Slot>();
+            while (!heads.isEmpty() && epochDay(heads.peek().getKey()) == epochDay) {
+                Map.Entry<Long, Day> head = heads.poll();
+                Day day = head.getValue();
+                LocalDate date = LocalDate.ofEpochDay(epochDay);
+                for (int i = 0; i < day.ids.length; ++i)
+                    sameDay.add(new Slot(day.ids[i], date, day.slots[i]));
+                Iterator<Map.Entry<Long, Day>> it = cursors.remove(head);
+                if (it.hasNext()) {
+                    Map.Entry<Long, Day> next = it.next();
+                    cursors.put(next, it);
+                    heads.add(next);
+                }
+            }
+            sameDay.sort((a, b) -> {
+                int c = Integer.compare(startMinute(a.timeSlot), startMinute(b.timeSlot));
+                return c != 0 ? c : Integer.compare(a.id, b.id);
+            });
+            for (Slot slot : sameDay) {
+                if (slots.size() == n) break;
+                slots.add(slot);
+            }
+        }
+        return slots;
+    }
+
+    /*
+     * Rebuilds the index from the database and swaps it in.  Changes
+     * applied meanwhile to the old index come again from the channel.
+     * Without the feed of migration V003 the index is emptied and stays
+     * off, and false is returned.
+     */
+    private boolean load(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(HAS_FEED)) {
+            if (!rs.next() || !rs.getBoolean(1)) {
+                this._ready = false;
+                synchronized (this) {
+                    this._days = new ConcurrentSkipListMap<Long, Day>();
+                }
+                return false;
+            }
+        }
+        Map<Long, List<Slot>> byKey = new HashMap<Long, List<Slot>>();
+        Map<Long, Integer> depts = new HashMap<Long, Integer>();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(10000);
+            try (ResultSet rs = stmt.executeQuery(LOAD)) {
+                while (rs.next()) {
+                    LocalDate date = rs.getDate(3).toLocalDate();
+                    long key = key(rs.getInt(1), date.toEpochDay());
+                    List<Slot> slots = byKey.get(key);
+                    if (slots == null) {
+                        slots = new ArrayList<Slot>();
+                        byKey.put(key, slots);
+                        depts.put(key, rs.getInt(1));
+                    }
+                    String slot = rs.getString(4);
+                    slots.add(new Slot(rs.getInt(2), date, slot == null ? "" : slot.intern()));
+                }
+            }
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        ConcurrentSkipListMap<Long, Day> days = new ConcurrentSkipListMap<Long, Day>();
+        for (Map.Entry<Long, List<Slot>> entry : byKey.entrySet()) {
+            Slot[] slots = entry.getValue().toArray(new Slot[0]);
+            Arrays.sort(slots, (a, b) -> {
+                int c = Integer.compare(startMinute(a.timeSlot), startMinute(b.timeSlot));
+                return c != 0 ? c : Integer.compare(a.id, b.id);
+            });
+            int[] ids = new int[slots.length];
+            String[] times = new String[slots.length];
+            for (int i = 0; i < slots.length; ++i) {
+                ids[i] = slots[i].id;
+                times[i] = slots[i].timeSlot;
+            }
+            days.put(entry.getKey(), new Day(ids, times));
+        }
+        synchronized (this) {
+            this._days = days;
+        }
+        this._ready = true;
+        return true;
+    }
+
+    //applies one message of the channel, see migration V003
+    private void apply(String payload) {
+        String[] parts = payload.split(",", 5);
+        if (parts.length < 4) return;
+        int id = Integer.parseInt(parts[1]);
+        int dept = Integer.parseInt(parts[2]);
+        LocalDate date = LocalDate.parse(parts[3]);
+        if (parts[0].equals("+")) add(dept, date, id, parts.length > 4 ? parts[4].intern() : "");
+        else remove(dept, date, id);
+    }
+
+    /**
+     * Method to start the daemon thread that loads the index and follows
+     * the change channel on a dedicated connection.  The driver only reads
+     * notifications that arrive with a query result, so the thread sends an
+     * empty query every poll interval, or as soon as changed() is called.
+     * Without migration V003 it looks for the feed again every poll
+     * interval.  After a connection failure it reconnects and loads the
+     * index again, since changes were missed.
+     *
+     * @param pool   the pool the dedicated connection is opened through
+     * @param pollMs the poll interval, e.g. DEFAULT_POLL_MS
+     * @param err    where connection failures are reported
+     */
+    public synchronized void start(final ConnectionPool pool, final long pollMs, final PrintStream err) {
+        if (this._listener != null) return;
+        this._listener = new Thread(() -> {
+            while (!this._stopped) {
+                try (Connection conn = pool.openDedicated()) {
+                    PGConnection pg = conn.unwrap(PGConnection.class);
+                    try (Statement stmt = conn.createStatement()) {
+                        // listen first, so no change committed after the load is missed
+                        stmt.execute("LISTEN " + CHANNEL);
+                        boolean fed = load(conn);
+                        if (!fed) err.println("Availability index: migration V003 is not applied, options 6 and 11 answer from SQL");
+                        while (!this._stopped) {
+                            stmt.execute("SELECT 1");
+                            PGNotification[] notifications = pg.getNotifications();
+                            boolean reload = false;
+                            if (notifications != null) {
+                                for (PGNotification n : notifications) {
+                                    if (n.getParameter().equals("reload")) reload = true;
+                                    else if (!reload) apply(n.getParameter());
+                                }
+                            }
+                            // a missing feed is looked for again, e.g. after -migrate
+                            if (reload || !this._ready) fed = load(conn);
+                            // the changes of several writers are read with one query
+                            this._changed.tryAcquire(pollMs, TimeUnit.MILLISECONDS);
+                            this._changed.drainPermits();
+                        }
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    // changes are missed until the reload, callers use SQL meanwhile
+                    this._ready = false;
+                    err.println("Availability index: " + e.getMessage() + ", reconnecting");
+                    try {
+                        Thread.sleep(Math.max(pollMs, 1000));
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "availability-index");
+        this._listener.setDaemon(true);
+        this._listener.start();
+    }
+
+    /**
+     * Method to stop the listener thread.
+     */
+    public synchronized void stop() {
+        this._stopped = true;
+        if (this._listener != null) this._listener.interrupt();
+    }
+}
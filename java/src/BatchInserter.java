@@ -0,0 +1,205 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is the batch variant of AddDoctor, AddPatient and
+ * AddAppointment.  Rows come from a file or a generated date range, are
+ * checked with the menu's input rules, and are written with JDBC batches
+ * that the driver rewrites into multi-row inserts.  Every chunk of rows is
+ * one transaction.
+ */
+
+public class BatchInserter {
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+
+    private final DBproject _esql;
+    private final int _chunkSize;
+    private int _rejected = 0;
+
+    public BatchInserter(DBproject esql, int chunkSize) {
+        this._esql = esql;
+        this._chunkSize = chunkSize;
+    }
+
+    public int getRejected() {
+        return this._rejected;
+    }
+
+    /**
+     * Method to add the doctors of a file with one "name,specialty,did" line
+     * per doctor.
+     *
+     * @return the number of doctors added
+     */
+    public int addDoctors(File file) throws SQLException, IOException {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (String[] v : readLines(file, 3)) {
+            if (!DBproject.checkname(v[0]) || !DBproject.checkname(v[1]) || !DBproject.checkint(v[2])) {
+                reject(file, v);
+                continue;
+            }
+            rows.add(new Object[]{this._esql.nextDoctorId(), v[0], v[1], Integer.parseInt(v[2])});
+        }
+        insert(DBproject.ADD_DOCTOR, rows, null);
+        // every shard books appointments of every doctor
+        for (ConnectionPool pool : this._esql.getOtherShards()) {
+            DBproject shard = new DBproject(pool, null, this._esql.out, this._esql.err);
+            try {
+                new BatchInserter(shard, this._chunkSize).insert(DBproject.ADD_DOCTOR, rows, null);
+            } finally {
+                shard.release();
+            }
+        }
+        this._esql.getReferenceCache().invalidate();
+        return rows.size();
+    }
+
+    /**
+     * Method to add the patients of a file with one
+     * "name,gender,age,address,number_of_appts" line per patient.
+     *
+     * @return the number of patients added
+     */
+    public int addPatients(File file) throws SQLException, IOException {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (String[] v : readLines(file, 5)) {
+            String gtype = v[1].toUpperCase();
+            if (!DBproject.checkname(v[0]) || !(gtype.equals("M") || gtype.equals("F"))
+                    || !DBproject.checkage(v[2]) || !DBproject.checkint(v[4])) {
+                reject(file, v);
+                continue;
+            }
+            rows.add(new Object[]{this._esql.nextPatientId(), v[0], gtype, Integer.parseInt(v[2]), v[3], Integer.parseInt(v[4])});
+        }
+        insert(DBproject.ADD_PATIENT, rows, null);
+        for (Object[] row : rows)
+            this._esql.getPatientSearch().add((Integer) row[0], (String) row[1], (String) row[4]);
+        return rows.size();
+    }
+
+    /**
+     * Method to add the available appointments of a file with one
+     * "YYYY/MM/DD,HH:MM-HH:MM" line per appointment.
+     *
+     * @return the number of appointments added
+     */
+    public int addAppointments(File file) throws SQLException, IOException {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (String[] v : readLines(file, 2)) {
+            if (!DBproject.checkdate(v[0]) || !DBproject.checktime(v[1])) {
+                reject(file, v);
+                continue;
+            }
+            rows.add(new Object[]{this._esql.nextAppointmentId(), v[0], v[1]});
+        }
+        insert(DBproject.ADD_APPOINTMENT, rows, null);
+        return rows.size();
+    }
+
+    /**
+     * Method to open the given time slots of a doctor on every day of a
+     * date range.  Each slot becomes an AV appointment linked to the doctor,
+     * or goes to the first waitlisted appointment of the slot, if any.
+     *
+     * @param doctorId the doctor
+     * @param from     first day, YYYY/MM/DD
+     * @param to       last day, YYYY/MM/DD
+     * @param slots    the HH:MM-HH:MM slots opened on each day
+     * @return the number of appointments added
+     */
+    public int addAppointmentRange(int doctorId, String from, String to, List<String> slots) throws SQLException {
+        // the database rejects the whole chunk on an overlap, name the culprits before sending anything
+        List<TimeSlot> parsed = new ArrayList<TimeSlot>();
+        for (String slot : slots) {
+            TimeSlot s = TimeSlot.parse(slot);
+            if (s == null) throw new IllegalArgumentException("Invalid time slot '" + slot + "'");
+            for (TimeSlot other : parsed)
+                if (s.overlaps(other)) throw new IllegalArgumentException("Time slots " + other + " and " + s + " overlap");
+            parsed.add(s);
+        }
+        List<Object[]> appointments = new ArrayList<Object[]>();
+        List<Object[]> links = new ArrayList<Object[]>();
+        LocalDate last = LocalDate.parse(to, DATE);
+        for (LocalDate day = LocalDate.parse(from, DATE); !day.isAfter(last); day = day.plusDays(1)) {
+            for (String slot : slots) {
+                int id = this._esql.nextAppointmentId();
+                appointments.add(new Object[]{id, day.format(DATE), slot});
+                links.add(new Object[]{id, doctorId});
+            }
+        }
+        insert(DBproject.ADD_APPOINTMENT, appointments, links);
+        this._esql.getResultCache().invalidate(doctorId, LocalDate.parse(from, DATE), last);
+        this._esql.getAvailabilityIndex().changed();
+        // new capacity goes to the patients already waiting for those slots, when migration V006 is applied
+        List<List<String>> waitlist = this._esql.executeQueryAndReturnResult("SELECT to_regclass('waitlist') IS NOT NULL;");
+        if (waitlist.get(0).get(0).equals("t")) {
+            int[] ids = new int[appointments.size()];
+            for (int i = 0; i < ids.length; ++i)
+                ids[i] = (Integer) appointments.get(i)[0];
+            WaitlistEngine engine = new WaitlistEngine(this._esql);
+            for (int first = 0; first < ids.length; first += this._chunkSize)
+                engine.fill(Arrays.copyOfRange(ids, first, Math.min(ids.length, first + this._chunkSize)));
+        }
+        return appointments.size();
+    }
+
+    /*
+     * Writes the rows chunk by chunk, one transaction per chunk.  When links
+     * are given, the has_appointment row of every appointment goes into the
+     * same chunk as the appointment.
+     */
+    private void insert(String sql, List<Object[]> rows, List<Object[]> links) throws SQLException {
+        Connection conn = this._esql.getConnection();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            for (int from = 0; from < rows.size(); from += this._chunkSize) {
+                int to = Math.min(rows.size(), from + this._chunkSize);
+                this._esql.executeBatch(sql, rows.subList(from, to));
+                if (links != null)
+                    this._esql.executeBatch(DBproject.ADD_HAS_APPOINTMENT, links.subList(from, to));
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    //reads the non empty lines of a csv file that have the expected number of values
+    private List<String[]> readLines(File file, int columns) throws IOException {
+        List<String[]> lines = new ArrayList<String[]>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                String[] values = line.split(",", -1);
+                if (values.length != columns) {
+                    reject(file, values);
+                    continue;
+                }
+                for (int i = 0; i < values.length; ++i)
+                    values[i] = values[i].trim();
+                lines.add(values);
+            }
+        }
+        return lines;
+    }
+
+    private void reject(File file, String[] values) {
+        this._rejected++;
+        this._esql.err.println(file.getName() + ": invalid row '" + String.join(",", values) + "', skipped");
+    }
+}
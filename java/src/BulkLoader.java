@@ -0,0 +1,290 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * This class bulk loads the data/*.csv files from the client through the
+ * PostgreSQL COPY protocol, so the files need not be on the database host
+ * and no superuser rights are needed.  Every row is checked with the same
+ * rules the menu applies to typed input before it is sent.  A table starts
+ * loading as soon as the tables it references are loaded, so independent
+ * tables are copied in parallel over separate pooled connections.
+ */
+
+public class BulkLoader {
+    //bytes buffered before a chunk is handed to the COPY stream
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    //validation rules for a column value, the value is already normalized
+    private enum Rule { INT, AGE, NAME, TEXT, GENDER, DATE, TIME, STATUS }
+
+    //a table of the schema, its csv file, columns and the tables its foreign keys reference
+    private static final class Table {
+        final String name;
+        final String[] columns;
+        final Rule[] rules;
+        final String[] references;
+
+        Table(String name, String[] columns, Rule[] rules, String... references) {
+            this.name = name;
+            this.columns = columns;
+            this.rules = rules;
+            this.references = references;
+        }
+    }
+
+    private static final Table[] TABLES = {
+            new Table("hospital", new String[]{"hospital_ID", "name"},
+                    new Rule[]{Rule.INT, Rule.TEXT}),
+            new Table("patient", new String[]{"patient_ID", "name", "gtype", "age", "address", "number_of_appts"},
+                    new Rule[]{Rule.INT, Rule.NAME, Rule.GENDER, Rule.AGE, Rule.TEXT, Rule.INT}),
+            new Table("appointment", new String[]{"appnt_ID", "adate", "time_slot", "status"},
+                    new Rule[]{Rule.INT, Rule.DATE, Rule.TIME, Rule.STATUS}),
+            new Table("department", new String[]{"dept_ID", "name", "hid"},
+                    new Rule[]{Rule.INT, Rule.TEXT, Rule.INT}, "hospital"),
+            new Table("staff", new String[]{"staff_ID", "name", "hid"},
+                    new Rule[]{Rule.INT, Rule.NAME, Rule.INT}, "hospital"),
+            new Table("doctor", new String[]{"doctor_ID", "name", "specialty", "did"},
+                    new Rule[]{Rule.INT, Rule.NAME, Rule.NAME, Rule.INT}, "department"),
+            new Table("searches", new String[]{"hid", "pid", "aid"},
+                    new Rule[]{Rule.INT, Rule.INT, Rule.INT}, "hospital", "patient", "appointment"),
+            new Table("schedules", new String[]{"appt_id", "staff_id"},
+                    new Rule[]{Rule.INT, Rule.INT}, "appointment", "staff"),
+            new Table("request_maintenance", new String[]{"patient_per_hour", "dept_name", "time_slot", "did", "sid"},
+                    new Rule[]{Rule.INT, Rule.TEXT, Rule.TIME, Rule.INT, Rule.INT}, "doctor", "staff"),
+            new Table("has_appointment", new String[]{"appt_id", "doctor_id"},
+                    new Rule[]{Rule.INT, Rule.INT}, "appointment", "doctor"),
+    };
+
+    //sequences of the IdAllocator and the key column they cover
+    private static final String[][] SEQUENCES = {
+            {"doctor_id_seq", "doctor", "doctor_ID"},
+            {"patient_id_seq", "patient", "patient_ID"},
+            {"appointment_id_seq", "appointment", "appnt_ID"},
+    };
+
+    private final ConnectionPool _pool;
+    private final DBproject _esql;
+    private final int _parallelism;
+
+    /**
+     * @param esql        the session that reports progress
+     * @param parallelism the number of tables copied at the same time
+     */
+    public BulkLoader(DBproject esql, int parallelism) {
+        this._esql = esql;
+        this._pool = esql.getPool();
+        this._parallelism = parallelism;
+    }
+
+    /**
+     * Method to load every <table>.csv found in the directory.  Tables
+     * without a file are skipped; the tables that reference them wait for
+     * nothing.  Afterwards the key sequences are moved past the loaded ids
+     * and the status counters are recomputed.
+     *
+     * @param dir the directory with the csv files, e.g. data/
+     * @return the number of rows loaded
+     * @throws java.sql.SQLException when a COPY failed
+     */
+    public long load(final File dir) throws SQLException {
+        ExecutorService workers = Executors.newFixedThreadPool(this._parallelism);
+        Map<String, CompletableFuture<Long>> loads = new LinkedHashMap<String, CompletableFuture<Long>>();
+        try {
+            // TABLES is in foreign key order, so every reference is already scheduled
+            for (final Table table : TABLES) {
+                List<CompletableFuture<Long>> deps = new ArrayList<CompletableFuture<Long>>();
+                for (String ref : table.references)
+                    deps.add(loads.get(ref));
+                CompletableFuture<Long> load = CompletableFuture
+                        .allOf(deps.toArray(new CompletableFuture<?>[0]))
+                        .thenApplyAsync(ignored -> {
+                            try {
+                                return copyTable(dir, table);
+                            } catch (SQLException | IOException e) {
+                                throw new CompletionException(e);
+                            }
+                        }, workers);
+                loads.put(table.name, load);
+            }
+            long total = 0;
+            for (CompletableFuture<Long> load : loads.values())
+                total += load.join();
+            resyncSequences();
+            rebuildStatusCounts();
+            return total;
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            throw new SQLException(cause.getMessage(), cause);
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    //streams one validated csv file into its table, returns the rows copied
+    private long copyTable(File dir, Table table) throws SQLException, IOException {
+        File file = new File(dir, table.name + ".csv");
+        if (!file.exists()) return 0;
+        long start = System.currentTimeMillis();
+        ConnectionPool.Lease lease = this._pool.acquire();
+        long rows = 0, rejected = 0, line = 0;
+        CopyIn copy = null;
+        try {
+            Connection conn = lease.getConnection();
+            String sql = "COPY " + table.name + " (" + String.join(", ", table.columns) + ") FROM STDIN WITH CSV";
+            copy = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+            StringBuilder chunk = new StringBuilder(CHUNK_SIZE + 1024);
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), CHUNK_SIZE)) {
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    line++;
+                    if (text.trim().isEmpty()) continue;
+                    String[] values = text.split(",", -1);
+                    String error = validate(table, values);
+                    if (error != null) {
+                        rejected++;
+                        this._esql.err.println(table.name + ".csv:" + line + ": " + error + ", row skipped");
+                        continue;
+                    }
+                    appendCsv(chunk, values);
+                    rows++;
+                    if (chunk.length() >= CHUNK_SIZE) {
+                        byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+                        copy.writeToCopy(bytes, 0, bytes.length);
+                        chunk.setLength(0);
+                    }
+                }
+            }
+            byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+            copy.writeToCopy(bytes, 0, bytes.length);
+            copy.endCopy();
+            copy = null;
+        } finally {
+            if (copy != null && copy.isActive()) {
+                try {
+                    copy.cancelCopy();
+                } catch (SQLException e) {
+                    // ignored.
+                }
+            }
+            this._pool.release(lease);
+        }
+        this._esql.out.println("Loaded " + rows + " rows into " + table.name + " in "
+                + (System.currentTimeMillis() - start) + " ms" + (rejected > 0 ? ", " + rejected + " rejected" : ""));
+        return rows;
+    }
+
+    /*
+     * Normalizes the values in place and checks them with the menu's input
+     * rules.  Returns null for a good row, otherwise the reason it is bad.
+     */
+    private static String validate(Table table, String[] values) {
+        if (values.length != table.columns.length)
+            return "expected " + table.columns.length + " values but found " + values.length;
+        for (int i = 0; i < values.length; ++i) {
+            String value = values[i].trim();
+            try {
+                boolean ok;
+                switch (table.rules[i]) {
+                    case INT:
+                        ok = DBproject.checkint(value);
+                        break;
+                    case AGE:
+                        ok = DBproject.checkage(value);
+                        break;
+                    case NAME:
+                        ok = !value.isEmpty() && DBproject.checkname(value);
+                        break;
+                    case GENDER:
+                        value = value.toUpperCase();
+                        ok = value.equals("M") || value.equals("F");
+                        break;
+                    case DATE:
+                        value = normalizeDate(value);
+                        ok = DBproject.checkdate(value);
+                        break;
+                    case TIME:
+                        //the csv files write H:MM-HH:MM, stored as HH:MM-HH:MM like the menu writes them
+                        TimeSlot slot = TimeSlot.parse(value);
+                        ok = slot != null;
+                        if (ok) value = slot.toString();
+                        break;
+                    case STATUS:
+                        ok = DBproject.checkstatus(value);
+                        break;
+                    default:
+                        ok = true;
+                }
+                if (!ok) return "invalid " + table.columns[i] + " '" + values[i] + "'";
+            } catch (RuntimeException e) {
+                return "invalid " + table.columns[i] + " '" + values[i] + "'";
+            }
+            values[i] = value;
+        }
+        return null;
+    }
+
+    //the csv files write dates as M/D/YYYY, the menu reads YYYY/MM/DD
+    static String normalizeDate(String s) {
+        String[] parts = s.split("/");
+        if (parts.length != 3 || parts[2].length() != 4) return s;
+        return parts[2] + "/" + pad(parts[0]) + "/" + pad(parts[1]);
+    }
+
+    private static String pad(String s) {
+        int colon = s.indexOf(':');
+        int digits = colon < 0 ? s.length() : colon;
+        return digits == 1 ? "0" + s : s;
+    }
+
+    //appends one row in PostgreSQL CSV format, quoting values that need it
+    private static void appendCsv(StringBuilder out, String[] values) {
+        for (int i = 0; i < values.length; ++i) {
+            if (i > 0) out.append(',');
+            String v = values[i];
+            if (v.indexOf(',') >= 0 || v.indexOf('"') >= 0 || v.indexOf('\n') >= 0) {
+                out.append('"').append(v.replace("\"", "\"\"")).append('"');
+            } else {
+                out.append(v);
+            }
+        }
+        out.append('\n');
+    }
+
+    //moves the IdAllocator sequences past the largest loaded id
+    private void resyncSequences() throws SQLException {
+        for (String[] seq : SEQUENCES) {
+            this._esql.executeQueryAndReturnResult(
+                    "SELECT setval('" + seq[0] + "', greatest((SELECT last_value FROM " + seq[0] + "), "
+                            + "(SELECT coalesce(max(" + seq[2] + "), 0) FROM " + seq[1] + ")));");
+        }
+    }
+
+    /*
+     * has_appointment and searches are copied in parallel transactions, so
+     * their triggers miss the pairs of the other table; recompute the
+     * counters once both are loaded, when migration V002 is applied.
+     */
+    private void rebuildStatusCounts() throws SQLException {
+        List<List<String>> rows = this._esql.executeQueryAndReturnResult("SELECT to_regclass('doctor_status_counts') IS NOT NULL;");
+        if (rows.get(0).get(0).equals("t")) new StatusCounts(this._esql).rebuild();
+    }
+}
@@ -0,0 +1,327 @@
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * This class is a bounded pool of physical PostgreSQL connections.  Every
+ * pooled connection carries its own StatementCache so prepared statements
+ * survive across borrowers.  Connections idle for longer than the
+ * validation interval are checked with isValid before they are handed out,
+ * and a background task closes connections idle past the idle timeout.
+ */
+
+public class ConnectionPool implements DataSource {
+    public static final int DEFAULT_MAX_SIZE = 10;
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MS = 30000;
+    public static final long DEFAULT_VALIDATION_INTERVAL_MS = 5000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 600000;
+
+    private final String _url;
+    private final String _user;
+    private final String _passwd;
+    private final int _maxSize;
+    private final int _stmtCacheSize;
+    private final int _prepareThreshold;
+    private final long _acquireTimeoutMs;
+    private final long _validationIntervalMs;
+    private final long _idleTimeoutMs;
+
+    //caps the number of physical connections, one permit per open or borrowable connection
+    private final Semaphore _permits;
+    //idle connections, the most recently released one first
+    private final ConcurrentLinkedDeque<Lease> _idle = new ConcurrentLinkedDeque<Lease>();
+    private final ScheduledExecutorService _evictor;
+    private volatile boolean _closed = false;
+
+    /**
+     * A physical connection borrowed from the pool together with its
+     * statement cache.  Hand it back with release().
+     */
+    public static final class Lease {
+        private final Connection _connection;
+        private final StatementCache _stmtCache;
+        private long _lastUsed;
+
+        Lease(Connection connection, StatementCache stmtCache) {
+            this._connection = connection;
+            this._stmtCache = stmtCache;
+            this._lastUsed = System.currentTimeMillis();
+        }
+
+        public Connection getConnection() {
+            return this._connection;
+        }
+
+        public StatementCache getStatementCache() {
+            return this._stmtCache;
+        }
+    }
+
+    public ConnectionPool(String url, String user, String passwd, int maxSize) {
+        this(url, user, passwd, maxSize, StatementCache.DEFAULT_CAPACITY, StatementCache.DEFAULT_PREPARE_THRESHOLD,
+                DEFAULT_ACQUIRE_TIMEOUT_MS, DEFAULT_VALIDATION_INTERVAL_MS, DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    /**
+     * @param url                  the JDBC connection URL
+     * @param user                 database user
+     * @param passwd               database password
+     * @param maxSize              maximum number of physical connections
+     * @param stmtCacheSize        prepared statements cached per connection
+     * @param prepareThreshold     executions before a statement is server side prepared
+     * @param acquireTimeoutMs     how long acquire waits for a free connection
+     * @param validationIntervalMs idle time after which a connection is validated before use
+     * @param idleTimeoutMs        idle time after which a connection is closed
+     */
+    public ConnectionPool(String url, String user, String passwd, int maxSize, int stmtCacheSize, int prepareThreshold,
+                          long acquireTimeoutMs, long validationIntervalMs, long idleTimeoutMs) {
+        this._url = url;
+        this._user = user;
+        this._passwd = passwd;
+        this._maxSize = maxSize;
+        this._stmtCacheSize = stmtCacheSize;
+        this._prepareThreshold = prepareThreshold;
+        this._acquireTimeoutMs = acquireTimeoutMs;
+        this._validationIntervalMs = validationIntervalMs;
+        this._idleTimeoutMs = idleTimeoutMs;
+        this._permits = new Semaphore(maxSize, true);
+        this._evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMs / 4);
+        this._evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Method to borrow a connection, reusing an idle one when possible.
+     *
+     * @return a validated connection and its statement cache
+     * @throws java.sql.SQLException when no connection frees up within the acquire timeout
+     */
+    public Lease acquire() throws SQLException {
+        if (this._closed) throw new SQLException("Connection pool is closed");
+        try {
+            if (!this._permits.tryAcquire(this._acquireTimeoutMs, TimeUnit.MILLISECONDS))
+                throw new SQLException("Timed out waiting for a connection from the pool");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection from the pool");
+        }
+        return borrow();
+    }
+
+    /**
+     * Method to borrow a connection only if one is free right now, for work
+     * the caller can as well run on the connection it already holds.
+     *
+     * @return a validated connection and its statement cache, or null when
+     *         every connection is in use
+     * @throws java.sql.SQLException when a connection could not be opened
+     */
+    public Lease tryAcquire() throws SQLException {
+        if (this._closed) throw new SQLException("Connection pool is closed");
+        if (!this._permits.tryAcquire()) return null;
+        return borrow();
+    }
+
+    //takes an idle connection or opens one, the caller holds a permit
+    private Lease borrow() throws SQLException {
+        try {
+            Lease lease;
+            while ((lease = this._idle.pollFirst()) != null) {
+                if (validate(lease)) return lease;
+                closeQuietly(lease);
+            }
+            return open();
+        } catch (SQLException e) {
+            this._permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Method to return a borrowed connection.  Connections left in a
+     * transaction are rolled back, broken ones are closed.
+     *
+     * @param lease the connection returned by acquire
+     */
+    public void release(Lease lease) {
+        try {
+            if (this._closed || lease._connection.isClosed()) {
+                closeQuietly(lease);
+                return;
+            }
+            if (!lease._connection.getAutoCommit()) {
+                lease._connection.rollback();
+                lease._connection.setAutoCommit(true);
+            }
+            lease._lastUsed = System.currentTimeMillis();
+            this._idle.offerFirst(lease);
+        } catch (SQLException e) {
+            closeQuietly(lease);
+        } finally {
+            this._permits.release();
+        }
+    }
+
+    private Lease open() throws SQLException {
+        Connection conn = DriverManager.getConnection(this._url, this._user, this._passwd);
+        return new Lease(conn, new StatementCache(conn, this._stmtCacheSize, this._prepareThreshold));
+    }
+
+    //recently used connections are trusted, older ones get a round trip check
+    private boolean validate(Lease lease) {
+        if (System.currentTimeMillis() - lease._lastUsed < this._validationIntervalMs) return true;
+        try {
+            return lease._connection.isValid(5);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    //closes connections idle past the idle timeout, the eldest sit at the tail
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - this._idleTimeoutMs;
+        Iterator<Lease> it = this._idle.descendingIterator();
+        while (it.hasNext()) {
+            Lease lease = it.next();
+            if (lease._lastUsed >= cutoff) break;
+            if (this._idle.removeLastOccurrence(lease)) closeQuietly(lease);
+        }
+    }
+
+    private static void closeQuietly(Lease lease) {
+        lease._stmtCache.clear();
+        try {
+            lease._connection.close();
+        } catch (SQLException e) {
+            // ignored.
+        }
+    }
+
+    /**
+     * Method to open a physical connection outside of the pool, for a
+     * task that holds one for good, e.g. a LISTEN connection.  The caller
+     * closes it.
+     *
+     * @throws java.sql.SQLException when the connection can not be opened
+     */
+    public Connection openDedicated() throws SQLException {
+        return DriverManager.getConnection(this._url, this._user, this._passwd);
+    }
+
+    public int getMaxSize() {
+        return this._maxSize;
+    }
+
+    public int getIdleCount() {
+        return this._idle.size();
+    }
+
+    public int getActiveCount() {
+        return this._maxSize - this._permits.availablePermits();
+    }
+
+    /**
+     * Method to close every idle connection and refuse further acquires.
+     * Borrowed connections are closed when they are released.
+     */
+    public void close() {
+        this._closed = true;
+        this._evictor.shutdownNow();
+        Lease lease;
+        while ((lease = this._idle.pollFirst()) != null)
+            closeQuietly(lease);
+    }
+
+    /**
+     * Borrows a pooled connection wrapped so that close() hands it back to
+     * the pool instead of closing the physical connection.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        final Lease lease = acquire();
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean released = false;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("close")) {
+                    if (!released) {
+                        released = true;
+                        release(lease);
+                    }
+                    return null;
+                }
+                if (name.equals("isClosed")) {
+                    return released || lease._connection.isClosed();
+                }
+                if (released) throw new SQLException("Connection has been returned to the pool");
+                try {
+                    return method.invoke(lease._connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, handler);
+    }
+
+    @Override
+    public Connection getConnection(String user, String passwd) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool only serves connections of its configured user");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) return iface.cast(this);
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
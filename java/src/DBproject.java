@@ -1,816 +1,2353 @@
-/*
- * Template JAVA User Interface
- * =============================
- *
- * Database Management Systems
- * Department of Computer Science &amp; Engineering
- * University of California - Riverside
- *
- * Target DBMS: 'Postgres'
- *
- */
-
-
-import java.sql.DriverManager;
-import java.sql.Connection;
-import java.sql.Statement;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
-import java.sql.SQLException;
-import java.io.File;
-import java.io.FileReader;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.util.List;
-import java.util.ArrayList;
-
-/**
- * This class defines a simple embedded SQL utility class that is designed to
- * work with PostgreSQL JDBC drivers.
- */
-
-public class DBproject {
-    //reference to physical database connection
-    private Connection _connection = null;
-    static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
-
-    public DBproject(String dbname, String dbport, String user, String passwd) throws SQLException {
-        System.out.print("Connecting to database...");
-        try {
-
-            // constructs the connection URL
-            String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
-            System.out.println("Connection URL: " + url + "\n");
-
-            // obtain a physical connection
-            this._connection = DriverManager.getConnection(url, user, passwd);
-            System.out.println("Done");
-        } catch (Exception e) {
-            System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
-            System.out.println("Make sure you started postgres on this machine");
-            System.exit(-1);
-        }
-    }
-
-    /**
-     * Method to execute an update SQL statement.  Update SQL instructions
-     * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
-     *
-     * @param sql the input SQL string
-     * @throws java.sql.SQLException when update failed
-     */
-    public void executeUpdate(String sql) throws SQLException {
-        // creates a statement object
-        Statement stmt = this._connection.createStatement();
-
-        // issues the update instruction
-        stmt.executeUpdate(sql);
-
-        // close the instruction
-        stmt.close();
-    }//end executeUpdate
-
-    /**
-     * Method to execute an input query SQL instruction (i.e. SELECT).  This
-     * method issues the query to the DBMS and outputs the results to
-     * standard out.
-     *
-     * @param query the input query string
-     * @return the number of rows returned
-     * @throws java.sql.SQLException when failed to execute the query
-     */
-    public int executeQueryAndPrintResult(String query) throws SQLException {
-        //creates a statement object
-        Statement stmt = this._connection.createStatement();
-
-        //issues the query instruction
-        ResultSet rs = stmt.executeQuery(query);
-
-        /*
-         *  obtains the metadata object for the returned result set.  The metadata
-         *  contains row and column info.
-         */
-        ResultSetMetaData rsmd = rs.getMetaData();
-        int numCol = rsmd.getColumnCount();
-        int rowCount = 0;
-
-        //iterates through the result set and output them to standard out.
-        boolean outputHeader = true;
-        while (rs.next()) {
-            if (outputHeader) {
-                for (int i = 1; i <= numCol; i++) {
-                    System.out.print(rsmd.getColumnName(i) + "\t");
-                }
-                System.out.println();
-                outputHeader = false;
-            }
-            for (int i = 1; i <= numCol; ++i)
-                System.out.print(rs.getString(i) + "\t");
-            System.out.println();
-            ++rowCount;
-        }//end while
-        stmt.close();
-        return rowCount;
-    }
-
-    /**
-     * Method to execute an input query SQL instruction (i.e. SELECT).  This
-     * method issues the query to the DBMS and returns the results as
-     * a list of records. Each record in turn is a list of attribute values
-     *
-     * @param query the input query string
-     * @return the query result as a list of records
-     * @throws java.sql.SQLException when failed to execute the query
-     */
-    public List<List<String>> executeQueryAndReturnResult(String query) throws SQLException {
-        //creates a statement object
-        Statement stmt = this._connection.createStatement();
-
-        //issues the query instruction
-        ResultSet rs = stmt.executeQuery(query);
-
-        /*
-         * obtains the metadata object for the returned result set.  The metadata
-         * contains row and column info.
-         */
-        ResultSetMetaData rsmd = rs.getMetaData();
-        int numCol = rsmd.getColumnCount();
-        int rowCount = 0;
-
-        //iterates through the result set and saves the data returned by the query.
-        boolean outputHeader = false;
-        List<List<String>> result = new ArrayList<List<String>>();
-        while (rs.next()) {
-            List<String> record = new ArrayList<String>();
-            for (int i = 1; i <= numCol; ++i)
-                record.add(rs.getString(i));
-            result.add(record);
-        }//end while
-        stmt.close();
-        return result;
-    }//end executeQueryAndReturnResult
-
-    /**
-     * Method to execute an input query SQL instruction (i.e. SELECT).  This
-     * method issues the query to the DBMS and returns the number of results
-     *
-     * @param query the input query string
-     * @return the number of rows returned
-     * @throws java.sql.SQLException when failed to execute the query
-     */
-    public int executeQuery(String query) throws SQLException {
-        //creates a statement object
-        Statement stmt = this._connection.createStatement();
-
-        //issues the query instruction
-        ResultSet rs = stmt.executeQuery(query);
-
-        int rowCount = 0;
-
-        //iterates through the result set and count nuber of results.
-        if (rs.next()) {
-            rowCount++;
-        }//end while
-        stmt.close();
-        return rowCount;
-    }
-
-    /**
-     * Method to fetch the last value from sequence. This
-     * method issues the query to the DBMS and returns the current
-     * value of sequence used for autogenerated keys
-     *
-     * @param sequence name of the DB sequence
-     * @return current value of a sequence
-     * @throws java.sql.SQLException when failed to execute the query
-     */
-
-    public int getCurrSeqVal(String sequence) throws SQLException {
-        Statement stmt = this._connection.createStatement();
-
-        ResultSet rs = stmt.executeQuery(String.format("Select currval('%s')", sequence));
-        if (rs.next()) return rs.getInt(1);
-        return -1;
-    }
-
-    /**
-     * Method to close the physical connection if it is open.
-     */
-    public void cleanup() {
-        try {
-            if (this._connection != null) {
-                this._connection.close();
-            }//end if
-        } catch (SQLException e) {
-            // ignored.
-        }//end try
-    }//end cleanup
-
-    /**
-     * The main execution method
-     *
-     * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
-     */
-    public static void main(String[] args) {
-        if (args.length != 3) {
-            System.err.println(
-                    "Usage: " + "java [-classpath <classpath>] " + DBproject.class.getName() +
-                            " <dbname> <port> <user>");
-            return;
-        }//end if
-
-        DBproject esql = null;
-
-        try {
-            System.out.println("(1)");
-
-            try {
-                Class.forName("org.postgresql.Driver");
-            } catch (Exception e) {
-
-                System.out.println("Where is your PostgreSQL JDBC Driver? " + "Include in your library path!");
-                e.printStackTrace();
-                return;
-            }
-
-            System.out.println("(2)");
-            String dbname = args[0];
-            String dbport = args[1];
-            String user = args[2];
-
-            esql = new DBproject(dbname, dbport, user, "");
-
-            boolean keepon = true;
-            while (keepon) {
-                System.out.println("MAIN MENU");
-                System.out.println("---------");
-                System.out.println("1. Add Doctor");
-                System.out.println("2. Add Patient");
-                System.out.println("3. Add Appointment");
-                System.out.println("4. Make an Appointment");
-                System.out.println("5. List appointments of a given doctor");
-                System.out.println("6. List all available appointments of a given department");
-                System.out.println("7. List total number of different types of appointments per doctor in descending order");
-                System.out.println("8. Find total number of patients per doctor with a given status");
-                System.out.println("9. < EXIT");
-
-                switch (readChoice()) {
-                    case 1:
-                        AddDoctor(esql);
-                        break;
-                    case 2:
-                        AddPatient(esql);
-                        break;
-                    case 3:
-                        AddAppointment(esql);
-                        break;
-                    case 4:
-                        MakeAppointment(esql);
-                        break;
-                    case 5:
-                        ListAppointmentsOfDoctor(esql);
-                        break;
-                    case 6:
-                        ListAvailableAppointmentsOfDepartment(esql);
-                        break;
-                    case 7:
-                        ListStatusNumberOfAppointmentsPerDoctor(esql);
-                        break;
-                    case 8:
-                        FindPatientsCountWithStatus(esql);
-                        break;
-                    case 9:
-                        keepon = false;
-                        break;
-                }
-            }
-        } catch (Exception e) {
-            System.err.println(e.getMessage());
-        } finally {
-            try {
-                if (esql != null) {
-                    System.out.print("Disconnecting from database...");
-                    esql.cleanup();
-                    System.out.println("Done\n\nBye !");
-                }//end if
-            } catch (Exception e) {
-                // ignored.
-            }
-        }
-    }
-
-    public static int readChoice() {
-        int input;
-        // returns only if a correct value is given.
-        do {
-            System.out.print("Please make your choice: ");
-            try { // read the integer, parse it and break.
-                input = Integer.parseInt(in.readLine());
-                break;
-            } catch (Exception e) {
-                System.out.println("Your input is invalid!");
-                continue;
-            }//end try
-        } while (true);
-        return input;
-    }//end readChoice
-    public static boolean checkint( String s ) {
-        int ascii = (int)s.charAt(0);
-        //System.out.println("castAscii " + ascii);
-        if(ascii<48 || ascii>57) {
-            return false;
-        }
-        Long i = Long.parseLong(s);
-        if(i>2147483647 || i<0) {
-            return false;
-        }
-        return true;
-    }
-    public static boolean checkage( String s ) {
-        int ascii = (int)s.charAt(0);
-        //System.out.println("castAscii " + ascii);
-        if(ascii<48 || ascii>57) {
-            return false;
-        }
-        Long i = Long.parseLong(s);
-        if(i>150 || i<0) {
-            return false;
-        }
-        return true;
-    }
-    public static boolean checkstatus( String s ) {
-        if(s.equals("AV") || s.equals("AC") || s.equals("WL") || s.equals("PA") )return true;
-        return false;
-    }
-    public static boolean checkdate( String s ) {
-        //yyyy/mm/dd
-        if( s.length() != 10) return false;
-        if (s.charAt(4) != '/' || s.charAt(7) != '/' ) {
-            return false;
-        }
-        for ( int i =0;i<4;i++){ //yyyy
-            int ascii = (int)s.charAt(i);
-            if(ascii<48 || ascii>57)return false;
-        }
-        for ( int i =5;i<7;i++){ //mm
-            int ascii = (int)s.charAt(i);
-            if(ascii<48 || ascii>57)return false;
-        }
-        for ( int i =8;i<10;i++){ //dd
-            int ascii = (int)s.charAt(i);
-            if(ascii<48 || ascii>57)return false;
-        }
-        String year = s.substring(0,4);
-        if(Integer.parseInt(s.substring(0,4)) > 3000 ||Integer.parseInt(s.substring(0,4)) < 1911) return false;
-        //System.out.println("year " + year );
-        String mon = s.substring(5,7);
-        // System.out.println("mmm " + mon );
-        if(Integer.parseInt(s.substring(5,7)) > 12 ||Integer.parseInt(s.substring(5,7)) < 1) return false;
-        String day = s.substring(8,10);
-        //System.out.println("dddd " + day );
-        if(Integer.parseInt(s.substring(8,10)) > 31 ||Integer.parseInt(s.substring(8,10)) < 1) return false;
-
-        return true;
-    }
-    public static boolean checktime( String s ) {
-        //08:00-10:00
-        if ( s.length() !=11) return false;
-        if( s.charAt(2)!= ':' || s.charAt(5)!= '-' || s.charAt(8)!= ':' ) return false;
-        for ( int i =0;i<11;i++){
-
-            if( i ==2 ||  i ==5 ||  i ==8  ) i++ ; //skip char
-            int ascii = (int)s.charAt(i);
-            if(ascii<48 || ascii>57)return false;
-        }
-        if(Integer.parseInt(s.substring(0,2)) > 23 ||Integer.parseInt(s.substring(0,2)) <0) return false;
-        if(Integer.parseInt(s.substring(6,8)) > 23 ||Integer.parseInt(s.substring(6,8)) <0) return false;
-        if(Integer.parseInt(s.substring(9,11)) > 59 ||Integer.parseInt(s.substring(9,11)) <0) return false;
-        if(Integer.parseInt(s.substring(3,5)) > 59 ||Integer.parseInt(s.substring(3,5)) <0) return false;
-        return true;
-    }
-
-    public static boolean checkname( String s ) {
-        for ( int i =0;i<s.length();i++){
-            if(Character.toUpperCase(s.charAt(i)) !=32){
-            if(Character.toUpperCase(s.charAt(i))>90 || Character.toUpperCase(s.charAt(i))<65 ) return false;}
-        }
-
-        return true;
-    }
-    public static void AddDoctor(DBproject esql) {//1
-        /*
-         * doctor_ID INTEGER NOT NULL,
-         *      	name VARCHAR(128),
-         *              specialty VARCHAR(24),
-         *              did INTEGER NOT NULL,
-         *              PRIMARY KEY (doctor_ID),
-         *              FOREIGN KEY (did) REFERENCES Department(dept_ID)
-         *              */
-        try {
-
-            Integer id = 1 + Integer.parseInt(esql.executeQueryAndReturnResult("select max(doctor_id) from doctor;").get(0).get(0));
-            String name, sp, did;
-
-            System.out.println("Enter Doctor Name");
-            name = in.readLine();
-            while(!checkname(name)){
-                System.out.println("Invalid Input, Try Again.");
-                name = in.readLine();
-            }
-            System.out.println("Enter Specialty");
-            sp = in.readLine();
-            while(!checkname(sp)){
-                System.out.println("Invalid Input, Try Again.");
-                sp = in.readLine();
-            }
-            System.out.println("Enter Department ID");
-            did = in.readLine();
-            while(!checkint(did)){
-                System.out.println("Invalid Input, Try Again.");
-                did = in.readLine();
-
-            }
-
-
-            System.out.println("New Doctor: ID: " + id + " Name: " + name + " specialty: " + sp + " did: " + did);
-            String query = "INSERT INTO doctor (doctor_id , name , specialty , did) VALUES ( " + id + " , '" + name + "' , '" + sp + "' , " + did + " );";
-            esql.executeUpdate(query);
-        } catch (Exception e) {
-
-            System.err.println(e.getMessage());
-
-
-        }
-
-    }
-
-    public static void AddPatient(DBproject esql) {//2
-
-
-		/*patient_ID INTEGER NOT NULL,
-		name VARCHAR(128) NOT NULL,
-		gtype _GENDER NOT NULL,
-		age INTEGER NOT NULL,
-		address VARCHAR(256),
-		number_of_appts INTEGER,
-		PRIMARY KEY (patient_ID)*/
-        try {
-
-
-            String name, gtype, age, address, napp;
-
-
-            Integer pid = 1 + Integer.parseInt(esql.executeQueryAndReturnResult("select max(patient_id) from patient;").get(0).get(0));
-            //System.out.println("nint: " + pid);
-            //String valeur = esql.executeQueryAndReturnResult("select max(patient_id) from patient;").get(0).get(1);
-            // System.out.println(valeur);
-            //System.out.println("===========");
-
-
-            System.out.println("Enter Patient Name");
-            name = in.readLine();
-            while(!checkname(name)){
-                System.out.println("Invalid Input, Try Again.");
-                name = in.readLine();
-            }
-            System.out.println("Enter gender M/F");
-            gtype = in.readLine().toUpperCase();
-            while(!gtype.toUpperCase().equals("M") && !gtype.toUpperCase().equals("F")){
-                System.out.println("Invalid Input, Try Again.");
-                gtype = in.readLine().toUpperCase();
-            }
-            System.out.println("Enter  age");
-            age = in.readLine();
-            while(!checkage(age)){
-                System.out.println("Invalid Input, Try Again.");
-                age= in.readLine();
-            }
-            System.out.println("Enter address");
-            address = in.readLine();
-            System.out.println("Enter number_of_appts");
-            napp = in.readLine();
-            while(!checkint(napp)){
-                System.out.println("Invalid Input, Try Again.");
-                napp = in.readLine();
-            }
-            String query = "INSERT INTO Patient (patient_ID , name , gtype , age , address , number_of_appts) VALUES ( " + pid + " , '" + name + "' , '" + gtype + "' , " + age + " , '" + address + "' , " + napp + " );";
-            System.out.println("QUERY: " + query);
-            esql.executeUpdate(query);
-        } catch (Exception e) {
-
-            System.err.println(e.getMessage());
-
-
-        }
-    }
-
-
-    public static void AddAppointment(DBproject esql) {//3
-
-
-		/*
-		appnt_ID INTEGER NOT NULL,
-		adate DATE NOT NULL, eg '2018-10-20'
-		time_slot VARCHAR(11),
-		status _STATUS,
-		PRIMARY KEY (appnt_ID)
-		*/
-        try {
-            Integer appnt_ID = 1 + Integer.parseInt(esql.executeQueryAndReturnResult("select max(appnt_id) from appointment;").get(0).get(0));
-            String adate, time_slot;
-            System.out.println("Enter Date (YYYY/MM/DD):");
-            adate = in.readLine();
-            while(!checkdate(adate)){
-                System.out.println("Invalid Input, Try Again.");
-                adate = in.readLine();
-            }
-            System.out.println("Enter time_slot (HH:MM-HH:MM):");
-            time_slot = in.readLine();
-            while(!checktime(time_slot)){
-                System.out.println("Invalid Input, Try Again.");
-                time_slot = in.readLine();
-            }
-            System.out.println("New Appointment: ID: " + appnt_ID + " Date: " + adate + " time slot: " + time_slot + " Status: AV");
-            String query = "INSERT INTO appointment (appnt_ID , adate , time_slot , status) VALUES ( " + appnt_ID + " , '" + adate + "' , '" + time_slot + "' , '" + "AV" + "' );";
-            esql.executeUpdate(query);
-        } catch (Exception e) {
-
-            System.err.println(e.getMessage());
-
-
-        }
-
-
-    }
-
-
-    public static void MakeAppointment(DBproject esql) {//4
-        //
-        // Given a patient, a doctor and an appointment of the doctor that s/he wants to take, add an appointment to the DB
-        try {
-            String doctor_id, appt_id;
-            String patient_id, name, gtype, age, address;
-            System.out.println("Enter Doctor ID:");
-            doctor_id = in.readLine();
-            while(!checkint(doctor_id)){
-                System.out.println("Invalid Input, Try Again.");
-                doctor_id = in.readLine();
-            }
-            System.out.println("Enter Appointment ID:");
-            appt_id = in.readLine();
-            while(!checkint(appt_id)){
-                System.out.println("Invalid Input, Try Again.");
-                appt_id = in.readLine();
-            }
-
-            //System.out.println("ddd : " + doctor_id + " aaa: " + appt_id);
-            String query = "select count(*) from has_appointment where doctor_id = " + doctor_id + " and appt_id = " + appt_id + " ;";
-            Integer foundID = Integer.parseInt(esql.executeQueryAndReturnResult(query).get(0).get(0)); //check if count row = 0
-            //System.out.println("FOUND, doctor has appointment.");
-            //System.out.println(esql.executeQueryAndReturnResult(query));
-
-
-            if (foundID == 1) { // found docid appt id, continue patient details
-                String foundstatus = (esql.executeQueryAndReturnResult("select status from appointment where appnt_id = " + appt_id + " ;").get(0).get(0)); //check av ac ok, wl pa not ok
-                if (foundstatus.equals("AV") || foundstatus.equals("AC")) { // can make appt
-                    //System.out.println("status: " + foundstatus);
-                    System.out.println("Enter Patient Details \n Enter Patient ID (if you are new patient, enter 'x'): ");
-                    patient_id = in.readLine();
-                    //System.out.println("xxxxxx.: "  + patient_id);
-                    if (!patient_id.equals("x") ) {
-                        while(!checkint(patient_id) ){
-
-                            System.out.println("Invalid Input, Try Again.");
-                            patient_id = in.readLine();
-                        }
-                    }
-                    System.out.println("Enter name:");
-                    name = in.readLine();
-                    while(!checkname(name)){
-                        System.out.println("Invalid Input, Try Again.");
-                        name = in.readLine();
-                    }
-                    System.out.println("Enter Gender as 'M/F':");
-                    gtype = in.readLine().toUpperCase();
-                    while(!gtype.toUpperCase().equals("M") && !gtype.toUpperCase().equals("F")){
-                        System.out.println("Invalid Input, Try Again.");
-                        gtype = in.readLine().toUpperCase();
-                    }
-                    System.out.println("Enter age: ");
-                    age = in.readLine();
-                    while(!checkage(age)){
-                        System.out.println("Invalid Input, Try Again.");
-                        age = in.readLine();
-                    }
-                    System.out.println("Enter address: ");
-                    address = in.readLine();
-                    Integer newpid;
-                    if (patient_id.equals("x")) { //new patient
-
-                        System.out.println("Welcome new patient!");
-                        query = "select max(patient_id) from patient;";
-                        newpid = 1 + Integer.parseInt(esql.executeQueryAndReturnResult(query).get(0).get(0));
-                        //System.out.println("npid " + newpid);
-                        query = "INSERT INTO patient (patient_id,  name, gtype, age, address ,number_of_appts) VALUES ( " + newpid + ", '" + name + "' , '" + gtype + "' , " + age + " , '" + address + "' , 1 );";
-                        //System.out.println("insert new pat: " + query);
-                        esql.executeUpdate(query); //insert new patient
-                    } else { //old patient
-                        String temp = "select * from patient where patient_id = " + patient_id;
-                        System.out.println(esql.executeQueryAndPrintResult(temp));
-                        System.out.println("is the info above yours? Y/N");
-                        if(in.readLine().toUpperCase().equals("Y")){
-                            newpid = Integer.parseInt(patient_id);
-                        }
-                        else{
-                            System.out.println("please enter as new patient, patient id not found");
-                            return;
-                        }
-
-                    }
-                    if (foundstatus.equals("AV")) {//update appt
-                        System.out.println("status is Available, update status to Active");
-                        //Integer npid = 1 + Integer.parseInt(esql.executeQueryAndReturnResult("select max(patient_id) from patient;").get(0).get(0));
-                        query = "update appointment set status = 'AC' where appnt_id = " + appt_id + " ;";
-                        esql.executeUpdate(query);
-                        System.out.println("Your Appointment is: ");
-                        query = "select * from appointment where appnt_id = " + appt_id + " ;";
-                        System.out.println(esql.executeQueryAndPrintResult(query));
-
-
-                    }
-                    if (foundstatus.equals("AC")) {// insert new appt, hasappt
-
-                        Integer appnt_ID = 1 + Integer.parseInt(esql.executeQueryAndReturnResult("select max(appnt_id) from appointment;").get(0).get(0));
-                        //System.out.println("appnid: " + appnt_ID);
-                        System.out.println("The appointment is Active, new appointment added with appointment ID: " + appnt_ID + " Status: WL" );
-
-                        //System.out.println( esql.executeQueryAndReturnResult("select adate from appointment where appnt_id = " + appnt_ID + " ;").get(0));
-                        ///////////////////////////////////////////////////////////
-                        query = "select adate from appointment where appnt_id = " + appt_id + " ;";
-                        //System.out.println("get date from old: " + query);
-                        String getadate = esql.executeQueryAndReturnResult(query).get(0).get(0);
-                        //System.out.println("adate " + getadate);
-                        query ="select time_slot from appointment where appnt_id = " + appt_id + " ;";
-                        //System.out.println("get time from old: " + query);
-                        String gettime = (esql.executeQueryAndReturnResult(query).get(0).get(0));
-
-                        //System.out.println("atime " + gettime);
-                        query = "INSERT INTO appointment (appnt_ID , adate , time_slot , status) VALUES ( " + appnt_ID + " , '" + getadate + "' , '" + gettime + "' , '" + "WL" + "' );";
-                        esql.executeUpdate(query);
-                        //Integer hasid = 1 + Integer.parseInt(esql.executeQueryAndReturnResult("select max(appt_id) from has_appointment;").get(0).get(0));
-                        query = "INSERT INTO has_appointment (appt_id, doctor_id) VALUES ( " + appnt_ID + " , " + doctor_id + " ); ";
-                        esql.executeUpdate(query);
-                        System.out.println("Your Appointment is: ");
-                        query = "select * from appointment where appnt_id = " + appnt_ID + " ;";
-                        System.out.println(esql.executeQueryAndPrintResult(query));
-
-
-
-
-                    }
-
-                } else {// wl or pa
-
-                    System.out.println("Appointment is Not available ");
-                    return;
-                }
-            } else { // if appt or doc count =0
-                System.out.println("Appointment ID or Doctor ID not found ");
-                return;
-            }
-
-        }//try
-        catch (
-                Exception e) {
-
-            System.err.println(e.getMessage());
-
-
-        }
-
-    }
-
-    public static void ListAppointmentsOfDoctor(DBproject esql) {//5
-        // For a doctor ID and a date range, find the list of active and available appointments of the doctor
-        //select * from appointment  INNER JOIN has_appointment on appointment.appnt_id =  has_appointment.appt_id where  adate between '2011/1/1' and '2022/1/1'  and doctor_id = 25 and (status = 'AC' or status = 'AV');
-
-        try {
-            String doctor_id;
-            String date1, date2;
-            date1 = date2 = "'";
-            System.out.println("Enter Doctor ID:");
-            doctor_id = in.readLine();
-            while(!checkint(doctor_id)){
-                System.out.println("Invalid Input, Try Again.");
-                doctor_id = in.readLine();
-            }
-            System.out.println("Enter Start Date (YYYY/MM/DD):");
-            String temp1 = in.readLine();
-            while(!checkdate(temp1)){
-                System.out.println("Invalid Input, Try Again.");
-                temp1 = in.readLine();
-            }
-            System.out.println("Enter End Date (YYYY/MM/DD):");
-            String temp2 =  in.readLine();
-            while(!checkdate(temp2)){
-                System.out.println("Invalid Input, Try Again.");
-                temp2= in.readLine();
-            }
-            date1 += temp1;
-            date2 += temp2;
-            date1 += "'";
-            date2 += "'";
-            System.out.println("Looking for appointment for DocID : " + doctor_id + " Date Range: " + date1 + " - " + date2);
-            String query = "select appnt_id, adate, time_slot, status from appointment  INNER JOIN has_appointment on appointment.appnt_id =  has_appointment.appt_id where adate between " + date1 + " and " + date2 + " and doctor_id = " + doctor_id + " and (status = 'AC' or status = 'AV');";
-
-            System.out.println(esql.executeQueryAndPrintResult(query));
-        } catch (Exception e) {
-
-            System.err.println(e.getMessage());
-
-
-        }
-
-    }
-
-    public static void ListAvailableAppointmentsOfDepartment(DBproject esql) {//6
-        // For a department name and a specific date, find the list of available appointments of the department
-
-        try {
-            String date, name, name1;
-            date = name = "'";
-            System.out.println("Enter Date (YYYY/MM/DD) :");
-            String temp2 = in.readLine();
-            while(!checkdate(temp2)){
-                System.out.println("Invalid Input, Try Again.");
-                temp2= in.readLine();
-            }
-            date += temp2;
-            System.out.println("Enter Department Name:");
-            name1 = in.readLine();
-            while(!checkname(name1)){
-                System.out.println("Invalid Input, Try Again.");
-                name1= in.readLine();
-            }
-            name+=name1;
-            date += "'";
-            name += "'";
-            System.out.println("Available Appointments Of Department : " + name + " Date: " + date);
-            String query = "select appnt_id, adate, time_slot, status from appointment INNER JOIN has_appointment on appointment.appnt_id =  has_appointment.appt_id INNER JOIN doctor on doctor.doctor_id =has_appointment.doctor_id INNER JOIN department on department.dept_id = doctor.did where status = 'AV' AND adate = " + date + " and department.name = " + name + ";";
-
-            System.out.println(esql.executeQueryAndPrintResult(query));
-        } catch (Exception e) {
-
-            System.err.println(e.getMessage());
-
-
-        }
-
-    }
-
-    public static void ListStatusNumberOfAppointmentsPerDoctor(DBproject esql) {//7
-        // Count number of different types of appointments per doctors and list them in descending order
-
-        try {
-
-
-            String query = "select doctor.doctor_id, name , status ,count(*)  from appointment , has_appointment, doctor where appointment.appnt_id = has_appointment.appt_id  and doctor.doctor_id = has_appointment.doctor_id group by doctor.doctor_id, status order by doctor_id, count desc ;";
-
-            System.out.println(esql.executeQueryAndPrintResult(query));
-        } catch (Exception e) {
-
-            System.err.println(e.getMessage());
-
-
-        }
-
-
-    }
-
-
-    public static void FindPatientsCountWithStatus(DBproject esql) {//8
-        // Find how many patients per doctor there are with a given status (i.e. PA, AC, AV, WL) and list that number per doctor.
-
-        try {
-            String status = "'", status1;
-            System.out.println("Enter Status:");
-            status1 = in.readLine();
-            while(!checkstatus(status1)){
-                System.out.println("Invalid Input, Try Again.");
-                status1= in.readLine();
-            }
-
-            status += status1;
-            status += "'";
-            System.out.println("Looking for Patients Count per doctor With Status : " + status);
-            String query = "select has_appointment.doctor_id, doctor.name, count(has_appointment.doctor_id) as Num_of_Patient from appointment INNER JOIN has_appointment on appointment.appnt_id =  has_appointment.appt_id INNER JOIN doctor on doctor.doctor_id =  has_appointment.doctor_id INNER JOIN department on department.dept_id = doctor.did INNER JOIN searches on searches.aid = appointment.appnt_id where status = " + status + " and searches.hid = '0' group by has_appointment.doctor_id, doctor.name order by Num_of_Patient  desc;";
-
-            System.out.println(esql.executeQueryAndPrintResult(query));
-        } catch (Exception e) {
-
-            System.err.println(e.getMessage());
-
-
-        }
-    }
-}
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.PreparedStatement;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.io.File;
+import java.io.FileReader;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+
+/**
+ * This class defines a simple embedded SQL utility class that is designed to
+ * work with PostgreSQL JDBC drivers.
+ */
+
+public class DBproject {
+    //pool the physical connections are borrowed from
+    private final ConnectionPool _pool;
+    //true when this object created the pool and closes it in cleanup
+    private final boolean _ownsPool;
+    //connection borrowed for the current operation, null between operations
+    private ConnectionPool.Lease _lease = null;
+    //the pool _lease was borrowed from, the standby's for read-only operations
+    private ConnectionPool _leasePool = null;
+    //true while the current operation only reads, see ReplicaRouter
+    private boolean _readOnly = false;
+    //reference to physical database connection
+    private Connection _connection = null;
+    //prepared statements of _connection, keyed by SQL text
+    private StatementCache _stmtCache = null;
+    //primary key allocators shared by every session, backed by the *_id_seq sequences of sql/create.sql
+    private static final IdAllocator _doctorIds = new IdAllocator("doctor_id_seq", IdAllocator.DEFAULT_BLOCK_SIZE);
+    private static final IdAllocator _patientIds = new IdAllocator("patient_id_seq", IdAllocator.DEFAULT_BLOCK_SIZE);
+    private static final IdAllocator _appointmentIds = new IdAllocator("appointment_id_seq", IdAllocator.DEFAULT_BLOCK_SIZE);
+    //doctor, department and hospital rows shared by every session, override the TTL with -Ddbproject.refCacheTtlMs
+    private static final ReferenceCache _reference = new ReferenceCache(
+            Long.getLong("dbproject.refCacheTtlMs", ReferenceCache.DEFAULT_TTL_MS));
+    //patients by the words of their name and address for option 14 and the duplicate checks, reload interval -Ddbproject.patientSearch.ttlMs
+    private static final PatientSearch _patients = new PatientSearch(
+            Long.getLong("dbproject.patientSearch.ttlMs", PatientSearch.DEFAULT_TTL_MS));
+    //AV appointments by department and day for Q6 and option 11, turn off with -Ddbproject.availabilityIndex=false
+    private static final AvailabilityIndex _availability = new AvailabilityIndex();
+    //answers of Q5 shared by every session, see ResultCache for the -Ddbproject.resultCache.* settings
+    private static volatile ResultCache _results = ResultCache.fromProperties();
+    //doctor and epoch day of the appointments changed in the open transaction of this session, see changedAppointment()
+    private final List<long[]> _changed = new ArrayList<long[]>();
+    //hot standby of the read-only operations, null without -Ddbproject.replica.port
+    private static volatile ReplicaRouter _replica = null;
+    //the database of every hospital, null without -Ddbproject.shards
+    private static volatile ShardRouter _shards = null;
+    //whether migration V002 made the counters of Q7 and Q8, see hasStatusCounts()
+    private static volatile boolean _statusCounts = false;
+    //runs the queries of executeQueryAsync, each on a spare connection of the session's pool
+    private static final ExecutorService _async = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "dbproject-async");
+        t.setDaemon(true);
+        return t;
+    });
+    //rows fetched per round trip by streamed queries, override with -Ddbproject.fetchSize
+    private final int _fetchSize = Integer.getInteger("dbproject.fetchSize", 1000);
+    //rows per page of paginated listings, override with -Ddbproject.pageSize
+    private final int _pageSize = Integer.getInteger("dbproject.pageSize", 100);
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    //the menu operation the statements of this session are counted for, see Metrics
+    private OperationMetrics _operation = Metrics.operation(Metrics.OTHER);
+    private long _operationStart;
+    //the terminal of this session
+    final BufferedReader in;
+    final PrintStream out;
+    final PrintStream err;
+
+    public DBproject(String dbname, String dbport, String user, String passwd) throws SQLException {
+        this(createPool(dbname, dbport, user, passwd, 1), true, in(), System.out, System.err);
+    }
+
+    //reader over standard in
+    private static BufferedReader in() {
+        return new BufferedReader(new InputStreamReader(System.in));
+    }
+
+    /**
+     * Creates a session that borrows its connections from a shared pool and
+     * talks to a clerk over the given reader and stream.
+     */
+    public DBproject(ConnectionPool pool, BufferedReader in, PrintStream out) {
+        this(pool, false, in, out, out);
+    }
+
+    /**
+     * Creates a session with a separate stream for errors, e.g. to drive
+     * the menu operations from a script and collect their failures.
+     */
+    public DBproject(ConnectionPool pool, BufferedReader in, PrintStream out, PrintStream err) {
+        this(pool, false, in, out, err);
+    }
+
+    private DBproject(ConnectionPool pool, boolean ownsPool, BufferedReader in, PrintStream out, PrintStream err) {
+        this._pool = pool;
+        this._ownsPool = ownsPool;
+        this.in = in;
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Method to create the connection pool for a local database and check
+     * that a first connection can be opened.
+     *
+     * @param maxSize the maximum number of physical connections
+     * @return the connection pool
+     */
+    public static ConnectionPool createPool(String dbname, String dbport, String user, String passwd, int maxSize) {
+        System.out.print("Connecting to database...");
+        ConnectionPool pool = null;
+        try {
+            pool = newPool(dbname, dbport, user, passwd, maxSize);
+            // obtain a first physical connection, it stays idle in the pool
+            pool.release(pool.acquire());
+            System.out.println("Done");
+        } catch (Exception e) {
+            System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
+            System.out.println("Make sure you started postgres on this machine");
+            System.exit(-1);
+        }
+        return pool;
+    }
+
+    /**
+     * Method to create a connection pool for a local database without
+     * connecting yet.
+     *
+     * @param maxSize the maximum number of physical connections
+     * @return the connection pool
+     */
+    static ConnectionPool newPool(String dbname, String dbport, String user, String passwd, int maxSize) {
+        // statement cache settings, override with -Ddbproject.stmtCacheSize / -Ddbproject.prepareThreshold
+        int cacheSize = Integer.getInteger("dbproject.stmtCacheSize", StatementCache.DEFAULT_CAPACITY);
+        int prepareThreshold = Integer.getInteger("dbproject.prepareThreshold", StatementCache.DEFAULT_PREPARE_THRESHOLD);
+        // pool settings, override with -Ddbproject.pool.acquireTimeoutMs / validationIntervalMs / idleTimeoutMs
+        long acquireTimeout = Long.getLong("dbproject.pool.acquireTimeoutMs", ConnectionPool.DEFAULT_ACQUIRE_TIMEOUT_MS);
+        long validationInterval = Long.getLong("dbproject.pool.validationIntervalMs", ConnectionPool.DEFAULT_VALIDATION_INTERVAL_MS);
+        long idleTimeout = Long.getLong("dbproject.pool.idleTimeoutMs", ConnectionPool.DEFAULT_IDLE_TIMEOUT_MS);
+
+        // constructs the connection URL
+        String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname + "?prepareThreshold=" + prepareThreshold
+                + "&reWriteBatchedInserts=true";
+        System.out.println("Connection URL: " + url + "\n");
+        return new ConnectionPool(url, user, passwd, maxSize, cacheSize, prepareThreshold,
+                acquireTimeout, validationInterval, idleTimeout);
+    }
+
+    /**
+     * Method to borrow a connection from the pool unless this session
+     * already holds one.  It is kept until release() is called.
+     *
+     * @throws java.sql.SQLException when no connection could be borrowed
+     */
+    public void acquire() throws SQLException {
+        if (this._lease != null) return;
+        long start = System.nanoTime();
+        ConnectionPool pool = readPool();
+        try {
+            this._lease = pool.acquire();
+        } catch (SQLException e) {
+            if (pool == this._pool) throw e;
+            // the standby is gone, read from the primary
+            _replica.failed(e);
+            pool = this._pool;
+            this._lease = pool.acquire();
+        }
+        this._leasePool = pool;
+        this._operation.waited(System.nanoTime() - start);
+        this._connection = this._lease.getConnection();
+        this._stmtCache = this._lease.getStatementCache();
+    }
+
+    //borrows a connection only if the pool has one free right now
+    private boolean tryAcquire() throws SQLException {
+        if (this._lease != null) return true;
+        ConnectionPool pool = readPool();
+        this._lease = pool.tryAcquire();
+        if (this._lease == null) return false;
+        this._leasePool = pool;
+        this._connection = this._lease.getConnection();
+        this._stmtCache = this._lease.getStatementCache();
+        return true;
+    }
+
+    /**
+     * Method to hand the borrowed connection back to the pool.
+     */
+    public void release() {
+        if (this._lease == null) return;
+        ConnectionPool.Lease lease = this._lease;
+        this._lease = null;
+        this._connection = null;
+        this._stmtCache = null;
+        this._leasePool.release(lease);
+    }
+
+    //the standby while the current operation only reads and the standby keeps up, else the primary
+    private ConnectionPool readPool() {
+        ReplicaRouter replica = _replica;
+        return this._readOnly && replica != null && replica.isUsable() ? replica.getPool() : this._pool;
+    }
+
+    /**
+     * Method to route the read-only menu operations of every session to a
+     * hot standby, see ReplicaRouter, when -Ddbproject.replica.port is set.
+     */
+    public static void startReplica(String dbname, String user, String passwd) {
+        // a standby follows one database, the shards would read another one's data
+        if (_shards != null) return;
+        _replica = ReplicaRouter.fromProperties(dbname, user, passwd, System.err);
+    }
+
+    /**
+     * Method to split the hospitals over several databases, see
+     * ShardRouter, when -Ddbproject.shards names a shard map.
+     *
+     * @param maxSize the maximum number of connections to each shard
+     * @throws java.io.IOException when the shard map can not be read
+     */
+    public static void startShards(String dbname, String user, String passwd, int maxSize) throws IOException {
+        _shards = ShardRouter.fromProperties(dbname, user, passwd, maxSize);
+        // the answers of one shard would be cached under the keys of every other shard
+        if (_shards != null) _results = new ResultCache(0, 0);
+    }
+
+    /**
+     * Method to return the pools of every shard but this session's, none
+     * without shards.
+     */
+    public List<ConnectionPool> getOtherShards() {
+        List<ConnectionPool> others = new ArrayList<ConnectionPool>();
+        ShardRouter shards = _shards;
+        if (shards == null) return others;
+        for (ConnectionPool pool : shards.getPools()) {
+            if (pool != this._pool) others.add(pool);
+        }
+        return others;
+    }
+
+    /**
+     * Method to count the following statements of this session for a menu
+     * operation, until endOperation() records the call.
+     *
+     * @param name the operation, e.g. MakeAppointment
+     */
+    public void beginOperation(String name) {
+        this._operation = Metrics.operation(name);
+        this._operationStart = System.nanoTime();
+        this._readOnly = ReplicaRouter.READ_ONLY_OPERATIONS.contains(name);
+    }
+
+    /**
+     * Method to record the latency of the operation begun last.
+     */
+    public void endOperation() {
+        this._operation.called(System.nanoTime() - this._operationStart);
+        this._operation = Metrics.operation(Metrics.OTHER);
+        this._readOnly = false;
+        // a standby connection can not run the writes of the next operation
+        if (this._lease != null && this._leasePool != this._pool) release();
+    }
+
+    //counts a finished statement for the current operation and logs it when slow
+    private void executed(String sql, Object[] params, long start, int roundTrips, long rows) {
+        long nanos = System.nanoTime() - start;
+        this._operation.executed(nanos, roundTrips, rows);
+        Metrics.statement(this._operation, sql, params, nanos);
+    }
+
+    /**
+     * Method to fetch the cached prepared statement for a SQL string and
+     * bind the given parameters to its '?' placeholders in order.
+     *
+     * @param sql    the input SQL string
+     * @param params the values bound to the placeholders
+     * @return the bound statement, owned by the statement cache
+     * @throws java.sql.SQLException when the statement can not be prepared
+     */
+    private PreparedStatement prepare(String sql, Object... params) throws SQLException {
+        acquire();
+        PreparedStatement stmt = this._stmtCache.prepare(sql);
+        for (int i = 0; i < params.length; ++i)
+            stmt.setObject(i + 1, params[i]);
+        return stmt;
+    }
+
+    /**
+     * Method to return the physical connection of this session, borrowing
+     * one if needed.  It stays valid until release() is called.
+     *
+     * @return the borrowed connection
+     * @throws java.sql.SQLException when no connection could be borrowed
+     */
+    public Connection getConnection() throws SQLException {
+        acquire();
+        return this._connection;
+    }
+
+    public StatementCache getStatementCache() {
+        return this._stmtCache;
+    }
+
+    public ReferenceCache getReferenceCache() {
+        return _reference;
+    }
+
+    public PatientSearch getPatientSearch() {
+        return _patients;
+    }
+
+    public AvailabilityIndex getAvailabilityIndex() {
+        return _availability;
+    }
+
+    public ResultCache getResultCache() {
+        return _results;
+    }
+
+    /**
+     * Method to drop the cached answers about an appointment of a doctor
+     * on a day that this session changed.  Inside an open transaction the
+     * answers are dropped by invalidateChanged(), after the commit.
+     *
+     * @throws java.sql.SQLException when the connection state can not be read
+     */
+    public void changedAppointment(int doctorId, LocalDate date) throws SQLException {
+        if (this._connection != null && !this._connection.getAutoCommit()) {
+            this._changed.add(new long[]{doctorId, date.toEpochDay()});
+        } else {
+            _results.invalidate(doctorId, date);
+            _availability.changed();
+        }
+    }
+
+    /**
+     * Method to drop the cached answers about the appointments changed by
+     * the transaction this session just committed or rolled back.
+     */
+    public void invalidateChanged() {
+        for (long[] changed : this._changed)
+            _results.invalidate((int) changed[0], LocalDate.ofEpochDay(changed[1]));
+        if (!this._changed.isEmpty()) _availability.changed();
+        this._changed.clear();
+    }
+
+    //true while this session reads from the hot standby, whose answers may predate a change already invalidated
+    boolean isReadingStandby() {
+        return this._lease != null && this._leasePool != this._pool;
+    }
+
+    /**
+     * Method to start following the availability of the pool's database,
+     * unless -Ddbproject.availabilityIndex=false.  Sessions answer from
+     * SQL until the index is loaded.
+     */
+    public static void startAvailabilityIndex(ConnectionPool pool) {
+        if (!Boolean.parseBoolean(System.getProperty("dbproject.availabilityIndex", "true"))) return;
+        // the index follows one database, with shards every session answers from its own
+        if (_shards != null) return;
+        _availability.start(pool, Long.getLong("dbproject.availability.pollMs", AvailabilityIndex.DEFAULT_POLL_MS), System.err);
+    }
+
+    public int getFetchSize() {
+        return this._fetchSize;
+    }
+
+    public int getPageSize() {
+        return this._pageSize;
+    }
+
+    public ConnectionPool getPool() {
+        return this._pool;
+    }
+
+    public int nextDoctorId() throws SQLException {
+        return _doctorIds.nextId(this);
+    }
+
+    public int nextPatientId() throws SQLException {
+        return _patientIds.nextId(this);
+    }
+
+    public int nextAppointmentId() throws SQLException {
+        return _appointmentIds.nextId(this);
+    }
+
+    /**
+     * Method to execute an update SQL statement.  Update SQL instructions
+     * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+     *
+     * @param sql    the input SQL string, with '?' for each parameter
+     * @param params the values bound to the placeholders
+     * @return the number of rows affected
+     * @throws java.sql.SQLException when update failed
+     */
+    public int executeUpdate(String sql, Object... params) throws SQLException {
+        // issues the update instruction on the cached statement
+        PreparedStatement stmt = prepare(sql, params);
+        long start = System.nanoTime();
+        try {
+            return stmt.executeUpdate();
+        } catch (SQLException e) {
+            this._operation.failed();
+            throw e;
+        } finally {
+            executed(sql, params, start, 1, 0);
+        }
+    }//end executeUpdate
+
+    /**
+     * Receives the rows of a streamed query one at a time, the result set is
+     * positioned on the current row.
+     */
+    public interface RowHandler {
+        void handle(ResultSet rs) throws SQLException, IOException;
+    }
+
+    /**
+     * Method to execute an input query SQL instruction (i.e. SELECT) and hand
+     * each row to a handler as it arrives.  Outside of an explicit
+     * transaction the read runs in its own transaction so the driver can use
+     * a cursor, and only fetch size rows are held in memory at a time.
+     *
+     * @param query   the input query string, with '?' for each parameter
+     * @param handler receives every row
+     * @param params  the values bound to the placeholders
+     * @return the number of rows returned
+     * @throws java.sql.SQLException when failed to execute the query
+     * @throws java.io.IOException   when the handler failed to write a row
+     */
+    public int executeQueryAndStream(String query, RowHandler handler, Object... params) throws SQLException, IOException {
+        PreparedStatement stmt = prepare(query, params);
+        long start = System.nanoTime();
+        boolean autoCommit = this._connection.getAutoCommit();
+        // cursors only exist inside a transaction
+        if (autoCommit) this._connection.setAutoCommit(false);
+        int rowCount = 0;
+        try {
+            stmt.setFetchSize(this._fetchSize);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                handler.handle(rs);
+                ++rowCount;
+            }//end while
+            rs.close();
+        } catch (SQLException e) {
+            this._operation.failed();
+            throw e;
+        } finally {
+            if (autoCommit) {
+                this._connection.commit();
+                this._connection.setAutoCommit(true);
+            }
+            // the first fetch comes with the execute, every further fetch size rows is one more trip
+            executed(query, params, start, 1 + Math.max(0, rowCount - 1) / this._fetchSize + (autoCommit ? 1 : 0), rowCount);
+        }
+        return rowCount;
+    }
+
+    /**
+     * Method to execute an input query SQL instruction (i.e. SELECT).  This
+     * method issues the query to the DBMS and outputs the results to
+     * standard out.  Rows are streamed through a buffered writer, so the
+     * memory used does not grow with the size of the result.
+     *
+     * @param query  the input query string, with '?' for each parameter
+     * @param params the values bound to the placeholders
+     * @return the number of rows returned
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public int executeQueryAndPrintResult(String query, Object... params) throws SQLException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(this.out), 1 << 16);
+        RowHandler printer = new RowHandler() {
+            private boolean outputHeader = true;
+
+            public void handle(ResultSet rs) throws SQLException, IOException {
+                /*
+                 *  obtains the metadata object for the returned result set.  The metadata
+                 *  contains row and column info.
+                 */
+                ResultSetMetaData rsmd = rs.getMetaData();
+                int numCol = rsmd.getColumnCount();
+                if (outputHeader) {
+                    for (int i = 1; i <= numCol; i++) {
+                        writer.write(rsmd.getColumnName(i));
+                        writer.write('\t');
+                    }
+                    writer.write(LINE_SEPARATOR);
+                    outputHeader = false;
+                }
+                for (int i = 1; i <= numCol; ++i) {
+                    writer.write(String.valueOf(rs.getString(i)));
+                    writer.write('\t');
+                }
+                writer.write(LINE_SEPARATOR);
+            }
+        };
+        try {
+            int rowCount = executeQueryAndStream(query, printer, params);
+            writer.flush();
+            return rowCount;
+        } catch (IOException e) {
+            throw new SQLException("Unable to write the result: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Method to execute a query whose first column is a doctor_id and print
+     * its rows like executeQueryAndPrintResult, with the doctor's name
+     * resolved from the reference cache inserted as the second column.
+     *
+     * @param query  the input query string, with '?' for each parameter
+     * @param params the values bound to the placeholders
+     * @return the number of rows returned
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public int executeQueryAndPrintWithDoctorNames(String query, Object... params) throws SQLException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(this.out), 1 << 16);
+        RowHandler printer = new RowHandler() {
+            private boolean outputHeader = true;
+
+            public void handle(ResultSet rs) throws SQLException, IOException {
+                ResultSetMetaData rsmd = rs.getMetaData();
+                int numCol = rsmd.getColumnCount();
+                if (outputHeader) {
+                    writer.write(rsmd.getColumnName(1) + "\tname\t");
+                    for (int i = 2; i <= numCol; i++)
+                        writer.write(rsmd.getColumnName(i) + "\t");
+                    writer.write(LINE_SEPARATOR);
+                    outputHeader = false;
+                }
+                ReferenceCache.Doctor doctor = _reference.doctor(DBproject.this, rs.getInt(1));
+                writer.write(rs.getString(1) + "\t" + (doctor == null ? null : doctor.name) + "\t");
+                for (int i = 2; i <= numCol; ++i)
+                    writer.write(rs.getString(i) + "\t");
+                writer.write(LINE_SEPARATOR);
+            }
+        };
+        try {
+            int rowCount = executeQueryAndStream(query, printer, params);
+            writer.flush();
+            return rowCount;
+        } catch (IOException e) {
+            throw new SQLException("Unable to write the result: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Method to print rows whose first column is a doctor_id like
+     * executeQueryAndPrintWithDoctorNames, e.g. the combined rows of the
+     * shards.
+     *
+     * @param header the column names
+     * @return the number of rows
+     * @throws java.sql.SQLException when a doctor's name could not be loaded
+     */
+    public int printWithDoctorNames(String[] header, List<List<String>> rows) throws SQLException {
+        StringBuilder text = new StringBuilder();
+        if (!rows.isEmpty()) {
+            text.append(header[0]).append("\tname\t");
+            for (int i = 1; i < header.length; ++i)
+                text.append(header[i]).append('\t');
+            text.append(LINE_SEPARATOR);
+        }
+        for (List<String> row : rows) {
+            ReferenceCache.Doctor doctor = _reference.doctor(this, Integer.parseInt(row.get(0)));
+            text.append(row.get(0)).append('\t').append(doctor == null ? null : doctor.name).append('\t');
+            for (int i = 1; i < row.size(); ++i)
+                text.append(row.get(i)).append('\t');
+            text.append(LINE_SEPARATOR);
+        }
+        this.out.print(text);
+        return rows.size();
+    }
+
+    /**
+     * Method to create an int4[] parameter, e.g. for "= any(?)".
+     */
+    public Array createIntArray(int[] values) throws SQLException {
+        Integer[] boxed = new Integer[values.length];
+        for (int i = 0; i < values.length; ++i)
+            boxed[i] = values[i];
+        return getConnection().createArrayOf("int4", boxed);
+    }
+
+    /**
+     * Method to create a varchar[] parameter, e.g. for unnest(?).
+     */
+    public Array createTextArray(String[] values) throws SQLException {
+        return getConnection().createArrayOf("varchar", values);
+    }
+
+    /**
+     * Method to execute an input query SQL instruction (i.e. SELECT).  This
+     * method issues the query to the DBMS and returns the results as
+     * a list of records. Each record in turn is a list of attribute values
+     *
+     * @param query  the input query string, with '?' for each parameter
+     * @param params the values bound to the placeholders
+     * @return the query result as a list of records
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public List<List<String>> executeQueryAndReturnResult(String query, Object... params) throws SQLException {
+        PreparedStatement stmt = prepare(query, params);
+        long start = System.nanoTime();
+        List<List<String>> result = new ArrayList<List<String>>();
+        try {
+            //issues the query instruction
+            ResultSet rs = stmt.executeQuery();
+
+            /*
+             * obtains the metadata object for the returned result set.  The metadata
+             * contains row and column info.
+             */
+            ResultSetMetaData rsmd = rs.getMetaData();
+            int numCol = rsmd.getColumnCount();
+
+            //iterates through the result set and saves the data returned by the query.
+            while (rs.next()) {
+                List<String> record = new ArrayList<String>();
+                for (int i = 1; i <= numCol; ++i)
+                    record.add(rs.getString(i));
+                result.add(record);
+            }//end while
+            rs.close();
+        } catch (SQLException e) {
+            this._operation.failed();
+            throw e;
+        } finally {
+            executed(query, params, start, 1, result.size());
+        }
+        return result;
+    }//end executeQueryAndReturnResult
+
+    /**
+     * Method to start a query that does not depend on the statements this
+     * session runs meanwhile, e.g. while the clerk is still typing.  It
+     * runs on a spare connection of the pool, outside of this session's
+     * transaction, and counts for the current operation.  When the pool
+     * has no spare connection the query runs at once on this session, so
+     * the caller never waits on a connection it holds itself.
+     *
+     * @param query  the input query string, with '?' for each parameter
+     * @param params the values bound to the placeholders
+     * @return the query result as a list of records, once done
+     */
+    public CompletableFuture<List<List<String>>> executeQueryAsync(final String query, final Object... params) {
+        return executeQueryAsync(this._pool, query, params);
+    }
+
+    /**
+     * Method to start a query like executeQueryAsync on the database of
+     * another pool, e.g. a shard.  When that pool has no spare connection
+     * the query runs at once on the calling thread.
+     *
+     * @param pool the pool of the database to query
+     */
+    public CompletableFuture<List<List<String>>> executeQueryAsync(ConnectionPool pool, final String query, final Object... params) {
+        return executeQueryAsync(pool, null, query, params);
+    }
+
+    /**
+     * Method to start a query like executeQueryAsync, and to tell once it
+     * is done whether the hot standby answered it, e.g. to keep the answer
+     * out of the result cache.
+     *
+     * @param standby set to whether the standby answered, before the
+     *                result is complete
+     */
+    public CompletableFuture<List<List<String>>> executeQueryAsync(AtomicBoolean standby, final String query, final Object... params) {
+        return executeQueryAsync(this._pool, standby, query, params);
+    }
+
+    private CompletableFuture<List<List<String>>> executeQueryAsync(ConnectionPool pool, final AtomicBoolean standby, final String query,
+                                                                    final Object... params) {
+        final DBproject session = new DBproject(pool, null, this.out, this.err);
+        session._operation = this._operation;
+        session._readOnly = this._readOnly && pool == this._pool;
+        try {
+            if (!session.tryAcquire()) {
+                if (pool == this._pool) {
+                    List<List<String>> rows = executeQueryAndReturnResult(query, params);
+                    if (standby != null) standby.set(isReadingStandby());
+                    return CompletableFuture.completedFuture(rows);
+                }
+                try {
+                    return CompletableFuture.completedFuture(session.executeQueryAndReturnResult(query, params));
+                } finally {
+                    session.release();
+                }
+            }
+        } catch (SQLException e) {
+            CompletableFuture<List<List<String>>> failed = new CompletableFuture<List<List<String>>>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                List<List<String>> rows = session.executeQueryAndReturnResult(query, params);
+                if (standby != null) standby.set(session.isReadingStandby());
+                return rows;
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            } finally {
+                session.release();
+            }
+        }, _async);
+    }
+
+    /**
+     * Method to run a query on this session's database and, with shards, on
+     * every other shard in parallel, e.g. to find the patients of every
+     * hospital.  The rows of this session's shard come first.
+     *
+     * @return the rows of every shard
+     * @throws java.sql.SQLException when a shard failed
+     */
+    public List<List<String>> executeQueryOnEveryShard(String query, Object... params) throws SQLException {
+        List<CompletableFuture<List<List<String>>>> answers = new ArrayList<CompletableFuture<List<List<String>>>>();
+        for (ConnectionPool pool : getOtherShards())
+            answers.add(executeQueryAsync(pool, query, params));
+        List<List<String>> rows = executeQueryAndReturnResult(query, params);
+        for (CompletableFuture<List<List<String>>> answer : answers)
+            rows.addAll(await(answer));
+        return rows;
+    }
+
+    /**
+     * Method to execute an insert into a reference table, e.g. doctor, on
+     * this session's database and then on every other shard, each shard in
+     * its own transaction.  When a shard fails, the row is kept by the
+     * shards before it, which the message counts.
+     *
+     * @return the number of rows inserted on this session's database
+     * @throws java.sql.SQLException when a shard failed
+     */
+    public int executeUpdateOnEveryShard(String sql, Object... params) throws SQLException {
+        int rows = executeUpdate(sql, params);
+        int written = 1;
+        for (ConnectionPool pool : getOtherShards()) {
+            DBproject shard = new DBproject(pool, null, this.out, this.err);
+            shard._operation = this._operation;
+            try {
+                shard.executeUpdate(sql, params);
+                ++written;
+            } catch (SQLException e) {
+                throw new SQLException("Written to " + written + " shard(s) only: " + e.getMessage(), e.getSQLState(), e);
+            } finally {
+                shard.release();
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Method to start looking up a patient by ID like executeQueryAsync
+     * does with FIND_PATIENT.  With shards, a patient who never booked at
+     * this session's shard is found on the shard they did book at.
+     */
+    public CompletableFuture<List<List<String>>> findPatientAsync(int patientId) {
+        final List<CompletableFuture<List<List<String>>>> answers = new ArrayList<CompletableFuture<List<List<String>>>>();
+        answers.add(executeQueryAsync(FIND_PATIENT, patientId));
+        for (ConnectionPool pool : getOtherShards())
+            answers.add(executeQueryAsync(pool, FIND_PATIENT, patientId));
+        if (answers.size() == 1) return answers.get(0);
+        return CompletableFuture.allOf(answers.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            for (CompletableFuture<List<List<String>>> answer : answers) {
+                if (!answer.join().isEmpty()) return answer.join();
+            }
+            return answers.get(0).join();
+        });
+    }
+
+    /**
+     * Method to wait for the result of executeQueryAsync.
+     *
+     * @throws java.sql.SQLException when the query failed
+     */
+    public static <T> T await(CompletableFuture<T> future) throws SQLException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Method to execute several statements in one round trip.  The driver
+     * sends them all before it waits for the first result, and the server
+     * runs them in order, in one transaction when the session is in auto
+     * commit.  Use it for statements whose parameters are all known up
+     * front, the later ones still see the changes of the earlier ones.
+     *
+     * @param statements the SQL statements, with '?' for each parameter
+     * @param params     the values of each statement, in the same order
+     * @return the records of each statement, or one record holding the
+     *         update count for statements that return no rows
+     * @throws java.sql.SQLException when a statement failed
+     */
+    public List<List<List<String>>> executePipelined(List<String> statements, List<Object[]> params) throws SQLException {
+        StringBuilder sql = new StringBuilder();
+        List<Object> flat = new ArrayList<Object>();
+        for (int i = 0; i < statements.size(); ++i) {
+            String statement = statements.get(i).trim();
+            if (statement.endsWith(";")) statement = statement.substring(0, statement.length() - 1);
+            sql.append(i == 0 ? "" : ";\n").append(statement);
+            flat.addAll(Arrays.asList(params.get(i)));
+        }
+        Object[] values = flat.toArray();
+        PreparedStatement stmt = prepare(sql.toString(), values);
+        long start = System.nanoTime();
+        List<List<List<String>>> results = new ArrayList<List<List<String>>>();
+        long rows = 0;
+        try {
+            boolean isResultSet = stmt.execute();
+            while (true) {
+                List<List<String>> result = new ArrayList<List<String>>();
+                if (isResultSet) {
+                    try (ResultSet rs = stmt.getResultSet()) {
+                        int numCol = rs.getMetaData().getColumnCount();
+                        while (rs.next()) {
+                            List<String> record = new ArrayList<String>();
+                            for (int i = 1; i <= numCol; ++i)
+                                record.add(rs.getString(i));
+                            result.add(record);
+                        }
+                    }
+                } else {
+                    int count = stmt.getUpdateCount();
+                    if (count < 0) break;
+                    result.add(Arrays.asList(String.valueOf(count)));
+                }
+                rows += result.size();
+                results.add(result);
+                isResultSet = stmt.getMoreResults();
+            }
+        } catch (SQLException e) {
+            this._operation.failed();
+            throw e;
+        } finally {
+            executed(sql.toString(), values, start, 1, rows);
+        }
+        return results;
+    }
+
+    /**
+     * Method to execute an update SQL statement once per row of parameters
+     * as one JDBC batch.  With reWriteBatchedInserts the driver sends the
+     * rows of an INSERT batch as multi-row inserts.
+     *
+     * @param sql  the input SQL string, with '?' for each parameter
+     * @param rows the values bound to the placeholders, one array per execution
+     * @return the update counts
+     * @throws java.sql.SQLException when the batch failed
+     */
+    public int[] executeBatch(String sql, List<Object[]> rows) throws SQLException {
+        PreparedStatement stmt = prepare(sql);
+        long start = System.nanoTime();
+        try {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; ++i)
+                    stmt.setObject(i + 1, row[i]);
+                stmt.addBatch();
+            }
+            return stmt.executeBatch();
+        } catch (SQLException e) {
+            this._operation.failed();
+            throw e;
+        } finally {
+            stmt.clearBatch();
+            executed(sql, new Object[]{rows.size() + " rows"}, start, 1, 0);
+        }
+    }
+
+    /**
+     * Method to execute an input query SQL instruction (i.e. SELECT).  This
+     * method issues the query to the DBMS and returns the number of results
+     *
+     * @param query  the input query string, with '?' for each parameter
+     * @param params the values bound to the placeholders
+     * @return the number of rows returned
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public int executeQuery(String query, Object... params) throws SQLException {
+        PreparedStatement stmt = prepare(query, params);
+        long start = System.nanoTime();
+        int rowCount = 0;
+        try {
+            //issues the query instruction
+            ResultSet rs = stmt.executeQuery();
+
+            //iterates through the result set and count nuber of results.
+            if (rs.next()) {
+                rowCount++;
+            }//end while
+            rs.close();
+        } catch (SQLException e) {
+            this._operation.failed();
+            throw e;
+        } finally {
+            executed(query, params, start, 1, rowCount);
+        }
+        return rowCount;
+    }
+
+    /**
+     * Method to fetch the last value from sequence. This
+     * method issues the query to the DBMS and returns the current
+     * value of sequence used for autogenerated keys
+     *
+     * @param sequence name of the DB sequence
+     * @return current value of a sequence
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+
+    public int getCurrSeqVal(String sequence) throws SQLException {
+        List<List<String>> rows = executeQueryAndReturnResult("Select currval(?)", sequence);
+        return rows.isEmpty() ? -1 : Integer.parseInt(rows.get(0).get(0));
+    }
+
+    /**
+     * Method to advance a sequence and return its new value.  The sequences
+     * behind IdAllocator step by a whole block, so the returned value is the
+     * last id of the block reserved by this call.
+     *
+     * @param sequence name of the DB sequence
+     * @return next value of a sequence
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public long getNextSeqVal(String sequence) throws SQLException {
+        List<List<String>> rows = executeQueryAndReturnResult("Select nextval(?)", sequence);
+        return rows.isEmpty() ? -1 : Long.parseLong(rows.get(0).get(0));
+    }
+
+    /*
+     * The SQL of the menu operations.  SchemaMigrator explains the same
+     * strings to check that they are answered from indexes.
+     */
+    //AddDoctor
+    static final String ADD_DOCTOR =
+            "INSERT INTO doctor (doctor_id , name , specialty , did) VALUES ( ? , ? , ? , ? );";
+    //AddPatient
+    static final String ADD_PATIENT =
+            "INSERT INTO Patient (patient_ID , name , gtype , age , address , number_of_appts) VALUES ( ? , ? , ? , ? , ? , ? );";
+    //AddAppointment
+    static final String ADD_APPOINTMENT =
+            "INSERT INTO appointment (appnt_ID , adate , time_slot , status) VALUES ( ? , ?::date , ? , 'AV' );";
+    //links an appointment to its doctor
+    static final String ADD_HAS_APPOINTMENT =
+            "INSERT INTO has_appointment (appt_id, doctor_id) VALUES ( ? , ? );";
+    //a patient of another shard, booked here for the first time, see bookAppointment()
+    static final String COPY_PATIENT =
+            "INSERT INTO Patient (patient_ID , name , gtype , age , address , number_of_appts) VALUES ( ? , ? , ? , ? , ? , 0 ) ON CONFLICT (patient_ID) DO NOTHING;";
+    //MakeAppointment, looks up the slot before asking for patient details
+    static final String FIND_PATIENT =
+            "select patient_id, name, gtype, age, address, number_of_appts from patient where patient_id = ?;";
+    static final String FIND_DOCTOR_APPOINTMENT =
+            "select status from appointment INNER JOIN has_appointment on appointment.appnt_id = has_appointment.appt_id where doctor_id = ? and appnt_id = ? ;";
+    //ListAppointmentsOfDoctor, one keyset page: rows after the last appnt_id shown
+    static final String LIST_APPOINTMENTS_OF_DOCTOR =
+            "select appnt_id, adate, time_slot, status from appointment  INNER JOIN has_appointment on appointment.appnt_id =  has_appointment.appt_id where adate between ?::date and ?::date and doctor_id = ? and (status = 'AC' or status = 'AV')" +
+            " and appnt_id > ? order by appnt_id limit ?;";
+    //ListAvailableAppointmentsOfDepartment, the doctors of the department come from the reference cache
+    static final String LIST_AVAILABLE_APPOINTMENTS_OF_DEPARTMENT =
+            "select appnt_id, adate, time_slot, status from appointment INNER JOIN has_appointment on appointment.appnt_id =  has_appointment.appt_id where status = 'AV' AND adate = ?::date and has_appointment.doctor_id = any(?);";
+    //NextAvailableAppointmentsOfDepartment, the SQL answer while the availability index is not loaded
+    static final String NEXT_AVAILABLE_APPOINTMENTS_OF_DEPARTMENT =
+            "select appnt_id, adate, time_slot, status from appointment INNER JOIN has_appointment on appointment.appnt_id =  has_appointment.appt_id where status = 'AV' AND adate >= ?::date and has_appointment.doctor_id = any(?)" +
+            " order by adate, split_part(time_slot, '-', 1)::time, appnt_id limit ?;";
+    //ListOverlappingAppointments, probes the GiST indexes of migration V004
+    static final String LIST_OVERLAPPING_APPOINTMENTS =
+            "select appnt_id, adate, time_slot, status from appointment where slot_range(adate, time_slot) && slot_range(?::date, ?) order by time_slot, appnt_id;";
+    static final String LIST_OVERLAPPING_APPOINTMENTS_OF_DOCTOR =
+            "select appnt_id, adate, time_slot, status from doctor_slot INNER JOIN appointment on appointment.appnt_id = doctor_slot.appt_id" +
+            " where doctor_id = ? and slot && slot_range(?::date, ?) order by time_slot, appnt_id;";
+    //ListStatusNumberOfAppointmentsPerDoctor, reads the counters of migration V002, names come from the reference cache
+    static final String LIST_STATUS_NUMBER_OF_APPOINTMENTS_PER_DOCTOR =
+            "select doctor_id, nullif(status, '') as status, n as count from doctor_status_counts where n > 0 order by doctor_id, count desc ;";
+    //FindPatientsCountWithStatus, reads the counters of migration V002, names come from the reference cache
+    static final String FIND_PATIENTS_COUNT_WITH_STATUS =
+            "select doctor_id, n as Num_of_Patient from doctor_hospital_status_counts where hid = 0 and status = ? and n > 0 order by Num_of_Patient  desc;";
+    //Q7 and Q8 with the counters of the appointments archived by Archiver added
+    static final String LIST_STATUS_NUMBER_OF_APPOINTMENTS_PER_DOCTOR_WITH_ARCHIVE =
+            "select doctor_id, nullif(status, '') as status, sum(n) as count from (" +
+            " select doctor_id, status, n from doctor_status_counts union all select doctor_id, status, n from doctor_status_counts_archive" +
+            ") c group by doctor_id, status having sum(n) > 0 order by doctor_id, count desc ;";
+    static final String FIND_PATIENTS_COUNT_WITH_STATUS_WITH_ARCHIVE =
+            "select doctor_id, sum(n) as Num_of_Patient from (" +
+            " select doctor_id, hid, status, n from doctor_hospital_status_counts" +
+            " union all select doctor_id, hid, status, n from doctor_hospital_status_counts_archive" +
+            ") c where hid = 0 and status = ? group by doctor_id having sum(n) > 0 order by Num_of_Patient  desc;";
+    //Q7 and Q8 before migration V002 is applied, grouping the appointments on every call
+    static final String LIST_STATUS_NUMBER_OF_APPOINTMENTS_PER_DOCTOR_UNCOUNTED =
+            "select h.doctor_id, a.status, count(*) as count from appointment a INNER JOIN has_appointment h on a.appnt_id = h.appt_id" +
+            " group by h.doctor_id, a.status order by doctor_id, count desc ;";
+    static final String FIND_PATIENTS_COUNT_WITH_STATUS_UNCOUNTED =
+            "select h.doctor_id, count(*) as Num_of_Patient from appointment a INNER JOIN has_appointment h on a.appnt_id = h.appt_id" +
+            " INNER JOIN searches s on s.aid = a.appnt_id where a.status = ? and s.hid = 0 group by h.doctor_id order by Num_of_Patient  desc;";
+    //Q8 over every hospital of a shard, which ShardRouter.gather adds up across the shards
+    static final String FIND_PATIENTS_COUNT_WITH_STATUS_ALL_HOSPITALS =
+            "select doctor_id, sum(n) as Num_of_Patient from doctor_hospital_status_counts where status = ? group by doctor_id having sum(n) > 0" +
+            " order by Num_of_Patient  desc;";
+    static final String FIND_PATIENTS_COUNT_WITH_STATUS_WITH_ARCHIVE_ALL_HOSPITALS =
+            "select doctor_id, sum(n) as Num_of_Patient from (" +
+            " select doctor_id, hid, status, n from doctor_hospital_status_counts" +
+            " union all select doctor_id, hid, status, n from doctor_hospital_status_counts_archive" +
+            ") c where status = ? group by doctor_id having sum(n) > 0 order by Num_of_Patient  desc;";
+    static final String FIND_PATIENTS_COUNT_WITH_STATUS_UNCOUNTED_ALL_HOSPITALS =
+            "select h.doctor_id, count(*) as Num_of_Patient from appointment a INNER JOIN has_appointment h on a.appnt_id = h.appt_id" +
+            " INNER JOIN searches s on s.aid = a.appnt_id where a.status = ? group by h.doctor_id order by Num_of_Patient  desc;";
+
+    /*
+     * Books an appointment in one statement, and so in one transaction and one
+     * round trip.  The slot row is locked first; an AV slot turns AC, an AC
+     * slot gets a new WL appointment linked to the same doctor.  A new
+     * patient is inserted under the id allocated for it, and the statement
+     * fails if the id is taken; a returning patient has number_of_appts
+     * raised, and nothing is booked when no patient has the id.
+     */
+    static final String BOOK_APPOINTMENT_NEW_PATIENT = bookAppointment(
+            " insert into patient (patient_id, name, gtype, age, address, number_of_appts) select ?, ?, ?, ?, ?, 1 from slot" +
+            " returning patient_id");
+    static final String BOOK_APPOINTMENT_RETURNING_PATIENT = bookAppointment(
+            " update patient set number_of_appts = coalesce(number_of_appts, 0) + 1 where patient_id = ? and exists (select 1 from slot)" +
+            " returning patient_id");
+
+    //the booking around the statement that inserts or updates the patient, an AC slot is only booked given a waitlist id
+    private static String bookAppointment(String patient) {
+        return "with slot as (" +
+                " select appnt_id, adate, time_slot, status from appointment INNER JOIN has_appointment on appointment.appnt_id = has_appointment.appt_id" +
+                " where appnt_id = ? and doctor_id = ? and (status = 'AV' or (status = 'AC' and ?::integer is not null)) for update of appointment" +
+                "), pat as (" + patient +
+                "), booked as (" +
+                " update appointment set status = 'AC' from slot where appointment.appnt_id = slot.appnt_id and slot.status = 'AV'" +
+                " and exists (select 1 from pat)" +
+                " returning appointment.appnt_id, appointment.adate, appointment.time_slot, appointment.status" +
+                "), waitlisted as (" +
+                " insert into appointment (appnt_id, adate, time_slot, status) select ?::integer, adate, time_slot, 'WL' from slot where status = 'AC'" +
+                " and exists (select 1 from pat)" +
+                " returning appnt_id, adate, time_slot, status" +
+                "), linked as (" +
+                " insert into has_appointment (appt_id, doctor_id) select appnt_id, ? from waitlisted" +
+                ") select * from booked union all select * from waitlisted;";
+    }
+
+    /**
+     * Method to book an appointment of a doctor for a patient.  The status
+     * check, the AV to AC transition or the new WL appointment, and the
+     * patient insert or update run as a single statement, so two clerks
+     * racing for the same AV slot end up with one AC and one WL appointment.
+     * The id of a WL appointment is only allocated when the slot turns out
+     * to be AC, at the cost of a second statement.
+     *
+     * @param doctorId   the doctor of the appointment
+     * @param apptId     the appointment the patient asks for
+     * @param patientId  the patient
+     * @param newPatient true to insert the patient, whose id must come from
+     *                   nextPatientId(); false for a returning patient, whose
+     *                   details are then left as they are
+     * @return the booked appointment as appnt_id, adate, time_slot, status,
+     *         or null when the appointment is not AV or AC for the doctor
+     * @throws java.sql.SQLException when the booking failed
+     * @throws IllegalStateException when a returning patient does not exist
+     */
+    public List<String> bookAppointment(int doctorId, int apptId, int patientId, boolean newPatient, String name, String gtype,
+                                        int age, String address) throws SQLException {
+        // most bookings take an AV slot, so the first try books it without a waitlist id
+        List<List<String>> booked = book(doctorId, apptId, patientId, newPatient, name, gtype, age, address, null);
+        if (booked.isEmpty()) {
+            // the slot is AC, or not AV or AC at all, which a fresh id does not change
+            booked = book(doctorId, apptId, patientId, newPatient, name, gtype, age, address, nextAppointmentId());
+        }
+        if (booked.isEmpty()) {
+            if (!newPatient && executeQueryAndReturnResult(FIND_PATIENT, patientId).isEmpty()) {
+                if (!copyPatient(patientId)) throw new IllegalStateException("Patient ID " + patientId + " not found");
+                return bookAppointment(doctorId, apptId, patientId, false, name, gtype, age, address);
+            }
+            return null;
+        }
+        // the availability index drops the slot when the change feed reports it
+        if (booked.get(0).get(3).equals("AC")) changedAppointment(doctorId, LocalDate.parse(booked.get(0).get(1)));
+        return booked.get(0);
+    }
+
+    //one try of bookAppointment, a null waitlistId books an AV slot only
+    private List<List<String>> book(int doctorId, int apptId, int patientId, boolean newPatient, String name, String gtype,
+                                    int age, String address, Integer waitlistId) throws SQLException {
+        return newPatient
+                ? executeQueryAndReturnResult(BOOK_APPOINTMENT_NEW_PATIENT, apptId, doctorId, waitlistId,
+                        patientId, name, gtype, age, address, waitlistId, doctorId)
+                : executeQueryAndReturnResult(BOOK_APPOINTMENT_RETURNING_PATIENT, apptId, doctorId, waitlistId,
+                        patientId, waitlistId, doctorId);
+    }
+
+    /*
+     * With shards, a patient is kept by the shard they were added at and by
+     * every shard they booked at since, each copy counting the appointments
+     * of its own shard.  The first booking at another shard copies them
+     * there, in the booking's transaction.
+     */
+    private boolean copyPatient(int patientId) throws SQLException {
+        for (ConnectionPool pool : getOtherShards()) {
+            List<List<String>> found = await(executeQueryAsync(pool, FIND_PATIENT, patientId));
+            if (found.isEmpty()) continue;
+            List<String> patient = found.get(0);
+            executeUpdate(COPY_PATIENT, patientId, patient.get(1), patient.get(2), Integer.parseInt(patient.get(3)), patient.get(4));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Method to hand back the borrowed connection and, when this session
+     * created the pool, close the physical connections.
+     */
+    public void cleanup() {
+        release();
+        if (this._ownsPool) {
+            this._pool.close();
+        }//end if
+    }//end cleanup
+
+    /**
+     * The main execution method
+     *
+     * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || (args.length > 3 && !isMode(args[3]))) {
+            System.err.println(
+                    "Usage: " + "java [-classpath <classpath>] " + DBproject.class.getName() +
+                            " <dbname> <port> <user> [-server <listen port> [<pool size>]"
+                            + " | -migrate [<migrations dir>] | -checkplans | -checkcounts | -load <csv dir> [<parallel tables>]"
+                            + " | -archive [<days>] | -script <command file, - for standard input> | -generate [<days>]"
+                            + " | -export <report, e.g. Q7, or table> <file, - for standard out> [<report arguments>]"
+                            + " | -loaddrive [<seconds> [<clerks> [<mix, e.g. 4:20,5:30>]]]]");
+            return;
+        }//end if
+        String mode = args.length > 3 ? args[3] : "";
+        // exported to standard out, the data goes there alone and the messages to standard error
+        PrintStream data = System.out;
+        if (mode.equals("-export") && args.length > 5 && args[5].equals("-")) System.setOut(System.err);
+        // periodic metrics table, see Metrics for the settings
+        Metrics.startDumper(System.err);
+
+        DBproject esql = null;
+        //non zero when a check found a problem or the mode failed, so scripts and CI jobs can tell
+        int status = 0;
+
+        try {
+            System.out.println("(1)");
+
+            try {
+                Class.forName("org.postgresql.Driver");
+            } catch (Exception e) {
+
+                System.out.println("Where is your PostgreSQL JDBC Driver? " + "Include in your library path!");
+                e.printStackTrace();
+                return;
+            }
+
+            System.out.println("(2)");
+            String dbname = args[0];
+            String dbport = args[1];
+            String user = args[2];
+
+            if (mode.equals("-server")) {
+                int listenPort = Integer.parseInt(args[4]);
+                int poolSize = args.length >= 6 ? Integer.parseInt(args[5]) : ConnectionPool.DEFAULT_MAX_SIZE;
+                ConnectionPool pool = createPool(dbname, dbport, user, "", poolSize);
+                startShards(dbname, user, "", poolSize);
+                startReplica(dbname, user, "");
+                startAvailabilityIndex(pool);
+                Archiver.start(pool, System.err);
+                try {
+                    serve(pool, listenPort);
+                } finally {
+                    pool.close();
+                }
+                return;
+            }
+            if (mode.equals("-load")) {
+                int parallelism = args.length > 5 ? Integer.parseInt(args[5]) : 4;
+                // one connection per table copied in parallel, plus the session's own
+                ConnectionPool pool = createPool(dbname, dbport, user, "", parallelism + 1);
+                esql = new DBproject(pool, in(), System.out);
+                long start = System.currentTimeMillis();
+                long rows = new BulkLoader(esql, parallelism).load(new File(args[4]));
+                System.out.println("Loaded " + rows + " rows in " + (System.currentTimeMillis() - start) + " ms");
+                esql.release();
+                pool.close();
+                esql = null;
+                return;
+            }
+
+            if (mode.equals("-loaddrive")) {
+                int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 60;
+                int clerks = args.length > 5 ? Integer.parseInt(args[5]) : ConnectionPool.DEFAULT_MAX_SIZE;
+                String mix = args.length > 6 ? args[6] : LoadDriver.DEFAULT_MIX;
+                ConnectionPool pool = createPool(dbname, dbport, user, "", clerks);
+                startReplica(dbname, user, "");
+                try {
+                    new LoadDriver(pool, System.out, clerks).run(seconds, LoadDriver.parseMix(mix));
+                } finally {
+                    pool.close();
+                }
+                return;
+            }
+
+            esql = new DBproject(dbname, dbport, user, "");
+            if (mode.equals("-migrate")) {
+                File dir = new File(args.length > 4 ? args[4] : "../sql/migrations");
+                int applied = new SchemaMigrator(esql).migrate(dir);
+                System.out.println(applied + " migration(s) applied");
+            } else if (mode.equals("-checkplans")) {
+                if (!new SchemaMigrator(esql).checkPlans()) status = 1;
+            } else if (mode.equals("-checkcounts")) {
+                StatusCounts counts = new StatusCounts(esql);
+                int mismatches = counts.check();
+                if (mismatches > 0) {
+                    System.out.println(mismatches + " counter(s) differ from the recompute, rebuilding");
+                    counts.rebuild();
+                    // rebuilt, but the drift still points at a write path that skips the counters
+                    status = 1;
+                } else {
+                    System.out.println("Counters match the recompute");
+                }
+            } else if (mode.equals("-archive")) {
+                int days = args.length > 4 ? Integer.parseInt(args[4]) : Archiver.DEFAULT_AFTER_DAYS;
+                long archived = new Archiver(esql, Integer.getInteger("dbproject.archive.batchSize", Archiver.DEFAULT_BATCH_SIZE))
+                        .archiveBefore(LocalDate.now().minusDays(days));
+                System.out.println(archived + " past appointment(s) archived");
+            } else if (mode.equals("-generate")) {
+                int days = args.length > 4 ? Integer.parseInt(args[4]) : SlotGenerator.DEFAULT_HORIZON_DAYS;
+                LocalDate through = LocalDate.now().plusDays(days - 1);
+                esql.beginOperation("SlotGenerator");
+                SlotGenerator generator = new SlotGenerator(esql);
+                long added = generator.generate(through);
+                esql.endOperation();
+                System.out.println(added + " appointment(s) opened through " + through
+                        + (generator.getSkippedWindows() > 0 ? ", " + generator.getSkippedWindows() + " invalid or overlapping window(s) skipped" : ""));
+            } else if (mode.equals("-export")) {
+                if (args.length < 6) throw new IllegalArgumentException("-export takes <report or table> <file, - for standard out>");
+                startReplica(dbname, user, "");
+                long start = System.currentTimeMillis();
+                esql.beginOperation("ReportExporter");
+                long rows;
+                try (OutputStream out = ReportExporter.open(args[5], data)) {
+                    rows = new ReportExporter(esql).export(args[4], Arrays.copyOfRange(args, 6, args.length), out,
+                            ReportExporter.formatOf(args[5]));
+                } finally {
+                    esql.endOperation();
+                }
+                System.out.println(rows + " row(s) exported to " + args[5] + " in " + (System.currentTimeMillis() - start) + " ms");
+            } else if (mode.equals("-script")) {
+                startReplica(dbname, user, "");
+                BufferedReader script = args[4].equals("-") ? esql.in : new BufferedReader(new FileReader(args[4]));
+                try {
+                    new ScriptRunner(esql, Integer.getInteger("dbproject.script.groupSize", ScriptRunner.DEFAULT_GROUP_SIZE)).run(script);
+                } finally {
+                    script.close();
+                }
+            } else {
+                startShards(dbname, user, "", ConnectionPool.DEFAULT_MAX_SIZE);
+                startReplica(dbname, user, "");
+                startAvailabilityIndex(esql.getPool());
+                Archiver.start(esql.getPool(), System.err);
+                runMenu(esql);
+            }
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            status = 1;
+        } finally {
+            try {
+                if (esql != null) {
+                    System.out.print("Disconnecting from database...");
+                    esql.cleanup();
+                    System.out.println("Done\n\nBye !");
+                }//end if
+            } catch (Exception e) {
+                // ignored.
+            }
+        }
+        if (status != 0) System.exit(status);
+    }
+
+    private static boolean isMode(String arg) {
+        return arg.equals("-server") || arg.equals("-migrate") || arg.equals("-checkplans") || arg.equals("-checkcounts")
+                || arg.equals("-load") || arg.equals("-archive") || arg.equals("-script")
+                || arg.equals("-generate") || arg.equals("-export")
+                || arg.equals("-loaddrive");
+    }
+
+    //metrics names of the menu options, by number
+    static final String[] OPERATIONS = {null, "AddDoctor", "AddPatient", "AddAppointment", "MakeAppointment",
+            "ListAppointmentsOfDoctor", "ListAvailableAppointmentsOfDepartment", "ListStatusNumberOfAppointmentsPerDoctor",
+            "FindPatientsCountWithStatus", null, "BatchAdd", "NextAvailableAppointmentsOfDepartment",
+            "ListOverlappingAppointments", "CancelAppointments", "SearchPatients"};
+
+    /**
+     * Method to run the main menu of one session until the clerk exits.  A
+     * connection is borrowed for each operation and handed back afterwards,
+     * so idle sessions do not hold connections.
+     *
+     * @param esql the session
+     */
+    public static void runMenu(DBproject esql) {
+        // with shards, the clerk's session works on the database of the clerk's hospital
+        ShardRouter shards = _shards;
+        if (shards != null) {
+            int hospital = readHospital(esql);
+            esql.release();
+            esql = new DBproject(shards.poolOf(hospital), false, esql.in, esql.out, esql.err);
+        }
+        boolean keepon = true;
+        while (keepon) {
+            esql.out.println("MAIN MENU");
+            esql.out.println("---------");
+            esql.out.println("1. Add Doctor");
+            esql.out.println("2. Add Patient");
+            esql.out.println("3. Add Appointment");
+            esql.out.println("4. Make an Appointment");
+            esql.out.println("5. List appointments of a given doctor");
+            esql.out.println("6. List all available appointments of a given department");
+            esql.out.println("7. List total number of different types of appointments per doctor in descending order");
+            esql.out.println("8. Find total number of patients per doctor with a given status");
+            esql.out.println("9. < EXIT");
+            esql.out.println("10. Batch add doctors, patients or appointments");
+            esql.out.println("11. List the next available appointments of a given department");
+            esql.out.println("12. List appointments overlapping a time slot on a given date");
+            esql.out.println("13. Cancel appointments and promote the waitlist");
+            esql.out.println("14. Search patients by name or address");
+
+            int choice = readChoice(esql);
+            if (choice >= 1 && choice < OPERATIONS.length && choice != 9) esql.beginOperation(OPERATIONS[choice]);
+            try {
+                switch (choice) {
+                    case 1:
+                        AddDoctor(esql);
+                        break;
+                    case 2:
+                        AddPatient(esql);
+                        break;
+                    case 3:
+                        AddAppointment(esql);
+                        break;
+                    case 4:
+                        MakeAppointment(esql);
+                        break;
+                    case 5:
+                        ListAppointmentsOfDoctor(esql);
+                        break;
+                    case 6:
+                        ListAvailableAppointmentsOfDepartment(esql);
+                        break;
+                    case 7:
+                        ListStatusNumberOfAppointmentsPerDoctor(esql);
+                        break;
+                    case 8:
+                        FindPatientsCountWithStatus(esql);
+                        break;
+                    case 9:
+                        keepon = false;
+                        break;
+                    case 10:
+                        BatchAdd(esql);
+                        break;
+                    case 11:
+                        NextAvailableAppointmentsOfDepartment(esql);
+                        break;
+                    case 12:
+                        ListOverlappingAppointments(esql);
+                        break;
+                    case 13:
+                        CancelAppointments(esql);
+                        break;
+                    case 14:
+                        SearchPatients(esql);
+                        break;
+                }
+            } finally {
+                if (choice >= 1 && choice < OPERATIONS.length && choice != 9) esql.endOperation();
+                esql.release();
+            }
+        }
+    }
+
+    /**
+     * Method to serve the menu to many clerks from one JVM.  Every accepted
+     * socket gets its own session thread and DBproject, and all sessions
+     * share the pool, so connection setup and warm up are paid once.
+     * Clerks connect with any line based client, e.g. nc host port.
+     *
+     * @param pool       the shared connection pool
+     * @param listenPort the TCP port to accept sessions on
+     * @throws java.io.IOException when the server socket can not be opened
+     */
+    public static void serve(final ConnectionPool pool, int listenPort) throws IOException {
+        ExecutorService sessions = Executors.newCachedThreadPool();
+        try (ServerSocket server = new ServerSocket(listenPort)) {
+            System.out.println("Serving clerk sessions on port " + listenPort);
+            while (true) {
+                final Socket socket = server.accept();
+                sessions.submit(() -> {
+                    try (Socket s = socket) {
+                        DBproject esql = new DBproject(pool,
+                                new BufferedReader(new InputStreamReader(s.getInputStream())),
+                                new PrintStream(s.getOutputStream(), true));
+                        runMenu(esql);
+                        esql.cleanup();
+                    } catch (IOException e) {
+                        System.err.println(e.getMessage());
+                    }
+                });
+            }
+        } finally {
+            sessions.shutdownNow();
+        }
+    }
+
+    //the hospital of the clerk, -1 for the default shard when the input ends
+    private static int readHospital(DBproject esql) {
+        esql.out.println("Enter your Hospital ID:");
+        while (true) {
+            try {
+                String hid = esql.in.readLine();
+                if (hid == null) return -1;
+                if (!hid.isEmpty() && checkint(hid) && esql.getReferenceCache().hospital(esql, Integer.parseInt(hid)) != null)
+                    return Integer.parseInt(hid);
+            } catch (Exception e) {
+                esql.err.println(e.getMessage());
+            }
+            esql.out.println("Invalid Input, Try Again.");
+        }
+    }
+
+    public static int readChoice(DBproject esql) {
+        int input;
+        // returns only if a correct value is given.
+        do {
+            esql.out.print("Please make your choice: ");
+            try { // read the integer, parse it and break.
+                String line = esql.in.readLine();
+                if (line == null) return 9; // end of input, exit
+                input = Integer.parseInt(line);
+                break;
+            } catch (Exception e) {
+                esql.out.println("Your input is invalid!");
+                continue;
+            }//end try
+        } while (true);
+        return input;
+    }//end readChoice
+    public static boolean checkint( String s ) {
+        int ascii = (int)s.charAt(0);
+        //System.out.println("castAscii " + ascii);
+        if(ascii<48 || ascii>57) {
+            return false;
+        }
+        Long i = Long.parseLong(s);
+        if(i>2147483647 || i<0) {
+            return false;
+        }
+        return true;
+    }
+    public static boolean checkage( String s ) {
+        int ascii = (int)s.charAt(0);
+        //System.out.println("castAscii " + ascii);
+        if(ascii<48 || ascii>57) {
+            return false;
+        }
+        Long i = Long.parseLong(s);
+        if(i>150 || i<0) {
+            return false;
+        }
+        return true;
+    }
+    public static boolean checkstatus( String s ) {
+        if(s.equals("AV") || s.equals("AC") || s.equals("WL") || s.equals("PA") )return true;
+        return false;
+    }
+    public static boolean checkdate( String s ) {
+        //yyyy/mm/dd
+        if( s.length() != 10) return false;
+        if (s.charAt(4) != '/' || s.charAt(7) != '/' ) {
+            return false;
+        }
+        for ( int i =0;i<4;i++){ //yyyy
+            int ascii = (int)s.charAt(i);
+            if(ascii<48 || ascii>57)return false;
+        }
+        for ( int i =5;i<7;i++){ //mm
+            int ascii = (int)s.charAt(i);
+            if(ascii<48 || ascii>57)return false;
+        }
+        for ( int i =8;i<10;i++){ //dd
+            int ascii = (int)s.charAt(i);
+            if(ascii<48 || ascii>57)return false;
+        }
+        String year = s.substring(0,4);
+        if(Integer.parseInt(s.substring(0,4)) > 3000 ||Integer.parseInt(s.substring(0,4)) < 1911) return false;
+        //System.out.println("year " + year );
+        String mon = s.substring(5,7);
+        // System.out.println("mmm " + mon );
+        if(Integer.parseInt(s.substring(5,7)) > 12 ||Integer.parseInt(s.substring(5,7)) < 1) return false;
+        String day = s.substring(8,10);
+        //System.out.println("dddd " + day );
+        if(Integer.parseInt(s.substring(8,10)) > 31 ||Integer.parseInt(s.substring(8,10)) < 1) return false;
+
+        return true;
+    }
+    public static boolean checktime( String s ) {
+        //08:00-10:00, parsed the way the time slots are compared, see TimeSlot
+        return s.length() == 11 && TimeSlot.parse(s) != null;
+    }
+
+    public static boolean checkname( String s ) {
+        for ( int i =0;i<s.length();i++){
+            if(Character.toUpperCase(s.charAt(i)) !=32){
+            if(Character.toUpperCase(s.charAt(i))>90 || Character.toUpperCase(s.charAt(i))<65 ) return false;}
+        }
+
+        return true;
+    }
+    public static void AddDoctor(DBproject esql) {//1
+        /*
+         * doctor_ID INTEGER NOT NULL,
+         *      	name VARCHAR(128),
+         *              specialty VARCHAR(24),
+         *              did INTEGER NOT NULL,
+         *              PRIMARY KEY (doctor_ID),
+         *              FOREIGN KEY (did) REFERENCES Department(dept_ID)
+         *              */
+        try {
+
+            Integer id = esql.nextDoctorId();
+            // the connection goes back to the pool while the clerk types
+            esql.release();
+            String name, sp, did;
+
+            esql.out.println("Enter Doctor Name");
+            name = esql.in.readLine();
+            while(!checkname(name)){
+                esql.out.println("Invalid Input, Try Again.");
+                name = esql.in.readLine();
+            }
+            esql.out.println("Enter Specialty");
+            sp = esql.in.readLine();
+            while(!checkname(sp)){
+                esql.out.println("Invalid Input, Try Again.");
+                sp = esql.in.readLine();
+            }
+            esql.out.println("Enter Department ID");
+            did = esql.in.readLine();
+            while(!checkint(did)){
+                esql.out.println("Invalid Input, Try Again.");
+                did = esql.in.readLine();
+
+            }
+
+
+            esql.out.println("New Doctor: ID: " + id + " Name: " + name + " specialty: " + sp + " did: " + did);
+            String query = ADD_DOCTOR;
+            // every shard books appointments of every doctor
+            esql.executeUpdateOnEveryShard(query, id, name, sp, Integer.parseInt(did));
+            esql.getReferenceCache().invalidate();
+        } catch (Exception e) {
+
+            esql.err.println(e.getMessage());
+
+
+        }
+
+    }
+
+    public static void AddPatient(DBproject esql) {//2
+
+
+		/*patient_ID INTEGER NOT NULL,
+		name VARCHAR(128) NOT NULL,
+		gtype _GENDER NOT NULL,
+		age INTEGER NOT NULL,
+		address VARCHAR(256),
+		number_of_appts INTEGER,
+		PRIMARY KEY (patient_ID)*/
+        try {
+
+
+            String name, gtype, age, address, napp;
+
+
+            Integer pid = esql.nextPatientId();
+            // the connection goes back to the pool while the clerk types
+            esql.release();
+            //esql.out.println("nint: " + pid);
+            //String valeur = esql.executeQueryAndReturnResult("select max(patient_id) from patient;").get(0).get(1);
+            // esql.out.println(valeur);
+            //esql.out.println("===========");
+
+
+            esql.out.println("Enter Patient Name");
+            name = esql.in.readLine();
+            while(!checkname(name)){
+                esql.out.println("Invalid Input, Try Again.");
+                name = esql.in.readLine();
+            }
+            esql.out.println("Enter gender M/F");
+            gtype = esql.in.readLine().toUpperCase();
+            while(!gtype.toUpperCase().equals("M") && !gtype.toUpperCase().equals("F")){
+                esql.out.println("Invalid Input, Try Again.");
+                gtype = esql.in.readLine().toUpperCase();
+            }
+            esql.out.println("Enter  age");
+            age = esql.in.readLine();
+            while(!checkage(age)){
+                esql.out.println("Invalid Input, Try Again.");
+                age= esql.in.readLine();
+            }
+            esql.out.println("Enter address");
+            address = esql.in.readLine();
+            esql.out.println("Enter number_of_appts");
+            napp = esql.in.readLine();
+            while(!checkint(napp)){
+                esql.out.println("Invalid Input, Try Again.");
+                napp = esql.in.readLine();
+            }
+            if (!isNewPatient(esql, name)) {
+                esql.out.println("Patient not added");
+                return;
+            }
+            esql.out.println("New Patient: ID: " + pid + " Name: " + name + " gender: " + gtype + " age: " + age + " address: " + address + " number_of_appts: " + napp);
+            String query = ADD_PATIENT;
+            esql.executeUpdate(query, pid, name, gtype, Integer.parseInt(age), address, Integer.parseInt(napp));
+            esql.getPatientSearch().add(pid, name, address);
+        } catch (Exception e) {
+
+            esql.err.println(e.getMessage());
+
+
+        }
+    }
+
+
+    public static void AddAppointment(DBproject esql) {//3
+
+
+		/*
+		appnt_ID INTEGER NOT NULL,
+		adate DATE NOT NULL, eg '2018-10-20'
+		time_slot VARCHAR(11),
+		status _STATUS,
+		PRIMARY KEY (appnt_ID)
+		*/
+        try {
+            Integer appnt_ID = esql.nextAppointmentId();
+            // the connection goes back to the pool while the clerk types
+            esql.release();
+            String adate, time_slot;
+            esql.out.println("Enter Date (YYYY/MM/DD):");
+            adate = esql.in.readLine();
+            while(!checkdate(adate)){
+                esql.out.println("Invalid Input, Try Again.");
+                adate = esql.in.readLine();
+            }
+            esql.out.println("Enter time_slot (HH:MM-HH:MM):");
+            time_slot = esql.in.readLine();
+            while(!checktime(time_slot)){
+                esql.out.println("Invalid Input, Try Again.");
+                time_slot = esql.in.readLine();
+            }
+            esql.out.println("New Appointment: ID: " + appnt_ID + " Date: " + adate + " time slot: " + time_slot + " Status: AV");
+            String query = ADD_APPOINTMENT;
+            esql.executeUpdate(query, appnt_ID, adate, time_slot);
+        } catch (Exception e) {
+
+            esql.err.println(e.getMessage());
+
+
+        }
+
+
+    }
+
+
+    public static void MakeAppointment(DBproject esql) {//4
+        //
+        // Given a patient, a doctor and an appointment of the doctor that s/he wants to take, add an appointment to the DB
+        try {
+            String doctor_id, appt_id;
+            String patient_id, name, gtype, age, address;
+            esql.out.println("Enter Doctor ID:");
+            doctor_id = esql.in.readLine();
+            while(!checkint(doctor_id)){
+                esql.out.println("Invalid Input, Try Again.");
+                doctor_id = esql.in.readLine();
+            }
+            esql.out.println("Enter Appointment ID:");
+            appt_id = esql.in.readLine();
+            while(!checkint(appt_id)){
+                esql.out.println("Invalid Input, Try Again.");
+                appt_id = esql.in.readLine();
+            }
+
+            // one lookup for both the doctor link and the status, the booking re-checks it under a row lock
+            String query = FIND_DOCTOR_APPOINTMENT;
+            List<List<String>> found = esql.executeQueryAndReturnResult(query, Integer.parseInt(doctor_id), Integer.parseInt(appt_id));
+            // no connection is held while the clerk types, the booking borrows one again
+            esql.release();
+
+            if (found.size() == 1) { // found docid appt id, continue patient details
+                String foundstatus = found.get(0).get(0); //check av ac ok, wl pa not ok
+                if (foundstatus.equals("AV") || foundstatus.equals("AC")) { // can make appt
+                    esql.out.println("Enter Patient Details \n Enter Patient ID (if you are new patient, enter 'x'): ");
+                    patient_id = esql.in.readLine();
+                    if (!patient_id.equals("x") ) {
+                        while(!checkint(patient_id) ){
+
+                            esql.out.println("Invalid Input, Try Again.");
+                            patient_id = esql.in.readLine();
+                        }
+                    }
+                    // the patient record is looked up while the clerk types the details
+                    CompletableFuture<List<List<String>>> patient = patient_id.equals("x") ? null
+                            : esql.findPatientAsync(Integer.parseInt(patient_id));
+                    // the lookup ran on this session when the pool had no spare connection
+                    esql.release();
+                    esql.out.println("Enter name:");
+                    name = esql.in.readLine();
+                    while(!checkname(name)){
+                        esql.out.println("Invalid Input, Try Again.");
+                        name = esql.in.readLine();
+                    }
+                    esql.out.println("Enter Gender as 'M/F':");
+                    gtype = esql.in.readLine().toUpperCase();
+                    while(!gtype.toUpperCase().equals("M") && !gtype.toUpperCase().equals("F")){
+                        esql.out.println("Invalid Input, Try Again.");
+                        gtype = esql.in.readLine().toUpperCase();
+                    }
+                    esql.out.println("Enter age: ");
+                    age = esql.in.readLine();
+                    while(!checkage(age)){
+                        esql.out.println("Invalid Input, Try Again.");
+                        age = esql.in.readLine();
+                    }
+                    esql.out.println("Enter address: ");
+                    address = esql.in.readLine();
+                    Integer newpid;
+                    boolean newPatient = false;
+                    if (patient_id.equals("x")) { //new patient, unless the clerk finds the patient among the known ones
+                        List<PatientSearch.Match> known = esql.getPatientSearch().similar(esql, name, PatientSearch.DEFAULT_LIMIT);
+                        esql.release();
+                        String chosen = "x";
+                        if (!known.isEmpty()) {
+                            printPatients(esql, known);
+                            esql.out.println("Enter the patient ID if one of them is you, or 'x' for a new patient:");
+                            chosen = esql.in.readLine();
+                            while (chosen != null && !chosen.equals("x") && !(checkint(chosen) && isListed(known, chosen))) {
+                                esql.out.println("Invalid Input, Try Again.");
+                                chosen = esql.in.readLine();
+                            }
+                        }
+                        if (chosen == null || chosen.equals("x")) {
+                            esql.out.println("Welcome new patient!");
+                            newpid = esql.nextPatientId();
+                            newPatient = true;
+                        } else {
+                            newpid = Integer.parseInt(chosen);
+                        }
+                    } else { //old patient
+                        List<List<String>> found_patient = await(patient);
+                        esql.release();
+                        if (!found_patient.isEmpty()) esql.out.println("patient_id\tname\tgtype\tage\taddress\tnumber_of_appts\t");
+                        for (List<String> row : found_patient)
+                            esql.out.println(String.join("\t", row) + "\t");
+                        esql.out.println(found_patient.size());
+                        esql.out.println("is the info above yours? Y/N");
+                        // only a patient that was found can be booked as returning
+                        if(esql.in.readLine().toUpperCase().equals("Y") && !found_patient.isEmpty()){
+                            newpid = Integer.parseInt(patient_id);
+                        }
+                        else{
+                            esql.out.println("please enter as new patient, patient id not found");
+                            return;
+                        }
+
+                    }
+                    List<String> booked = esql.bookAppointment(Integer.parseInt(doctor_id), Integer.parseInt(appt_id),
+                            newpid, newPatient, name, gtype, Integer.parseInt(age), address);
+                    if (booked == null) { // taken to WL or PA by another clerk since the lookup
+                        esql.out.println("Appointment is Not available ");
+                        return;
+                    }
+                    if (newPatient) esql.getPatientSearch().add(newpid, name, address);
+                    if (booked.get(3).equals("AC")) {
+                        esql.out.println("status is Available, update status to Active");
+                    } else {
+                        esql.out.println("The appointment is Active, new appointment added with appointment ID: " + booked.get(0) + " Status: WL" );
+                    }
+                    esql.out.println("Your Appointment is: ");
+                    esql.out.println("appnt_id\tadate\ttime_slot\tstatus\t");
+                    for (String value : booked)
+                        esql.out.print(value + "\t");
+                    esql.out.println();
+                    esql.out.println(1);
+
+                } else {// wl or pa
+
+                    esql.out.println("Appointment is Not available ");
+                    return;
+                }
+            } else { // if appt or doc count =0
+                esql.out.println("Appointment ID or Doctor ID not found ");
+                return;
+            }
+
+        }//try
+        catch (
+                Exception e) {
+
+            esql.err.println(e.getMessage());
+
+
+        }
+
+    }
+
+    public static void ListAppointmentsOfDoctor(DBproject esql) {//5
+        // For a doctor ID and a date range, find the list of active and available appointments of the doctor
+        //select * from appointment  INNER JOIN has_appointment on appointment.appnt_id =  has_appointment.appt_id where  adate between '2011/1/1' and '2022/1/1'  and doctor_id = 25 and (status = 'AC' or status = 'AV');
+
+        try {
+            String doctor_id;
+            String date1, date2;
+            esql.out.println("Enter Doctor ID:");
+            doctor_id = esql.in.readLine();
+            while(!checkint(doctor_id)){
+                esql.out.println("Invalid Input, Try Again.");
+                doctor_id = esql.in.readLine();
+            }
+            esql.out.println("Enter Start Date (YYYY/MM/DD):");
+            String temp1 = esql.in.readLine();
+            while(!checkdate(temp1)){
+                esql.out.println("Invalid Input, Try Again.");
+                temp1 = esql.in.readLine();
+            }
+            esql.out.println("Enter End Date (YYYY/MM/DD):");
+            String temp2 =  esql.in.readLine();
+            while(!checkdate(temp2)){
+                esql.out.println("Invalid Input, Try Again.");
+                temp2= esql.in.readLine();
+            }
+            date1 = temp1;
+            date2 = temp2;
+            esql.out.println("Looking for appointment for DocID : " + doctor_id + " Date Range: '" + date1 + "' - '" + date2 + "'");
+            String query = LIST_APPOINTMENTS_OF_DOCTOR;
+            final int doctor = Integer.parseInt(doctor_id);
+            LocalDate from = LocalDate.parse(date1, SLASH_DATE);
+            LocalDate to = LocalDate.parse(date2, SLASH_DATE);
+            ResultCache cache = esql.getResultCache();
+
+            // keyset pagination, every page starts after the last appnt_id of the previous one
+            final int[] lastId = {-1};
+            int total = 0;
+            CompletableFuture<List<List<String>>> prefetched = null;
+            long prefetchedAt = 0;
+            AtomicBoolean prefetchedFromStandby = new AtomicBoolean();
+            while (true) {
+                String key = ResultCache.key(5, doctor, from, to, lastId[0], esql.getPageSize());
+                List<List<String>> page = cache.get(key);
+                if (page == null && prefetched != null) {
+                    page = await(prefetched);
+                    if (!prefetchedFromStandby.get()) cache.put(key, prefetchedAt, new int[]{doctor}, from, to, page);
+                }
+                int rows;
+                if (page != null) {
+                    if (!page.isEmpty()) esql.out.println("appnt_id\tadate\ttime_slot\tstatus\t");
+                    for (List<String> row : page) {
+                        lastId[0] = Integer.parseInt(row.get(0));
+                        esql.out.println(String.join("\t", row) + "\t");
+                    }
+                    rows = page.size();
+                } else {
+                    long generation = cache.generation();
+                    final List<List<String>> read = new ArrayList<List<String>>();
+                    rows = esql.executeQueryAndStream(query, new RowHandler() {
+                        private boolean outputHeader = true;
+
+                        public void handle(ResultSet rs) throws SQLException {
+                            if (outputHeader) {
+                                esql.out.println("appnt_id\tadate\ttime_slot\tstatus\t");
+                                outputHeader = false;
+                            }
+                            lastId[0] = rs.getInt(1);
+                            read.add(Arrays.asList(String.valueOf(lastId[0]), rs.getString(2), rs.getString(3), rs.getString(4)));
+                            esql.out.println(lastId[0] + "\t" + rs.getString(2) + "\t" + rs.getString(3) + "\t" + rs.getString(4) + "\t");
+                        }
+                    }, date1, date2, doctor, lastId[0], esql.getPageSize());
+                    if (!esql.isReadingStandby()) cache.put(key, generation, new int[]{doctor}, from, to, read);
+                }
+                total += rows;
+                if (rows < esql.getPageSize()) break;
+                // the next page is on its way while the clerk decides, unless it is cached
+                prefetched = null;
+                if (!cache.contains(ResultCache.key(5, doctor, from, to, lastId[0], esql.getPageSize()))) {
+                    prefetchedAt = cache.generation();
+                    prefetched = esql.executeQueryAsync(prefetchedFromStandby, query, date1, date2, doctor, lastId[0], esql.getPageSize());
+                }
+                // the prefetch runs on its own session, this one holds no connection while the clerk decides
+                esql.release();
+                esql.out.println("Show next page? Y/N");
+                String more = esql.in.readLine();
+                if (more == null || !more.toUpperCase().equals("Y")) break;
+            }
+            esql.out.println(total);
+        } catch (Exception e) {
+
+            esql.err.println(e.getMessage());
+
+
+        }
+
+    }
+
+    public static void ListAvailableAppointmentsOfDepartment(DBproject esql) {//6
+        // For a department name and a specific date, find the list of available appointments of the department
+
+        try {
+            String date, name1;
+            esql.out.println("Enter Date (YYYY/MM/DD) :");
+            String temp2 = esql.in.readLine();
+            while(!checkdate(temp2)){
+                esql.out.println("Invalid Input, Try Again.");
+                temp2= esql.in.readLine();
+            }
+            date = temp2;
+            esql.out.println("Enter Department Name:");
+            name1 = esql.in.readLine();
+            while(!checkname(name1)){
+                esql.out.println("Invalid Input, Try Again.");
+                name1= esql.in.readLine();
+            }
+            esql.out.println("Available Appointments Of Department : '" + name1 + "' Date: '" + date + "'");
+            String query = LIST_AVAILABLE_APPOINTMENTS_OF_DEPARTMENT;
+
+            AvailabilityIndex index = esql.getAvailabilityIndex();
+            if (index.isReady()) {
+                printSlots(esql, index.available(esql.getReferenceCache().departmentsNamed(esql, name1),
+                        LocalDate.parse(date, SLASH_DATE)));
+                return;
+            }
+            int[] doctors = esql.getReferenceCache().doctorsOfDepartment(esql, name1);
+            if (doctors.length == 0) { // no such department, or no doctors in it
+                esql.out.println(0);
+                return;
+            }
+            List<List<String>> rows = esql.executeQueryAndReturnResult(query, date, esql.createIntArray(doctors));
+            if (!rows.isEmpty()) esql.out.println("appnt_id\tadate\ttime_slot\tstatus\t");
+            for (List<String> row : rows)
+                esql.out.println(String.join("\t", row) + "\t");
+            esql.out.println(rows.size());
+        } catch (Exception e) {
+
+            esql.err.println(e.getMessage());
+
+
+        }
+
+    }
+
+    //lists patients found by PatientSearch
+    private static void printPatients(DBproject esql, List<PatientSearch.Match> patients) {
+        if (!patients.isEmpty()) esql.out.println("patient_id\tname\taddress\t");
+        for (PatientSearch.Match patient : patients)
+            esql.out.println(patient.id + "\t" + patient.name + "\t" + patient.address + "\t");
+        esql.out.println(patients.size());
+    }
+
+    private static boolean isListed(List<PatientSearch.Match> patients, String id) {
+        for (PatientSearch.Match patient : patients)
+            if (String.valueOf(patient.id).equals(id)) return true;
+        return false;
+    }
+
+    //shows the patients known under a name like the new one, true when there are none or the clerk adds the patient anyway
+    private static boolean isNewPatient(DBproject esql, String name) throws SQLException, IOException {
+        List<PatientSearch.Match> known = esql.getPatientSearch().similar(esql, name, PatientSearch.DEFAULT_LIMIT);
+        esql.release();
+        if (known.isEmpty()) return true;
+        printPatients(esql, known);
+        esql.out.println("Patients with a similar name exist, add a new patient anyway? Y/N");
+        String anyway = esql.in.readLine();
+        return anyway != null && anyway.toUpperCase().equals("Y");
+    }
+
+    public static void SearchPatients(DBproject esql) {//14
+        // For a name or address, or its beginning, find the patients already known, also under a misspelt name
+
+        try {
+            esql.out.println("Enter Name or Address, or its beginning:");
+            String text = esql.in.readLine();
+            while(text == null || text.trim().isEmpty()){
+                if (text == null) return;
+                esql.out.println("Invalid Input, Try Again.");
+                text = esql.in.readLine();
+            }
+            printPatients(esql, esql.getPatientSearch().similar(esql, text, PatientSearch.DEFAULT_LIMIT));
+        } catch (Exception e) {
+
+            esql.err.println(e.getMessage());
+
+
+        }
+
+    }
+
+    private static final DateTimeFormatter SLASH_DATE = DateTimeFormatter.ofPattern("uuuu/MM/dd").withResolverStyle(ResolverStyle.STRICT);
+
+    //prints slots of the index like executeQueryAndPrintResult prints the rows of the SQL answer
+    private static void printSlots(DBproject esql, List<AvailabilityIndex.Slot> slots) {
+        if (!slots.isEmpty()) esql.out.println("appnt_id\tadate\ttime_slot\tstatus\t");
+        for (AvailabilityIndex.Slot slot : slots)
+            esql.out.println(slot.id + "\t" + slot.date + "\t" + slot.timeSlot + "\tAV\t");
+        esql.out.println(slots.size());
+    }
+
+    public static void NextAvailableAppointmentsOfDepartment(DBproject esql) {//11
+        // For a department name, find the first N available appointments on or after a date
+
+        try {
+            esql.out.println("Enter Department Name:");
+            String name = esql.in.readLine();
+            while(!checkname(name)){
+                esql.out.println("Invalid Input, Try Again.");
+                name = esql.in.readLine();
+            }
+            esql.out.println("Enter From Date (YYYY/MM/DD) :");
+            String date = esql.in.readLine();
+            while(!checkdate(date)){
+                esql.out.println("Invalid Input, Try Again.");
+                date = esql.in.readLine();
+            }
+            esql.out.println("Enter Number of Appointments:");
+            String n = esql.in.readLine();
+            while(!checkint(n) || Integer.parseInt(n) < 1){
+                esql.out.println("Invalid Input, Try Again.");
+                n = esql.in.readLine();
+            }
+            esql.out.println("Next Available Appointments Of Department : '" + name + "' From: '" + date + "'");
+
+            AvailabilityIndex index = esql.getAvailabilityIndex();
+            if (index.isReady()) {
+                printSlots(esql, index.next(esql.getReferenceCache().departmentsNamed(esql, name),
+                        LocalDate.parse(date, SLASH_DATE), Integer.parseInt(n)));
+                return;
+            }
+            int[] doctors = esql.getReferenceCache().doctorsOfDepartment(esql, name);
+            if (doctors.length == 0) { // no such department, or no doctors in it
+                esql.out.println(0);
+                return;
+            }
+            esql.out.println(esql.executeQueryAndPrintResult(NEXT_AVAILABLE_APPOINTMENTS_OF_DEPARTMENT, date,
+                    esql.createIntArray(doctors), Integer.parseInt(n)));
+        } catch (Exception e) {
+
+            esql.err.println(e.getMessage());
+
+
+        }
+
+    }
+
+    public static void ListOverlappingAppointments(DBproject esql) {//12
+        // For a date, a time slot and optionally a doctor, find the appointments whose slot overlaps it
+
+        try {
+            esql.out.println("Enter Date (YYYY/MM/DD) :");
+            String date = esql.in.readLine();
+            while(!checkdate(date)){
+                esql.out.println("Invalid Input, Try Again.");
+                date = esql.in.readLine();
+            }
+            esql.out.println("Enter Time Slot (HH:MM-HH:MM):");
+            String time_slot = esql.in.readLine();
+            while(!checktime(time_slot)){
+                esql.out.println("Invalid Input, Try Again.");
+                time_slot = esql.in.readLine();
+            }
+            esql.out.println("Enter Doctor ID (empty for every doctor):");
+            String doctor_id = esql.in.readLine();
+            while(!doctor_id.isEmpty() && !checkint(doctor_id)){
+                esql.out.println("Invalid Input, Try Again.");
+                doctor_id = esql.in.readLine();
+            }
+            esql.out.println("Appointments overlapping " + time_slot + " on '" + date + "'" + (doctor_id.isEmpty() ? "" : " of DocID : " + doctor_id));
+            if (doctor_id.isEmpty()) {
+                esql.out.println(esql.executeQueryAndPrintResult(LIST_OVERLAPPING_APPOINTMENTS, date, time_slot));
+            } else {
+                esql.out.println(esql.executeQueryAndPrintResult(LIST_OVERLAPPING_APPOINTMENTS_OF_DOCTOR,
+                        Integer.parseInt(doctor_id), date, time_slot));
+            }
+        } catch (Exception e) {
+
+            esql.err.println(e.getMessage());
+
+
+        }
+
+    }
+
+    /**
+     * Method to pick the query of Q7: the counters of migration V002, with
+     * the archived ones when asked, or a GROUP BY over the appointments
+     * while the migration is not applied, when there is no archive either.
+     */
+    static String statusNumberQuery(DBproject esql, boolean archive) throws SQLException {
+        if (!hasStatusCounts(esql)) return LIST_STATUS_NUMBER_OF_APPOINTMENTS_PER_DOCTOR_UNCOUNTED;
+        return archive ? LIST_STATUS_NUMBER_OF_APPOINTMENTS_PER_DOCTOR_WITH_ARCHIVE : LIST_STATUS_NUMBER_OF_APPOINTMENTS_PER_DOCTOR;
+    }
+
+    /**
+     * Method to pick the query of Q8, see statusNumberQuery().
+     */
+    static String patientsCountQuery(DBproject esql, boolean archive) throws SQLException {
+        return patientsCountQuery(esql, archive, false);
+    }
+
+    /**
+     * Method to pick the query of Q8, counting the patients of hospital 0
+     * only or, to gather them from the shards, of every hospital.
+     */
+    static String patientsCountQuery(DBproject esql, boolean archive, boolean allHospitals) throws SQLException {
+        if (!hasStatusCounts(esql))
+            return allHospitals ? FIND_PATIENTS_COUNT_WITH_STATUS_UNCOUNTED_ALL_HOSPITALS : FIND_PATIENTS_COUNT_WITH_STATUS_UNCOUNTED;
+        if (allHospitals)
+            return archive ? FIND_PATIENTS_COUNT_WITH_STATUS_WITH_ARCHIVE_ALL_HOSPITALS : FIND_PATIENTS_COUNT_WITH_STATUS_ALL_HOSPITALS;
+        return archive ? FIND_PATIENTS_COUNT_WITH_STATUS_WITH_ARCHIVE : FIND_PATIENTS_COUNT_WITH_STATUS;
+    }
+
+    //only a found table is remembered, so -migrate takes effect without a restart
+    private static boolean hasStatusCounts(DBproject esql) throws SQLException {
+        if (_statusCounts) return true;
+        _statusCounts = esql.executeQueryAndReturnResult("SELECT to_regclass('doctor_status_counts') IS NOT NULL;").get(0).get(0).equals("t");
+        return _statusCounts;
+    }
+
+    //Q7 and Q8 count the live appointments only, unless the clerk asks for the archived ones too
+    private static boolean includeArchive(DBproject esql) throws IOException {
+        esql.out.println("Include archived appointments? Y/N");
+        String archive = esql.in.readLine();
+        return archive != null && archive.toUpperCase().equals("Y");
+    }
+
+    public static void CancelAppointments(DBproject esql) {//13
+        // Cancel active appointments; the first waitlisted appointment of each slot becomes active, otherwise the slot is available again
+
+        try {
+            esql.out.println("Enter Appointment IDs, comma separated:");
+            List<Integer> ids = new ArrayList<Integer>();
+            while (ids.isEmpty()) {
+                for (String id : esql.in.readLine().split(",")) {
+                    if (!checkint(id.trim())) {
+                        esql.out.println("Invalid Input, Try Again.");
+                        ids.clear();
+                        break;
+                    }
+                    ids.add(Integer.parseInt(id.trim()));
+                }
+            }
+            int[] batch = new int[ids.size()];
+            for (int i = 0; i < batch.length; ++i)
+                batch[i] = ids.get(i);
+            WaitlistEngine.Released released = new WaitlistEngine(esql).cancel(batch);
+            esql.out.println("appnt_id\tresult\t");
+            for (int i = 0; i < released.ids.length; ++i) {
+                esql.out.println(released.ids[i] + "\t" + (released.promoted[i] < 0 ? "status AV"
+                        : "given to waitlisted appointment " + released.promoted[i] + ", status AC") + "\t");
+            }
+            esql.out.println(released.ids.length);
+            if (released.ids.length < batch.length)
+                esql.out.println((batch.length - released.ids.length) + " appointment(s) not found or not Active");
+        } catch (Exception e) {
+
+            esql.err.println(e.getMessage());
+
+
+        }
+
+    }
+
+    public static void ListStatusNumberOfAppointmentsPerDoctor(DBproject esql) {//7
+        // Count number of different types of appointments per doctors and list them in descending order
+
+        try {
+            String query = statusNumberQuery(esql, includeArchive(esql));
+
+            ShardRouter shards = _shards;
+            if (shards != null) { // every hospital's counts, by doctor then count descending
+                esql.out.println(esql.printWithDoctorNames(new String[]{"doctor_id", "status", "count"},
+                        shards.gather(esql, query, 2, Comparator.comparing((List<String> row) -> Integer.parseInt(row.get(0)))
+                                .thenComparing(row -> -Long.parseLong(row.get(2))))));
+                return;
+            }
+            esql.out.println(esql.executeQueryAndPrintWithDoctorNames(query));
+        } catch (Exception e) {
+
+            esql.err.println(e.getMessage());
+
+
+        }
+
+
+    }
+
+
+    public static void FindPatientsCountWithStatus(DBproject esql) {//8
+        // Find how many patients per doctor there are with a given status (i.e. PA, AC, AV, WL) and list that number per doctor.
+
+        try {
+            String status1;
+            esql.out.println("Enter Status:");
+            status1 = esql.in.readLine();
+            while(!checkstatus(status1)){
+                esql.out.println("Invalid Input, Try Again.");
+                status1= esql.in.readLine();
+            }
+
+            ShardRouter shards = _shards;
+            String query = patientsCountQuery(esql, includeArchive(esql), shards != null);
+
+            esql.out.println("Looking for Patients Count per doctor With Status : '" + status1 + "'");
+
+            if (shards != null) { // every hospital's counts, count descending
+                esql.out.println(esql.printWithDoctorNames(new String[]{"doctor_id", "num_of_patient"},
+                        shards.gather(esql, query, 1, Comparator.comparing((List<String> row) -> -Long.parseLong(row.get(1))), status1)));
+                return;
+            }
+            esql.out.println(esql.executeQueryAndPrintWithDoctorNames(query, status1));
+        } catch (Exception e) {
+
+            esql.err.println(e.getMessage());
+
+
+        }
+    }
+
+    public static void BatchAdd(DBproject esql) {//10
+        // Batch variant of options 1-3: add many doctors, patients or appointments at once
+        try {
+            BatchInserter batch = new BatchInserter(esql, BatchInserter.DEFAULT_CHUNK_SIZE);
+            esql.out.println("1. Doctors from file (name,specialty,did)");
+            esql.out.println("2. Patients from file (name,gender,age,address,number_of_appts)");
+            esql.out.println("3. Appointments from file (YYYY/MM/DD,HH:MM-HH:MM)");
+            esql.out.println("4. Appointment slots of a doctor for every day of a date range");
+            String choice = esql.in.readLine();
+            while(!choice.equals("1") && !choice.equals("2") && !choice.equals("3") && !choice.equals("4")){
+                esql.out.println("Invalid Input, Try Again.");
+                choice = esql.in.readLine();
+            }
+            long start = System.currentTimeMillis();
+            int added;
+            if (choice.equals("4")) {
+                esql.out.println("Enter Doctor ID:");
+                String doctor_id = esql.in.readLine();
+                while(!checkint(doctor_id)){
+                    esql.out.println("Invalid Input, Try Again.");
+                    doctor_id = esql.in.readLine();
+                }
+                esql.out.println("Enter Start Date (YYYY/MM/DD):");
+                String date1 = esql.in.readLine();
+                while(!checkdate(date1)){
+                    esql.out.println("Invalid Input, Try Again.");
+                    date1 = esql.in.readLine();
+                }
+                esql.out.println("Enter End Date (YYYY/MM/DD):");
+                String date2 = esql.in.readLine();
+                while(!checkdate(date2)){
+                    esql.out.println("Invalid Input, Try Again.");
+                    date2 = esql.in.readLine();
+                }
+                esql.out.println("Enter time slots, comma separated (HH:MM-HH:MM,HH:MM-HH:MM):");
+                List<String> slots = new ArrayList<String>();
+                while (slots.isEmpty()) {
+                    for (String slot : esql.in.readLine().split(",")) {
+                        if (!checktime(slot.trim())) {
+                            esql.out.println("Invalid Input, Try Again.");
+                            slots.clear();
+                            break;
+                        }
+                        slots.add(slot.trim());
+                    }
+                }
+                added = batch.addAppointmentRange(Integer.parseInt(doctor_id), date1, date2, slots);
+            } else {
+                esql.out.println("Enter file path:");
+                File file = new File(esql.in.readLine());
+                while(!file.isFile()){
+                    esql.out.println("Invalid Input, Try Again.");
+                    file = new File(esql.in.readLine());
+                }
+                if (choice.equals("1")) added = batch.addDoctors(file);
+                else if (choice.equals("2")) added = batch.addPatients(file);
+                else added = batch.addAppointments(file);
+            }
+            esql.out.println("Added " + added + " rows in " + (System.currentTimeMillis() - start) + " ms"
+                    + (batch.getRejected() > 0 ? ", " + batch.getRejected() + " invalid rows skipped" : ""));
+        } catch (Exception e) {
+
+            esql.err.println(e.getMessage());
+
+
+        }
+    }
+}
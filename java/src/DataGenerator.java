@@ -0,0 +1,182 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * This class writes synthetic hospital, department, doctor, patient,
+ * appointment, has_appointment and searches csv files in the format of
+ * data/, at any scale, for loading with `DBproject ... -load <dir>`.
+ *
+ * The data is referentially consistent: every appointment belongs to one
+ * doctor, a doctor's appointments never overlap, every booked (AC, WL or
+ * PA) appointment is searched by one patient at the doctor's hospital, and
+ * number_of_appts counts those searches.  Statuses keep the mix of the
+ * bundled data, about 69% PA, 14% AC, 11% AV and 6% WL.  The same seed
+ * writes the same files.
+ */
+
+public class DataGenerator {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+    //non overlapping slots, so a doctor's appointments of one day never overlap
+    private static final String[] SLOTS = {"8:00-10:00", "10:00-12:00", "13:00-15:00", "15:00-17:00"};
+    private static final String[] STATUSES = {"PA", "AC", "AV", "WL"};
+    private static final int[] STATUS_PERCENT = {69, 14, 11, 6};
+
+    private static final String[] CITIES = {"Riverside", "Pasadena", "Irvine", "Fresno", "Oakland", "Sacramento",
+            "San Diego", "Long Beach", "Anaheim", "Bakersfield", "Modesto", "Ontario"};
+    private static final String[] DEPARTMENTS = {"Cardiology", "Finance", "Gastroenterology", "Neurology", "Oncology",
+            "Pediatric", "Radiology", "Urology", "Orthopedics", "Dermatology", "Psychiatry", "Nephrology",
+            "Ophthalmology", "Pharmacy", "Emergency", "Intensive Care", "Pathology", "Surgery", "Physiotherapy",
+            "Haematology", "Maternity", "Rheumatology", "Microbiology", "Nutrition", "General Services"};
+    private static final String[] SPECIALTIES = {"Allergist", "Anesthesiologist", "Cardiologist", "Dermatologist",
+            "Endocrinologist", "Gastroenterologist", "Neurologist", "Oncologist", "Pediatrician", "Psychiatrist",
+            "Radiologist", "Surgeon", "Urologist"};
+    private static final String[] FIRST_NAMES = {"Alvin", "Carrie", "Calvin", "Armand", "Alberto", "Wyatt", "Camille",
+            "Lindsey", "Maria", "James", "Linda", "Robert", "Susan", "Michael", "Karen", "David", "Nancy", "Daniel",
+            "Betty", "Joseph", "Sandra", "Thomas", "Ashley", "Kevin", "Emily", "Brian", "Donna", "George", "Carol"};
+    private static final String[] LAST_NAMES = {"Saunders", "Cortez", "Morrison", "Enderle", "Scarlett", "Ruoff",
+            "Holmes", "Sullivan", "Newton", "Garcia", "Smith", "Johnson", "Brown", "Lee", "Walker", "Hall", "Young",
+            "King", "Wright", "Lopez", "Hill", "Green", "Adams", "Baker", "Nelson", "Carter", "Mitchell", "Perez"};
+    private static final String[] STREETS = {"Chapel Drive", "Bald Hill Street", "Campfire Ave.", "Oak Lane",
+            "Main Street", "Park Avenue", "Elm Street", "Sunset Blvd.", "Lake Road", "Hillside Drive"};
+
+    private final File _dir;
+    private final long _appointments;
+    private final int _doctors;
+    private final int _departments;
+    private final int _hospitals;
+    private final int _patients;
+    private final SplittableRandom _random;
+
+    /**
+     * @param dir          the directory the csv files are written to
+     * @param appointments the number of appointments, the other tables scale with it
+     * @param seed         the seed of the random data
+     */
+    public DataGenerator(File dir, long appointments, long seed) {
+        this._dir = dir;
+        this._appointments = appointments;
+        this._doctors = (int) Math.max(250, appointments / 2000);
+        this._departments = Math.max(125, this._doctors / 2);
+        this._hospitals = Math.max(5, this._departments / 25);
+        this._patients = (int) Math.max(250, appointments / 20);
+        this._random = new SplittableRandom(seed);
+    }
+
+    private Writer open(String table) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(this._dir, table + ".csv")), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private String pick(String[] values) {
+        return values[this._random.nextInt(values.length)];
+    }
+
+    private String person() {
+        return pick(FIRST_NAMES) + " " + pick(LAST_NAMES);
+    }
+
+    /**
+     * Method to write every csv file.
+     *
+     * @throws java.io.IOException when a file can not be written
+     */
+    public void generate() throws IOException {
+        if (!this._dir.isDirectory() && !this._dir.mkdirs()) throw new IOException("Can not create " + this._dir);
+
+        try (Writer out = open("hospital")) {
+            for (int id = 0; id < this._hospitals; ++id) {
+                String city = CITIES[id % CITIES.length];
+                out.write(id + "," + city + " Medical Center" + (id < CITIES.length ? "" : " " + (id / CITIES.length)) + "\n");
+            }
+        }
+
+        // every hospital has the same run of department names, like data/department.csv
+        int[] departmentHospital = new int[this._departments];
+        try (Writer out = open("department")) {
+            for (int id = 0; id < this._departments; ++id) {
+                departmentHospital[id] = (id / DEPARTMENTS.length) % this._hospitals;
+                out.write(id + "," + DEPARTMENTS[id % DEPARTMENTS.length] + "," + departmentHospital[id] + "\n");
+            }
+        }
+
+        int[] doctorHospital = new int[this._doctors];
+        try (Writer out = open("doctor")) {
+            for (int id = 0; id < this._doctors; ++id) {
+                int did = this._random.nextInt(this._departments);
+                doctorHospital[id] = departmentHospital[did];
+                out.write(id + "," + person() + "," + pick(SPECIALTIES) + "," + did + "\n");
+            }
+        }
+
+        int[] patientAppointments = new int[this._patients];
+        try (Writer appointments = open("appointment");
+             Writer links = open("has_appointment");
+             Writer searches = open("searches")) {
+            for (long id = 0; id < this._appointments; ++id) {
+                // consecutive ids go to consecutive doctors, each doctor fills its slots day by day
+                int doctor = (int) (id % this._doctors);
+                long k = id / this._doctors;
+                LocalDate day = FIRST_DAY.plusDays(k / SLOTS.length);
+                String status = status();
+                appointments.write(id + "," + day.getMonthValue() + "/" + day.getDayOfMonth() + "/" + day.getYear()
+                        + "," + SLOTS[(int) (k % SLOTS.length)] + "," + status + "\n");
+                links.write(id + "," + doctor + "\n");
+                if (!status.equals("AV")) {
+                    int patient = this._random.nextInt(this._patients);
+                    patientAppointments[patient]++;
+                    searches.write(doctorHospital[doctor] + "," + patient + "," + id + "\n");
+                }
+                if ((id + 1) % 1000000 == 0) System.out.println((id + 1) + " appointments written");
+            }
+        }
+
+        try (Writer out = open("patient")) {
+            for (int id = 0; id < this._patients; ++id) {
+                out.write(id + "," + person() + "," + (this._random.nextBoolean() ? "M" : "F") + ","
+                        + (1 + this._random.nextInt(99)) + "," + (100 + this._random.nextInt(9900)) + " "
+                        + pick(STREETS) + " " + pick(CITIES) + "," + patientAppointments[id] + "\n");
+            }
+        }
+    }
+
+    private String status() {
+        int draw = this._random.nextInt(100);
+        for (int i = 0; i < STATUSES.length; ++i) {
+            if (draw < STATUS_PERCENT[i]) return STATUSES[i];
+            draw -= STATUS_PERCENT[i];
+        }
+        return STATUSES[0];
+    }
+
+    /**
+     * Writes the csv files, e.g. java DataGenerator /tmp/data10m 10000000
+     *
+     * @param args the output directory, the number of appointments and an optional seed
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java [-classpath <classpath>] " + DataGenerator.class.getName()
+                    + " <output dir> <appointments> [<seed>]");
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            DataGenerator generator = new DataGenerator(new File(args[0]), Long.parseLong(args[1]),
+                    args.length > 2 ? Long.parseLong(args[2]) : 166);
+            generator.generate();
+            System.out.println("Wrote " + generator._appointments + " appointments, " + generator._doctors + " doctors, "
+                    + generator._departments + " departments, " + generator._hospitals + " hospitals and "
+                    + generator._patients + " patients to " + args[0] + " in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class hands out primary keys from blocks reserved on a Postgres
+ * sequence.  The sequence is created with INCREMENT BY equal to the block
+ * size, so one nextval call reserves the whole block ending at the returned
+ * value.  Ids inside a block are handed out with an atomic counter and only
+ * the refill of an exhausted block goes back to the database.  One
+ * allocator is shared by every session of the JVM.
+ */
+
+public class IdAllocator {
+    //default block size, must match INCREMENT BY of the sequences in sql/create.sql
+    public static final int DEFAULT_BLOCK_SIZE = 1000;
+
+    private final String _sequence;
+    private final int _blockSize;
+    private volatile Block _block = null;
+
+    //a reserved range of ids, next is the first id not yet handed out
+    private static final class Block {
+        final long end;
+        final AtomicLong next;
+
+        Block(long start, long end) {
+            this.end = end;
+            this.next = new AtomicLong(start);
+        }
+    }
+
+    /**
+     * @param sequence  name of the DB sequence
+     * @param blockSize number of ids reserved per nextval, the INCREMENT BY of the sequence
+     */
+    public IdAllocator(String sequence, int blockSize) {
+        this._sequence = sequence;
+        this._blockSize = blockSize;
+    }
+
+    /**
+     * Method to return the next unused id.  Only the call that finds the
+     * current block exhausted issues a query.
+     *
+     * @param esql the session whose connection reserves a new block if needed
+     * @return a unique id for the table behind the sequence
+     * @throws java.sql.SQLException when a new block can not be reserved
+     */
+    public int nextId(DBproject esql) throws SQLException {
+        while (true) {
+            Block block = this._block;
+            if (block != null) {
+                long id = block.next.getAndIncrement();
+                if (id <= block.end) return (int) id;
+            }
+            refill(esql, block);
+        }
+    }
+
+    //reserves a new block unless another thread already replaced the exhausted one
+    private synchronized void refill(DBproject esql, Block exhausted) throws SQLException {
+        if (this._block != exhausted) return;
+        long end = esql.getNextSeqVal(this._sequence);
+        this._block = new Block(end - this._blockSize + 1, end);
+    }
+
+    public String getSequence() {
+        return this._sequence;
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.Arrays;
+
+/**
+ * This class is an open addressing hash map from primitive int keys to
+ * objects.  Keys are stored unboxed in an int array and probed linearly,
+ * so a lookup is one array walk without allocation.  Null values are not
+ * supported; get returns null for a missing key.
+ */
+
+public class IntObjectMap<V> {
+    private int[] _keys;
+    private Object[] _values;
+    private int _size = 0;
+
+    public IntObjectMap() {
+        this(16);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this._keys = new int[capacity];
+        this._values = new Object[capacity];
+    }
+
+    //spreads sequential ids over the table
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = this._keys.length - 1;
+        for (int i = hash(key) & mask; this._values[i] != null; i = (i + 1) & mask) {
+            if (this._keys[i] == key) return (V) this._values[i];
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Method to map a key to a value, replacing the previous value.
+     *
+     * @return the previous value of the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) throw new IllegalArgumentException("null values are not supported");
+        if ((this._size + 1) * 2 > this._keys.length) grow();
+        int mask = this._keys.length - 1;
+        int i = hash(key) & mask;
+        for (; this._values[i] != null; i = (i + 1) & mask) {
+            if (this._keys[i] == key) {
+                V old = (V) this._values[i];
+                this._values[i] = value;
+                return old;
+            }
+        }
+        this._keys[i] = key;
+        this._values[i] = value;
+        this._size++;
+        return null;
+    }
+
+    /**
+     * Method to remove a key, shifting back the entries probed past it.
+     *
+     * @return the removed value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int mask = this._keys.length - 1;
+        int i = hash(key) & mask;
+        for (; this._values[i] != null; i = (i + 1) & mask) {
+            if (this._keys[i] == key) break;
+        }
+        if (this._values[i] == null) return null;
+        V old = (V) this._values[i];
+        // backward shift deletion keeps every probe chain unbroken
+        int gap = i;
+        for (int j = (i + 1) & mask; this._values[j] != null; j = (j + 1) & mask) {
+            int home = hash(this._keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                this._keys[gap] = this._keys[j];
+                this._values[gap] = this._values[j];
+                gap = j;
+            }
+        }
+        this._values[gap] = null;
+        this._size--;
+        return old;
+    }
+
+    public int size() {
+        return this._size;
+    }
+
+    public boolean isEmpty() {
+        return this._size == 0;
+    }
+
+    /**
+     * Method to return the keys in no particular order.
+     */
+    public int[] keys() {
+        int[] keys = new int[this._size];
+        int n = 0;
+        for (int i = 0; i < this._values.length; ++i)
+            if (this._values[i] != null) keys[n++] = this._keys[i];
+        return keys;
+    }
+
+    public void clear() {
+        Arrays.fill(this._values, null);
+        this._size = 0;
+    }
+
+    private void grow() {
+        int[] keys = this._keys;
+        Object[] values = this._values;
+        this._keys = new int[keys.length * 2];
+        this._values = new Object[values.length * 2];
+        this._size = 0;
+        for (int i = 0; i < keys.length; ++i) {
+            if (values[i] != null) {
+                @SuppressWarnings("unchecked")
+                V value = (V) values[i];
+                put(keys[i], value);
+            }
+        }
+    }
+}
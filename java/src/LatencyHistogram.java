@@ -0,0 +1,116 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class records latencies in log-linear buckets, like HdrHistogram:
+ * every power of two range of nanoseconds is split into 64 sub-buckets, so
+ * a percentile is within about 1.6% of the recorded value.  Recording is
+ * lock free and may be called from many threads.
+ */
+
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //values below SUB_BUCKETS have a bucket each, every later power of two gets SUB_BUCKETS
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong _count = new AtomicLong();
+    private final AtomicLong _sum = new AtomicLong();
+    private final AtomicLong _max = new AtomicLong();
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int top = (int) (value >>> shift); // between SUB_BUCKETS and 2 * SUB_BUCKETS - 1
+        return SUB_BUCKETS + shift * SUB_BUCKETS + top - SUB_BUCKETS;
+    }
+
+    //the largest value that falls into the bucket
+    private static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long top = SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * Method to record one latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        this._counts.incrementAndGet(bucket(nanos));
+        this._count.incrementAndGet();
+        this._sum.addAndGet(nanos);
+        long max;
+        while (nanos > (max = this._max.get()) && !this._max.compareAndSet(max, nanos)) {
+            // retry
+        }
+    }
+
+    public long getCount() {
+        return this._count.get();
+    }
+
+    public long getMaxNanos() {
+        return this._max.get();
+    }
+
+    public double getMeanNanos() {
+        long count = this._count.get();
+        return count == 0 ? 0 : (double) this._sum.get() / count;
+    }
+
+    /**
+     * Method to return the latency below which the given share of the
+     * recorded latencies fall.
+     *
+     * @param percentile between 0 and 100, e.g. 99
+     * @return the latency in nanoseconds, 0 when nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        long count = this._count.get();
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += this._counts.get(i);
+            if (seen >= rank) return Math.min(highest(i), this._max.get());
+        }
+        return this._max.get();
+    }
+
+    /**
+     * Method to add every latency recorded by another histogram.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; ++i) {
+            long count = other._counts.get(i);
+            if (count > 0) this._counts.addAndGet(i, count);
+        }
+        this._count.addAndGet(other._count.get());
+        this._sum.addAndGet(other._sum.get());
+        long max, otherMax = other._max.get();
+        while (otherMax > (max = this._max.get()) && !this._max.compareAndSet(max, otherMax)) {
+            // retry
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i)
+            this._counts.set(i, 0);
+        this._count.set(0);
+        this._sum.set(0);
+        this._max.set(0);
+    }
+
+    /**
+     * Method to format a latency in milliseconds with three decimals.
+     */
+    public static String millis(long nanos) {
+        return String.format("%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
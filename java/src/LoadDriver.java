@@ -0,0 +1,152 @@
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class simulates a front desk: N clerks call a weighted mix of the
+ * menu operations at the same time for a fixed duration, the way the
+ * operations compete for connections and rows in production.  It reports
+ * throughput and latency percentiles per operation and for the whole mix,
+ * with a progress line every interval.
+ */
+
+public class LoadDriver {
+    //menu option:weight, mostly lookups and bookings like a real front desk
+    public static final String DEFAULT_MIX = "1:1,2:5,3:5,4:20,5:30,6:25,7:7,8:7";
+    private static final long REPORT_INTERVAL_MS = 10000;
+
+    private final ConnectionPool _pool;
+    private final PrintStream _out;
+    private final int _clerks;
+    //pause of a clerk between two operations, override with -Ddbproject.load.thinkMs
+    private final long _thinkMs = Long.getLong("dbproject.load.thinkMs", 0);
+
+    /**
+     * @param pool   the pool of the sessions, at least one connection per clerk
+     * @param out    where the progress and results are printed
+     * @param clerks the number of concurrent clerks
+     */
+    public LoadDriver(ConnectionPool pool, PrintStream out, int clerks) {
+        this._pool = pool;
+        this._out = out;
+        this._clerks = clerks;
+    }
+
+    /**
+     * Method to parse a mix like "4:20,5:30" into menu option to weight.
+     */
+    public static Map<Integer, Integer> parseMix(String mix) {
+        Map<Integer, Integer> weights = new LinkedHashMap<Integer, Integer>();
+        for (String entry : mix.split(",")) {
+            String[] pair = entry.trim().split(":");
+            if (pair.length != 2) throw new IllegalArgumentException("Invalid mix entry '" + entry + "', expected <option>:<weight>");
+            weights.put(Integer.parseInt(pair[0]), Integer.parseInt(pair[1]));
+        }
+        return weights;
+    }
+
+    /**
+     * Method to run the mix until the time is up and print the results.
+     *
+     * @param seconds the duration of the run
+     * @param weights menu option to weight, options missing are not called
+     * @throws java.sql.SQLException when the data could not be sampled
+     */
+    public void run(int seconds, Map<Integer, Integer> weights) throws SQLException, InterruptedException {
+        MenuWorkload workload = new MenuWorkload(this._pool);
+        workload.sample();
+
+        // cumulative weights, a clerk picks the first operation above a random draw
+        final List<MenuWorkload.Operation> ops = new ArrayList<MenuWorkload.Operation>();
+        final List<LatencyHistogram> latencies = new ArrayList<LatencyHistogram>();
+        final List<AtomicLong> errors = new ArrayList<AtomicLong>();
+        final int[] cumulative = new int[weights.size()];
+        int total = 0;
+        for (MenuWorkload.Operation op : workload.getOperations()) {
+            Integer weight = weights.get(op.number);
+            if (weight == null || weight <= 0) continue;
+            total += weight;
+            cumulative[ops.size()] = total;
+            ops.add(op);
+            latencies.add(new LatencyHistogram());
+            errors.add(new AtomicLong());
+        }
+        if (ops.isEmpty()) throw new IllegalArgumentException("The mix selects no menu operation");
+        final int totalWeight = total;
+
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService clerks = Executors.newFixedThreadPool(this._clerks);
+        try {
+            List<Future<?>> running = new ArrayList<Future<?>>();
+            for (int i = 0; i < this._clerks; ++i) {
+                running.add(clerks.submit(() -> {
+                    MenuWorkload.Clerk clerk = workload.newClerk();
+                    while (System.nanoTime() < end) {
+                        int draw = clerk.getRandom().nextInt(totalWeight);
+                        int k = 0;
+                        while (cumulative[k] <= draw) k++;
+                        if (!clerk.call(ops.get(k), latencies.get(k))) errors.get(k).incrementAndGet();
+                        if (this._thinkMs > 0) Thread.sleep(this._thinkMs);
+                    }
+                    return null;
+                }));
+            }
+            long next = System.currentTimeMillis() + REPORT_INTERVAL_MS;
+            while (System.nanoTime() < end) {
+                Thread.sleep(Math.max(1, Math.min(next - System.currentTimeMillis(), TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()))));
+                if (System.currentTimeMillis() >= next) {
+                    long calls = 0;
+                    for (LatencyHistogram h : latencies)
+                        calls += h.getCount();
+                    this._out.println(String.format("%6ds  %d calls", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), calls));
+                    next += REPORT_INTERVAL_MS;
+                }
+            }
+            for (Future<?> clerk : running) {
+                try {
+                    clerk.get();
+                } catch (ExecutionException e) {
+                    this._out.println("A clerk stopped: " + e.getCause());
+                }
+            }
+        } finally {
+            clerks.shutdownNow();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        this._out.println(String.format("%-40s %9s %9s %9s %9s %9s %9s %7s",
+                "operation", "calls", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors"));
+        LatencyHistogram all = new LatencyHistogram();
+        long allErrors = 0;
+        for (int k = 0; k < ops.size(); ++k) {
+            print(ops.get(k).number + " " + ops.get(k).name, latencies.get(k), errors.get(k).get(), elapsed);
+            all.add(latencies.get(k));
+            allErrors += errors.get(k).get();
+        }
+        print("all (" + this._clerks + " clerks)", all, allErrors, elapsed);
+        // round trips, rows and connection wait per operation
+        this._out.println();
+        Metrics.dump(this._out);
+        // the share of Q5 answered from memory
+        this._out.println(new DBproject(this._pool, null, this._out).getResultCache());
+    }
+
+    private void print(String name, LatencyHistogram h, long errors, double elapsed) {
+        this._out.println(String.format("%-40s %9d %9.1f %9s %9s %9s %9s %7d",
+                name, h.getCount(), h.getCount() / elapsed,
+                LatencyHistogram.millis(h.getPercentileNanos(50)),
+                LatencyHistogram.millis(h.getPercentileNanos(99)),
+                LatencyHistogram.millis(h.getPercentileNanos(99.9)),
+                LatencyHistogram.millis(h.getMaxNanos()), errors));
+    }
+}
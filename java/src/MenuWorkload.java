@@ -0,0 +1,201 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * This class drives the menu operations without a terminal, for the JMH
+ * benchmarks of the jmh module and LoadDriver.  Every call runs the real menu method on a fresh session
+ * whose input is a generated clerk script, with ids, dates and department
+ * names sampled from the loaded data.
+ */
+
+public class MenuWorkload {
+    //one menu operation and the clerk input it reads
+    public static final class Operation {
+        public final int number;
+        public final String name;
+        final Function<Random, String> input;
+        final Consumer<DBproject> run;
+
+        Operation(int number, String name, Function<Random, String> input, Consumer<DBproject> run) {
+            this.number = number;
+            this.name = name;
+            this.input = input;
+            this.run = run;
+        }
+    }
+
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+    //appointments per CancelAppointments call
+    private static final int CANCEL_BATCH_SIZE = 20;
+
+    private final ConnectionPool _pool;
+    private final List<Operation> _operations = new ArrayList<Operation>();
+
+    //samples of the loaded data the inputs are drawn from
+    private final List<String> _departmentIds = new ArrayList<String>();
+    private final List<String> _departmentNames = new ArrayList<String>();
+    private final List<String> _doctorIds = new ArrayList<String>();
+    private final List<String[]> _bookable = new ArrayList<String[]>();
+    private final List<String> _dates = new ArrayList<String>();
+    private final List<String> _patientNames = new ArrayList<String>();
+    private final Queue<String> _cancellable = new ConcurrentLinkedQueue<String>();
+    private final List<String> _cancelled = new CopyOnWriteArrayList<String>();
+
+    public MenuWorkload(ConnectionPool pool) {
+        this._pool = pool;
+        this._operations.add(new Operation(1, "AddDoctor",
+                r -> "BENCH DOCTOR\nBENCH\n" + pick(r, this._departmentIds) + "\n",
+                DBproject::AddDoctor));
+        this._operations.add(new Operation(2, "AddPatient",
+                r -> "BENCH PATIENT\n" + (r.nextBoolean() ? "M" : "F") + "\n" + (18 + r.nextInt(70)) + "\nBENCH ADDRESS\n0\nY\n",
+                DBproject::AddPatient));
+        this._operations.add(new Operation(3, "AddAppointment",
+                r -> pick(r, this._dates) + "\n" + String.format("%02d:00-%02d:00", 8 + r.nextInt(8), 10 + r.nextInt(8)) + "\n",
+                DBproject::AddAppointment));
+        this._operations.add(new Operation(4, "MakeAppointment", r -> {
+            String[] slot = this._bookable.get(r.nextInt(this._bookable.size()));
+            return slot[1] + "\n" + slot[0] + "\nx\nBENCH PATIENT\nF\n40\nBENCH ADDRESS\nx\n";
+        }, DBproject::MakeAppointment));
+        this._operations.add(new Operation(5, "ListAppointmentsOfDoctor",
+                r -> pick(r, this._doctorIds) + "\n2000/01/01\n2030/12/31\nN\n",
+                DBproject::ListAppointmentsOfDoctor));
+        this._operations.add(new Operation(6, "ListAvailableAppointmentsOfDepartment",
+                r -> pick(r, this._dates) + "\n" + pick(r, this._departmentNames) + "\n",
+                DBproject::ListAvailableAppointmentsOfDepartment));
+        this._operations.add(new Operation(7, "ListStatusNumberOfAppointmentsPerDoctor",
+                r -> "N\n",
+                DBproject::ListStatusNumberOfAppointmentsPerDoctor));
+        this._operations.add(new Operation(8, "FindPatientsCountWithStatus",
+                r -> new String[]{"AV", "AC", "WL", "PA"}[r.nextInt(4)] + "\nN\n",
+                DBproject::FindPatientsCountWithStatus));
+        this._operations.add(new Operation(13, "CancelAppointments", r -> {
+            // every AC appointment is cancelled once, later calls repeat spent ids and only lock them
+            StringBuilder ids = new StringBuilder();
+            for (int i = 0; i < CANCEL_BATCH_SIZE; ++i) {
+                String id = this._cancellable.poll();
+                if (id == null) id = this._cancelled.isEmpty() ? "0" : pick(r, this._cancelled);
+                else this._cancelled.add(id);
+                ids.append(i == 0 ? "" : ",").append(id);
+            }
+            return ids + "\n";
+        }, DBproject::CancelAppointments));
+        this._operations.add(new Operation(14, "SearchPatients",
+                // typed ahead, the first letters of a known name
+                r -> pick(r, this._patientNames) + "\n",
+                DBproject::SearchPatients));
+    }
+
+    private static String pick(Random r, List<String> values) {
+        return values.get(r.nextInt(values.size()));
+    }
+
+    public List<Operation> getOperations() {
+        return this._operations;
+    }
+
+    /**
+     * Method to read the ids, dates and names the generated inputs use.
+     * Department names the menu would reject, e.g. with '/', are left out.
+     *
+     * @throws java.sql.SQLException when the database has no data to draw from
+     */
+    public void sample() throws SQLException {
+        DBproject esql = new DBproject(this._pool, null, DISCARD, DISCARD);
+        try {
+            for (List<String> row : esql.executeQueryAndReturnResult("select dept_ID, name from department;")) {
+                this._departmentIds.add(row.get(0));
+                if (DBproject.checkname(row.get(1)) && !this._departmentNames.contains(row.get(1)))
+                    this._departmentNames.add(row.get(1));
+            }
+            for (List<String> row : esql.executeQueryAndReturnResult("select doctor_ID from doctor;"))
+                this._doctorIds.add(row.get(0));
+            for (List<String> row : esql.executeQueryAndReturnResult(
+                    "select appt_id, doctor_id from has_appointment, appointment where appt_id = appnt_id and status in ('AV', 'AC') limit 10000;"))
+                this._bookable.add(new String[]{row.get(0), row.get(1)});
+            for (List<String> row : esql.executeQueryAndReturnResult(
+                    "select distinct to_char(adate, 'YYYY/MM/DD') from appointment where status = 'AV' limit 1000;"))
+                this._dates.add(row.get(0));
+            for (List<String> row : esql.executeQueryAndReturnResult(
+                    "select appnt_id from appointment where status = 'AC' order by appnt_id limit 100000;"))
+                this._cancellable.add(row.get(0));
+            for (List<String> row : esql.executeQueryAndReturnResult("select left(name, 4) from patient limit 1000;"))
+                this._patientNames.add(row.get(0));
+        } finally {
+            esql.release();
+        }
+        if (this._departmentIds.isEmpty() || this._departmentNames.isEmpty() || this._doctorIds.isEmpty()
+                || this._bookable.isEmpty() || this._dates.isEmpty() || this._patientNames.isEmpty())
+            throw new SQLException("The database has no data to drive the menu with, load data/ first");
+    }
+
+    /**
+     * Method to create the caller of one clerk thread, call it from that
+     * thread.
+     */
+    public Clerk newClerk() {
+        return new Clerk();
+    }
+
+    /**
+     * This class calls menu operations from one thread and tells failed
+     * calls apart; the menu methods report failures on the error stream.
+     */
+    public final class Clerk {
+        private final Random _random = ThreadLocalRandom.current();
+        private final ByteArrayOutputStream _failures = new ByteArrayOutputStream();
+        private final PrintStream _err = new PrintStream(this._failures);
+
+        private Clerk() {
+        }
+
+        /**
+         * Method to call an operation once, e.g. for a harness that times
+         * the calls itself.
+         *
+         * @return false when the operation reported an error
+         */
+        public boolean call(Operation op) {
+            return call(op, null);
+        }
+
+        /**
+         * Method to call an operation once and record its latency, unless
+         * latencies is null.
+         *
+         * @return false when the operation reported an error
+         */
+        public boolean call(Operation op, LatencyHistogram latencies) {
+            DBproject esql = new DBproject(_pool,
+                    new BufferedReader(new StringReader(op.input.apply(this._random))), DISCARD, this._err);
+            long start = System.nanoTime();
+            esql.beginOperation(op.name);
+            try {
+                op.run.accept(esql);
+            } finally {
+                esql.endOperation();
+                esql.release();
+            }
+            if (latencies != null) latencies.record(System.nanoTime() - start);
+            boolean ok = this._failures.size() == 0;
+            this._failures.reset();
+            return ok;
+        }
+
+        public Random getRandom() {
+            return this._random;
+        }
+    }
+}
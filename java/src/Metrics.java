@@ -0,0 +1,123 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class is the registry of the per operation metrics of DBproject.
+ * Every operation is published over JMX as
+ * DBproject:type=Operation,name=<operation> (see jconsole), can be dumped
+ * as a text table periodically, and statements slower than a threshold are
+ * written to the slow query log with their SQL and bind values.
+ *
+ * Settings: -Ddbproject.slowQueryMs (default 1000, negative turns the log
+ * off), -Ddbproject.slowQueryLog=<file> (default standard error) and
+ * -Ddbproject.metrics.dumpIntervalSec (default 0, no periodic dump).
+ */
+
+public class Metrics {
+    //statements not run by a menu operation, e.g. startup and loading
+    public static final String OTHER = "other";
+
+    private static final Map<String, OperationMetrics> _operations = new ConcurrentHashMap<String, OperationMetrics>();
+    private static final long _slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("dbproject.slowQueryMs", 1000));
+    private static PrintStream _slowLog = null;
+    private static ScheduledExecutorService _dumper = null;
+
+    private Metrics() {
+    }
+
+    /**
+     * Method to return the metrics of an operation, creating and
+     * registering them on first use.
+     */
+    public static OperationMetrics operation(String name) {
+        OperationMetrics metrics = _operations.get(name);
+        if (metrics != null) return metrics;
+        return _operations.computeIfAbsent(name, n -> {
+            OperationMetrics created = new OperationMetrics(n);
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.registerMBean(created, new ObjectName("DBproject:type=Operation,name=" + ObjectName.quote(n)));
+            } catch (JMException e) {
+                // still counted, only not visible over JMX
+            }
+            return created;
+        });
+    }
+
+    /**
+     * Method to log a statement when it took longer than the slow query
+     * threshold.
+     *
+     * @param operation the operation that ran the statement
+     * @param sql       the statement, with '?' placeholders
+     * @param params    the bind values
+     * @param nanos     the execution time
+     */
+    public static void statement(OperationMetrics operation, String sql, Object[] params, long nanos) {
+        if (_slowQueryNanos < 0 || nanos < _slowQueryNanos) return;
+        String line = LocalDateTime.now() + " SLOW " + LatencyHistogram.millis(nanos) + " ms [" + operation.getName() + "] "
+                + sql.replaceAll("\\s+", " ").trim() + " binds=" + Arrays.deepToString(params);
+        PrintStream log = slowLog();
+        synchronized (log) {
+            log.println(line);
+        }
+    }
+
+    private static synchronized PrintStream slowLog() {
+        if (_slowLog != null) return _slowLog;
+        String file = System.getProperty("dbproject.slowQueryLog");
+        _slowLog = System.err;
+        if (file != null) {
+            try {
+                _slowLog = new PrintStream(new FileOutputStream(file, true), true);
+            } catch (IOException e) {
+                System.err.println("Unable to open the slow query log " + file + ": " + e.getMessage());
+            }
+        }
+        return _slowLog;
+    }
+
+    /**
+     * Method to print the metrics of every operation as a table.
+     */
+    public static void dump(PrintStream out) {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-40s %8s %6s %9s %9s %9s %9s %8s %9s %9s%n", "operation", "calls", "errors",
+                "mean ms", "p50 ms", "p99 ms", "max ms", "trips/op", "rows", "wait ms"));
+        for (OperationMetrics m : new TreeMap<String, OperationMetrics>(_operations).values()) {
+            table.append(String.format("%-40s %8d %6d %9.3f %9.3f %9.3f %9.3f %8.1f %9d %9.1f%n", m.getName(),
+                    m.getCalls(), m.getErrors(), m.getMeanMillis(), m.getP50Millis(), m.getP99Millis(),
+                    m.getMaxMillis(), m.getRoundTripsPerCall(), m.getRows(), m.getConnectionWaitMillis()));
+        }
+        out.print(table);
+        out.flush();
+    }
+
+    /**
+     * Method to dump the metrics every -Ddbproject.metrics.dumpIntervalSec
+     * seconds, if set, from a daemon thread.
+     */
+    public static synchronized void startDumper(final PrintStream out) {
+        long interval = Long.getLong("dbproject.metrics.dumpIntervalSec", 0);
+        if (interval <= 0 || _dumper != null) return;
+        _dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        _dumper.scheduleAtFixedRate(() -> dump(out), interval, interval, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,106 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class collects the metrics of one menu operation over all sessions:
+ * the latency of whole calls and of single statements, the JDBC round
+ * trips and rows fetched, and the time spent waiting for a pooled
+ * connection.  Sessions add to it concurrently.
+ */
+
+public class OperationMetrics implements OperationMetricsMBean {
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final String _name;
+    private final LatencyHistogram _latency = new LatencyHistogram();
+    private final LatencyHistogram _statementLatency = new LatencyHistogram();
+    private final LongAdder _errors = new LongAdder();
+    private final LongAdder _roundTrips = new LongAdder();
+    private final LongAdder _rows = new LongAdder();
+    private final LongAdder _waitNanos = new LongAdder();
+
+    public OperationMetrics(String name) {
+        this._name = name;
+    }
+
+    public String getName() {
+        return this._name;
+    }
+
+    //one call of the operation finished
+    void called(long nanos) {
+        this._latency.record(nanos);
+    }
+
+    //one statement of the operation finished
+    void executed(long nanos, int roundTrips, long rows) {
+        this._statementLatency.record(nanos);
+        this._roundTrips.add(roundTrips);
+        this._rows.add(rows);
+    }
+
+    void failed() {
+        this._errors.increment();
+    }
+
+    void waited(long nanos) {
+        this._waitNanos.add(nanos);
+    }
+
+    public long getCalls() {
+        return this._latency.getCount();
+    }
+
+    public long getErrors() {
+        return this._errors.sum();
+    }
+
+    public long getStatements() {
+        return this._statementLatency.getCount();
+    }
+
+    public long getRoundTrips() {
+        return this._roundTrips.sum();
+    }
+
+    public long getRows() {
+        return this._rows.sum();
+    }
+
+    public double getRoundTripsPerCall() {
+        long calls = getCalls();
+        return calls == 0 ? 0 : (double) getRoundTrips() / calls;
+    }
+
+    public double getMeanMillis() {
+        return this._latency.getMeanNanos() / NANOS_PER_MILLI;
+    }
+
+    public double getP50Millis() {
+        return this._latency.getPercentileNanos(50) / NANOS_PER_MILLI;
+    }
+
+    public double getP99Millis() {
+        return this._latency.getPercentileNanos(99) / NANOS_PER_MILLI;
+    }
+
+    public double getMaxMillis() {
+        return this._latency.getMaxNanos() / NANOS_PER_MILLI;
+    }
+
+    public double getStatementP99Millis() {
+        return this._statementLatency.getPercentileNanos(99) / NANOS_PER_MILLI;
+    }
+
+    public double getConnectionWaitMillis() {
+        return this._waitNanos.sum() / NANOS_PER_MILLI;
+    }
+
+    public void reset() {
+        this._latency.reset();
+        this._statementLatency.reset();
+        this._errors.reset();
+        this._roundTrips.reset();
+        this._rows.reset();
+        this._waitNanos.reset();
+    }
+}
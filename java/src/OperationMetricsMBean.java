@@ -0,0 +1,32 @@
+/**
+ * This interface is the JMX view of the metrics of one menu operation,
+ * registered as DBproject:type=Operation,name=<operation>.
+ */
+
+public interface OperationMetricsMBean {
+    long getCalls();
+
+    long getErrors();
+
+    long getStatements();
+
+    long getRoundTrips();
+
+    long getRows();
+
+    double getRoundTripsPerCall();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+
+    double getStatementP99Millis();
+
+    double getConnectionWaitMillis();
+
+    void reset();
+}
@@ -0,0 +1,235 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class finds returning patients by name or address, so clerks book
+ * them under their patient_ID instead of adding them again.
+ *
+ * Prefixes, e.g. typed ahead, are answered from memory.  A snapshot holds
+ * one sorted array of keys, the lowercased name and address of a patient
+ * from the start of each of their words, followed by the patient_ID, so
+ * "ender" finds Armand Enderle with one binary search.  Fuzzy matches, e.g.
+ * a misspelt name, come from the pg_trgm indexes of migration V008.
+ *
+ * Patients added by this JVM are searchable at once through a small
+ * overlay.  The snapshot is rebuilt in the background once it is older
+ * than the time to live, which brings in the patients of other JVMs.  One
+ * index is shared by every session.  With shards, the snapshot and the
+ * fuzzy matches cover the patients of every shard.
+ */
+
+public class PatientSearch {
+    public static final long DEFAULT_TTL_MS = 300000;
+    public static final int DEFAULT_LIMIT = 10;
+    //longest key per word, longer prefixes are checked against the patient itself
+    private static final int MAX_KEY = 32;
+    private static final char SEPARATOR = '\u0000';
+
+    static final String LOAD = "select patient_id, name, address from patient;";
+    //needs the indexes of migration V008 to avoid scanning patient
+    static final String FUZZY =
+            "select patient_id, name, address from patient where lower(name) % lower(?) or lower(address) % lower(?)" +
+            " order by greatest(similarity(lower(name), lower(?)), similarity(lower(address), lower(?))) desc, patient_id limit ?;";
+
+    /**
+     * A patient found.
+     */
+    public static final class Match {
+        public final int id;
+        public final String name;
+        public final String address;
+
+        Match(int id, String name, String address) {
+            this.id = id;
+            this.name = name;
+            this.address = address;
+        }
+    }
+
+    //the keys of every patient at load time, sorted, and the patients by id
+    private static final class Snapshot {
+        final String[] keys;
+        final IntObjectMap<Match> patients;
+        final long loadedAt;
+
+        Snapshot(String[] keys, IntObjectMap<Match> patients, long loadedAt) {
+            this.keys = keys;
+            this.patients = patients;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final long _ttlMs;
+    private volatile Snapshot _snapshot = null;
+    private final AtomicBoolean _reloading = new AtomicBoolean(false);
+    //patients added by this JVM since the snapshot was loaded
+    private final Map<Integer, Match> _recent = new ConcurrentHashMap<Integer, Match>();
+    private final ConcurrentSkipListSet<String> _recentKeys = new ConcurrentSkipListSet<String>();
+    //null until the V008 indexes were looked for
+    private volatile Boolean _fuzzy = null;
+
+    public PatientSearch(long ttlMs) {
+        this._ttlMs = ttlMs;
+    }
+
+    /**
+     * Method to make a patient written by this JVM searchable at once.
+     */
+    public void add(int id, String name, String address) {
+        Match patient = new Match(id, name, address);
+        Match old = this._recent.put(id, patient);
+        if (old != null) this._recentKeys.removeAll(keys(old));
+        this._recentKeys.addAll(keys(patient));
+    }
+
+    /**
+     * Method to find the patients with a word of their name or address
+     * starting with the given text, from memory.
+     *
+     * @param limit the most patients returned
+     * @return the patients, ordered by the matching words
+     * @throws java.sql.SQLException when the first snapshot could not be loaded
+     */
+    public List<Match> prefix(DBproject esql, String text, int limit) throws SQLException {
+        String query = normalize(text);
+        Map<Integer, Match> found = new LinkedHashMap<Integer, Match>();
+        if (query.isEmpty()) return new ArrayList<Match>();
+        String key = query.length() > MAX_KEY ? query.substring(0, MAX_KEY) : query;
+        Snapshot snapshot = snapshot(esql);
+        int i = Arrays.binarySearch(snapshot.keys, key);
+        for (i = i < 0 ? -i - 1 : i; i < snapshot.keys.length && found.size() < limit && snapshot.keys[i].startsWith(key); ++i)
+            collect(found, snapshot.patients.get(id(snapshot.keys[i])), query);
+        for (String recent : this._recentKeys.tailSet(key)) {
+            if (found.size() >= limit || !recent.startsWith(key)) break;
+            collect(found, this._recent.get(id(recent)), query);
+        }
+        return new ArrayList<Match>(found.values());
+    }
+
+    /**
+     * Method to find the patients with a name or address like the given
+     * text, misspelt or not, in the database.  Without the indexes of
+     * migration V008 only the prefix matches are returned.
+     *
+     * @param limit the most patients returned
+     * @return the patients, most alike first
+     * @throws java.sql.SQLException when the search failed
+     */
+    public List<Match> similar(DBproject esql, String text, int limit) throws SQLException {
+        Map<Integer, Match> found = new LinkedHashMap<Integer, Match>();
+        for (Match patient : prefix(esql, text, limit))
+            found.put(patient.id, patient);
+        if (found.size() < limit && hasFuzzyIndex(esql)) {
+            for (List<String> row : esql.executeQueryOnEveryShard(FUZZY, text, text, text, text, limit - found.size())) {
+                if (found.size() >= limit) break;
+                int id = Integer.parseInt(row.get(0));
+                if (!found.containsKey(id)) found.put(id, new Match(id, row.get(1), row.get(2)));
+            }
+        }
+        return new ArrayList<Match>(found.values());
+    }
+
+    private boolean hasFuzzyIndex(DBproject esql) throws SQLException {
+        Boolean fuzzy = this._fuzzy;
+        if (fuzzy == null) {
+            fuzzy = esql.executeQueryAndReturnResult("SELECT to_regclass('patient_name_trgm_idx') IS NOT NULL;").get(0).get(0).equals("t");
+            this._fuzzy = fuzzy;
+        }
+        return fuzzy;
+    }
+
+    //adds a patient whose normalized name or address has a word starting with the whole query
+    private static void collect(Map<Integer, Match> found, Match patient, String query) {
+        if (patient == null || found.containsKey(patient.id)) return;
+        if ((" " + normalize(patient.name)).contains(" " + query) || (" " + normalize(patient.address)).contains(" " + query))
+            found.put(patient.id, patient);
+    }
+
+    //returns the current snapshot, loading the first one here and later ones in the background
+    private Snapshot snapshot(DBproject esql) throws SQLException {
+        Snapshot snapshot = this._snapshot;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = this._snapshot;
+                if (snapshot == null) {
+                    snapshot = load(esql);
+                    swap(snapshot);
+                }
+            }
+        } else if (System.currentTimeMillis() - snapshot.loadedAt >= this._ttlMs && this._reloading.compareAndSet(false, true)) {
+            final ConnectionPool pool = esql.getPool();
+            final DBproject loader = new DBproject(pool, null, esql.err, esql.err);
+            Thread t = new Thread(() -> {
+                try {
+                    Snapshot loaded = load(loader);
+                    synchronized (this) {
+                        swap(loaded);
+                    }
+                } catch (SQLException e) {
+                    loader.err.println("Patient search: " + e.getMessage());
+                } finally {
+                    loader.release();
+                    this._reloading.set(false);
+                }
+            }, "patient-search");
+            t.setDaemon(true);
+            t.start();
+        }
+        return snapshot;
+    }
+
+    //installs a snapshot and drops the recent patients it contains
+    private void swap(Snapshot snapshot) {
+        this._snapshot = snapshot;
+        for (Match patient : this._recent.values()) {
+            Match loaded = snapshot.patients.get(patient.id);
+            if (loaded != null && loaded.name.equals(patient.name) && this._recent.remove(patient.id, patient))
+                this._recentKeys.removeAll(keys(patient));
+        }
+    }
+
+    private static Snapshot load(DBproject esql) throws SQLException {
+        long start = System.currentTimeMillis();
+        List<String> keys = new ArrayList<String>();
+        IntObjectMap<Match> patients = new IntObjectMap<Match>();
+        for (List<String> row : esql.executeQueryOnEveryShard(LOAD)) {
+            Match patient = new Match(Integer.parseInt(row.get(0)), row.get(1), row.get(2));
+            // the copies of a patient on the shards they booked at
+            if (patients.get(patient.id) != null) continue;
+            patients.put(patient.id, patient);
+            keys.addAll(keys(patient));
+        }
+        String[] sorted = keys.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return new Snapshot(sorted, patients, start);
+    }
+
+    //one key per word of the name and of the address
+    private static List<String> keys(Match patient) {
+        List<String> keys = new ArrayList<String>();
+        for (String field : new String[]{patient.name, patient.address}) {
+            String text = normalize(field);
+            for (int i = 0; i < text.length(); ++i) {
+                if (i > 0 && text.charAt(i - 1) != ' ') continue;
+                keys.add(text.substring(i, Math.min(text.length(), i + MAX_KEY)) + SEPARATOR + patient.id);
+            }
+        }
+        return keys;
+    }
+
+    private static int id(String key) {
+        return Integer.parseInt(key.substring(key.lastIndexOf(SEPARATOR) + 1));
+    }
+
+    //lower case with single spaces, the form keys and queries are compared in
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase().replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,196 @@
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is a read-through cache of the doctor, department and
+ * hospital tables, which are small and change slowly.  The hot queries use
+ * it to resolve names in memory instead of joining those tables.
+ *
+ * The cache holds an immutable snapshot that is reloaded when it is older
+ * than the time to live or after invalidate(), e.g. when AddDoctor wrote a
+ * doctor.  A doctor missing from the snapshot, added by another JVM, is
+ * read through by its id.  One cache is shared by every session.
+ */
+
+public class ReferenceCache {
+    public static final long DEFAULT_TTL_MS = 300000;
+
+    public static final class Hospital {
+        public final int id;
+        public final String name;
+
+        Hospital(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    public static final class Department {
+        public final int id;
+        public final String name;
+        public final int hid;
+
+        Department(int id, String name, int hid) {
+            this.id = id;
+            this.name = name;
+            this.hid = hid;
+        }
+    }
+
+    public static final class Doctor {
+        public final int id;
+        public final String name;
+        public final String specialty;
+        public final int did;
+
+        Doctor(int id, String name, String specialty, int did) {
+            this.id = id;
+            this.name = name;
+            this.specialty = specialty;
+            this.did = did;
+        }
+    }
+
+    //one consistent load of the three tables
+    private static final class Snapshot {
+        final long loadedAt = System.currentTimeMillis();
+        final IntObjectMap<Hospital> hospitals;
+        final IntObjectMap<Department> departments;
+        final IntObjectMap<Doctor> doctors;
+        //department name to the ids of the doctors of every department with that name
+        final Map<String, int[]> doctorsByDepartmentName;
+        //department name to the ids of the departments with that name, one per hospital
+        final Map<String, int[]> departmentsByName;
+
+        Snapshot(IntObjectMap<Hospital> hospitals, IntObjectMap<Department> departments, IntObjectMap<Doctor> doctors) {
+            this.hospitals = hospitals;
+            this.departments = departments;
+            this.doctors = doctors;
+            Map<String, int[]> byName = new HashMap<String, int[]>();
+            for (int id : doctors.keys()) {
+                Department dept = departments.get(doctors.get(id).did);
+                if (dept == null) continue;
+                byName.put(dept.name, append(byName.get(dept.name), id));
+            }
+            this.doctorsByDepartmentName = byName;
+            Map<String, int[]> departmentsByName = new HashMap<String, int[]>();
+            for (int id : departments.keys()) {
+                String name = departments.get(id).name;
+                departmentsByName.put(name, append(departmentsByName.get(name), id));
+            }
+            this.departmentsByName = departmentsByName;
+        }
+    }
+
+    private static int[] append(int[] ids, int id) {
+        ids = ids == null ? new int[1] : Arrays.copyOf(ids, ids.length + 1);
+        ids[ids.length - 1] = id;
+        return ids;
+    }
+
+    static final String LOAD_HOSPITALS = "select hospital_ID, name from hospital;";
+    static final String LOAD_DEPARTMENTS = "select dept_ID, name, hid from department;";
+    static final String LOAD_DOCTORS = "select doctor_ID, name, specialty, did from doctor;";
+    static final String FIND_DOCTOR = "select doctor_ID, name, specialty, did from doctor where doctor_ID = ?;";
+
+    private final long _ttlMs;
+    private volatile Snapshot _snapshot = null;
+
+    public ReferenceCache(long ttlMs) {
+        this._ttlMs = ttlMs;
+    }
+
+    /**
+     * Method to drop the snapshot, the next lookup reloads the tables.
+     */
+    public void invalidate() {
+        this._snapshot = null;
+    }
+
+    //returns a snapshot younger than the time to live, loading one through the session if needed
+    private Snapshot snapshot(DBproject esql) throws SQLException {
+        Snapshot snapshot = this._snapshot;
+        if (snapshot != null && System.currentTimeMillis() - snapshot.loadedAt < this._ttlMs) return snapshot;
+        synchronized (this) {
+            snapshot = this._snapshot;
+            if (snapshot != null && System.currentTimeMillis() - snapshot.loadedAt < this._ttlMs) return snapshot;
+            snapshot = load(esql);
+            this._snapshot = snapshot;
+            return snapshot;
+        }
+    }
+
+    private static Snapshot load(DBproject esql) throws SQLException {
+        List<List<String>> rows = esql.executeQueryAndReturnResult(LOAD_HOSPITALS);
+        IntObjectMap<Hospital> hospitals = new IntObjectMap<Hospital>(rows.size());
+        for (List<String> row : rows) {
+            int id = Integer.parseInt(row.get(0));
+            hospitals.put(id, new Hospital(id, row.get(1)));
+        }
+        rows = esql.executeQueryAndReturnResult(LOAD_DEPARTMENTS);
+        IntObjectMap<Department> departments = new IntObjectMap<Department>(rows.size());
+        for (List<String> row : rows) {
+            int id = Integer.parseInt(row.get(0));
+            departments.put(id, new Department(id, row.get(1), Integer.parseInt(row.get(2))));
+        }
+        rows = esql.executeQueryAndReturnResult(LOAD_DOCTORS);
+        IntObjectMap<Doctor> doctors = new IntObjectMap<Doctor>(rows.size());
+        for (List<String> row : rows) {
+            Doctor doctor = toDoctor(row);
+            doctors.put(doctor.id, doctor);
+        }
+        return new Snapshot(hospitals, departments, doctors);
+    }
+
+    private static Doctor toDoctor(List<String> row) {
+        return new Doctor(Integer.parseInt(row.get(0)), row.get(1), row.get(2), Integer.parseInt(row.get(3)));
+    }
+
+    /**
+     * Method to look up a doctor, reading it from the database when it is
+     * newer than the snapshot.
+     *
+     * @return the doctor, or null when there is no such doctor
+     */
+    public Doctor doctor(DBproject esql, int id) throws SQLException {
+        Doctor doctor = snapshot(esql).doctors.get(id);
+        if (doctor != null) return doctor;
+        List<List<String>> rows = esql.executeQueryAndReturnResult(FIND_DOCTOR, id);
+        if (rows.isEmpty()) return null;
+        // the snapshot is stale, reload it on the next lookup
+        invalidate();
+        return toDoctor(rows.get(0));
+    }
+
+    public Department department(DBproject esql, int id) throws SQLException {
+        return snapshot(esql).departments.get(id);
+    }
+
+    public Hospital hospital(DBproject esql, int id) throws SQLException {
+        return snapshot(esql).hospitals.get(id);
+    }
+
+    /**
+     * Method to return the ids of the doctors of every department with the
+     * given name; the same name is used by departments of several hospitals.
+     *
+     * @return the doctor ids, empty when no doctor works in such a department
+     */
+    public int[] doctorsOfDepartment(DBproject esql, String name) throws SQLException {
+        int[] ids = snapshot(esql).doctorsByDepartmentName.get(name);
+        return ids == null ? new int[0] : ids;
+    }
+
+    /**
+     * Method to return the ids of the departments with the given name.
+     *
+     * @return the department ids, empty when there is no such department
+     */
+    public int[] departmentsNamed(DBproject esql, String name) throws SQLException {
+        int[] ids = snapshot(esql).departmentsByName.get(name);
+        return ids == null ? new int[0] : ids;
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class routes the read-only menu operations to a hot standby of the
+ * database, so long reports stop holding primary connections the bookings
+ * wait for.  The standby is used while its replay lag stays within a
+ * bound and it streams from the primary; when it falls behind, loses
+ * the primary, or can not be reached, the operations read from the
+ * primary until the next check finds it caught up.
+ *
+ * The lag is measured at most every check interval, by the first session
+ * that asks after it expired; the others use the last measurement.
+ *
+ * Settings: -Ddbproject.replica.port (no standby when unset),
+ * -Ddbproject.replica.maxLagMs (default 5000), -Ddbproject.replica.checkMs
+ * (default 1000) and -Ddbproject.replica.poolSize (default 10).
+ */
+
+public class ReplicaRouter {
+    public static final long DEFAULT_MAX_LAG_MS = 5000;
+    public static final long DEFAULT_CHECK_MS = 1000;
+
+    //the menu operations that only read, see DBproject.OPERATIONS
+    static final Set<String> READ_ONLY_OPERATIONS = new HashSet<String>(Arrays.asList("ListAppointmentsOfDoctor",
+            "ListAvailableAppointmentsOfDepartment", "ListStatusNumberOfAppointmentsPerDoctor", "FindPatientsCountWithStatus",
+            "NextAvailableAppointmentsOfDepartment", "ListOverlappingAppointments", "ReportExporter"));
+
+    //nothing is behind when all WAL received is replayed, else the age of the last transaction replayed;
+    //both only hold while the WAL receiver streams, a disconnected standby has replayed all it got and stays behind
+    static final String REPLAY_LAG =
+            "select pg_is_in_recovery(), case when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0" +
+            " else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()) * 1000, 0)::bigint end," +
+            " exists (select 1 from pg_stat_wal_receiver where status = 'streaming');";
+
+    private final ConnectionPool _pool;
+    private final long _maxLagMs;
+    private final long _checkMs;
+    private final PrintStream _err;
+    private final ReentrantLock _checking = new ReentrantLock();
+    private volatile boolean _usable = false;
+    //System.nanoTime() of the last check, 0 forces the next one
+    private volatile long _checkedAt = 0;
+
+    public ReplicaRouter(ConnectionPool pool, long maxLagMs, long checkMs, PrintStream err) {
+        this._pool = pool;
+        this._maxLagMs = maxLagMs;
+        this._checkMs = checkMs;
+        this._err = err;
+    }
+
+    public ConnectionPool getPool() {
+        return this._pool;
+    }
+
+    /**
+     * Method to tell whether reads may go to the standby now, measuring
+     * its lag first when the last measurement is older than the check
+     * interval.
+     */
+    public boolean isUsable() {
+        if (System.nanoTime() - this._checkedAt > this._checkMs * 1000000L && this._checking.tryLock()) {
+            try {
+                check();
+            } finally {
+                this._checking.unlock();
+            }
+        }
+        return this._usable;
+    }
+
+    /**
+     * Method to stop reading from the standby after a session failed to
+     * reach it, until the next check.
+     */
+    public void failed(SQLException e) {
+        this._checkedAt = System.nanoTime();
+        setUsable(false, "unreachable, " + e.getMessage());
+    }
+
+    private void check() {
+        DBproject esql = new DBproject(this._pool, null, this._err, this._err);
+        try {
+            List<String> row = esql.executeQueryAndReturnResult(REPLAY_LAG).get(0);
+            if (!row.get(0).equals("t")) {
+                setUsable(false, "not in recovery, so not a standby");
+            } else if (!row.get(2).equals("t")) {
+                setUsable(false, "not streaming from the primary");
+            } else {
+                long lag = Long.parseLong(row.get(1));
+                setUsable(lag <= this._maxLagMs, "replay lag " + lag + " ms, bound " + this._maxLagMs + " ms");
+            }
+        } catch (SQLException e) {
+            setUsable(false, "unreachable, " + e.getMessage());
+        } finally {
+            esql.release();
+            this._checkedAt = System.nanoTime();
+        }
+    }
+
+    //reports only the changes, so a lagging standby does not flood the log
+    private synchronized void setUsable(boolean usable, String reason) {
+        if (usable == this._usable) return;
+        this._usable = usable;
+        this._err.println("Replica: " + reason + (usable ? ", reading from the standby" : ", reading from the primary"));
+    }
+
+    /**
+     * Method to create the router of -Ddbproject.replica.port, or null when
+     * it is not set.  The standby is only reached at the first check.
+     */
+    public static ReplicaRouter fromProperties(String dbname, String user, String passwd, PrintStream err) {
+        String port = System.getProperty("dbproject.replica.port");
+        if (port == null || port.isEmpty()) return null;
+        ConnectionPool pool = DBproject.newPool(dbname, port, user, passwd,
+                Integer.getInteger("dbproject.replica.poolSize", ConnectionPool.DEFAULT_MAX_SIZE));
+        return new ReplicaRouter(pool, Long.getLong("dbproject.replica.maxLagMs", DEFAULT_MAX_LAG_MS),
+                Long.getLong("dbproject.replica.checkMs", DEFAULT_CHECK_MS), err);
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.zip.GZIPOutputStream;
+
+import org.postgresql.PGConnection;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.Utils;
+
+/**
+ * This class exports reports and whole tables to a file or standard out,
+ * for the tools that used to scrape the menu output.  CSV is written by
+ * COPY ... TO STDOUT: the server formats the rows and the driver hands
+ * them to the output as they arrive.  JSON lines, one object per row, are
+ * written from a cursor, see DBproject.executeQueryAndStream.  Neither
+ * holds more than a fetch of rows in memory, and a file whose name ends
+ * in .gz is compressed on the fly.
+ *
+ * A source is a report, Q5 <doctor ID> <start date> <end date>,
+ * Q6 <date> <department name>, Q7, or Q8 <status>, where Q7-archive and
+ * Q8-archive add the archived appointments; or the name of a table.  The
+ * rows of Q7 and Q8 end with the name of their doctor.
+ */
+
+public class ReportExporter {
+    public enum Format { CSV, JSON }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    //the reports of doctors, joined with the doctor's name in the order of the report
+    private static final String WITH_DOCTOR_NAMES =
+            "select q.*, d.name as doctor_name from (%s) q left join doctor d on d.doctor_ID = q.doctor_id order by %s";
+
+    private final DBproject _esql;
+
+    public ReportExporter(DBproject esql) {
+        this._esql = esql;
+    }
+
+    /**
+     * Method to export a source.
+     *
+     * @param source a report, e.g. Q7, or a table
+     * @param args   the arguments of the report
+     * @param out    where the rows go, left open
+     * @return the number of rows exported
+     * @throws java.sql.SQLException when the query failed
+     * @throws java.io.IOException   when the output could not be written
+     */
+    public long export(String source, String[] args, OutputStream out, Format format) throws SQLException, IOException {
+        String table = null;
+        String query;
+        if (source.matches("Q[0-9].*")) {
+            query = report(source, args);
+        } else {
+            // the server quotes the name when it needs to
+            table = this._esql.executeQueryAndReturnResult("select to_regclass(?)::text;", source).get(0).get(0);
+            if (table == null) throw new IllegalArgumentException("No report or table named " + source);
+            query = "select * from " + table;
+        }
+        if (format == Format.JSON) return writeJson(query, out);
+        String copy = "COPY " + (table != null ? table : "(" + query + ")") + " TO STDOUT WITH (FORMAT csv, HEADER)";
+        return this._esql.getConnection().unwrap(PGConnection.class).getCopyAPI().copyOut(copy, out);
+    }
+
+    //the query of a report, with its arguments as literals since COPY takes no parameters
+    private String report(String source, String[] args) throws SQLException {
+        switch (source) {
+            case "Q5":
+                if (args.length != 3 || !DBproject.checkint(args[0]) || !DBproject.checkdate(args[1]) || !DBproject.checkdate(args[2]))
+                    throw new IllegalArgumentException("Q5 takes <doctor ID> <start date YYYY/MM/DD> <end date YYYY/MM/DD>");
+                // every page at once
+                return inline(DBproject.LIST_APPOINTMENTS_OF_DOCTOR, args[1], args[2], Integer.parseInt(args[0]), -1, Integer.MAX_VALUE);
+            case "Q6":
+                if (args.length != 2 || !DBproject.checkdate(args[0]) || !DBproject.checkname(args[1]))
+                    throw new IllegalArgumentException("Q6 takes <date YYYY/MM/DD> <department name>");
+                StringBuilder doctors = new StringBuilder("{");
+                for (int doctor : this._esql.getReferenceCache().doctorsOfDepartment(this._esql, args[1]))
+                    doctors.append(doctors.length() > 1 ? "," : "").append(doctor);
+                return inline(DBproject.LIST_AVAILABLE_APPOINTMENTS_OF_DEPARTMENT, args[0], doctors.append('}').toString());
+            case "Q7":
+            case "Q7-archive":
+                if (args.length != 0) throw new IllegalArgumentException(source + " takes no arguments");
+                return String.format(WITH_DOCTOR_NAMES, inline(DBproject.statusNumberQuery(this._esql, source.equals("Q7-archive"))),
+                        "q.doctor_id, q.count desc");
+            case "Q8":
+            case "Q8-archive":
+                if (args.length != 1 || !DBproject.checkstatus(args[0]))
+                    throw new IllegalArgumentException(source + " takes <status AC, AV, WL or PA>");
+                return String.format(WITH_DOCTOR_NAMES, inline(DBproject.patientsCountQuery(this._esql, source.equals("Q8-archive")), args[0]),
+                        "q.num_of_patient desc");
+            default:
+                throw new IllegalArgumentException("No report named " + source + ", the reports are Q5, Q6, Q7, Q7-archive, Q8 and Q8-archive");
+        }
+    }
+
+    //replaces the '?' placeholders of a menu query by the values, and drops its ';'
+    private String inline(String sql, Object... params) throws SQLException {
+        Connection conn = this._esql.getConnection();
+        boolean standard = conn.unwrap(BaseConnection.class).getStandardConformingStrings();
+        StringBuilder query = new StringBuilder();
+        int next = 0;
+        for (char c : sql.trim().replaceAll(";$", "").toCharArray()) {
+            if (c != '?') {
+                query.append(c);
+            } else if (params[next] instanceof Integer) {
+                query.append(params[next++]);
+            } else {
+                query.append('\'');
+                Utils.escapeLiteral(query, params[next++].toString(), standard);
+                query.append('\'');
+            }
+        }
+        return query.toString();
+    }
+
+    //one JSON object per row, numbers and booleans unquoted
+    private long writeJson(String query, OutputStream out) throws SQLException, IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        long rows = this._esql.executeQueryAndStream(query, new DBproject.RowHandler() {
+            private String[] names = null;
+            private int[] types = null;
+
+            public void handle(ResultSet rs) throws SQLException, IOException {
+                if (names == null) {
+                    ResultSetMetaData rsmd = rs.getMetaData();
+                    names = new String[rsmd.getColumnCount()];
+                    types = new int[names.length];
+                    for (int i = 0; i < names.length; ++i) {
+                        names[i] = rsmd.getColumnLabel(i + 1);
+                        types[i] = rsmd.getColumnType(i + 1);
+                    }
+                }
+                writer.write('{');
+                for (int i = 0; i < names.length; ++i) {
+                    if (i > 0) writer.write(',');
+                    writeString(writer, names[i]);
+                    writer.write(':');
+                    String value = rs.getString(i + 1);
+                    if (value == null) writer.write("null");
+                    else if (types[i] == Types.BIT || types[i] == Types.BOOLEAN) writer.write(rs.getBoolean(i + 1) ? "true" : "false");
+                    else if (isNumber(types[i]) && !value.equals("NaN") && !value.endsWith("Infinity")) writer.write(value);
+                    else writeString(writer, value);
+                }
+                writer.write("}\n");
+            }
+        });
+        writer.flush();
+        return rows;
+    }
+
+    private static boolean isNumber(int type) {
+        return type == Types.SMALLINT || type == Types.INTEGER || type == Types.BIGINT || type == Types.NUMERIC
+                || type == Types.DECIMAL || type == Types.REAL || type == Types.DOUBLE || type == Types.FLOAT;
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Method to pick the format of a target: JSON lines for names ending in
+     * .json or .jsonl, before an optional .gz, else CSV.  Standard out
+     * takes -Ddbproject.export.format=json|csv (default csv).
+     */
+    public static Format formatOf(String target) {
+        if (target.equals("-")) return System.getProperty("dbproject.export.format", "csv").equalsIgnoreCase("json") ? Format.JSON : Format.CSV;
+        String name = target.endsWith(".gz") ? target.substring(0, target.length() - 3) : target;
+        return name.endsWith(".json") || name.endsWith(".jsonl") ? Format.JSON : Format.CSV;
+    }
+
+    /**
+     * Method to open a target, - for the given standard out.  It is
+     * gzipped when its name ends in .gz, or for standard out with
+     * -Ddbproject.export.gzip=true.
+     */
+    public static OutputStream open(String target, OutputStream stdout) throws IOException {
+        boolean gzip = target.equals("-") ? Boolean.getBoolean("dbproject.export.gzip") : target.endsWith(".gz");
+        OutputStream out = target.equals("-") ? stdout : new FileOutputStream(target);
+        // COPY hands over a row at a time, the deflater gets whole buffers
+        if (gzip) out = new GZIPOutputStream(out, BUFFER_SIZE);
+        return new BufferedOutputStream(out, BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,295 @@
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class caches the pages of Q5, which clerks ask with the same
+ * doctor and dates many times a day.  Q6 is answered from the
+ * AvailabilityIndex instead.  A page is kept under its normalized
+ * arguments, together with the doctors and the days it covers, until it
+ * is the least recently used one of a full cache, it is older than the
+ * time to live, or one of those doctors has an appointment on one of
+ * those days change.
+ *
+ * The writers of this JVM call invalidate() once their change is
+ * committed, which drops only the answers of that doctor and day.  An
+ * answer read while such a change was being made is not kept, see
+ * generation().  Changes made by other JVMs show after the time to live.
+ * One cache is shared by every session.
+ *
+ * Settings: -Ddbproject.resultCache.size (default 1000 answers, 0 turns
+ * the cache off) and -Ddbproject.resultCache.ttlMs (default 60000).
+ * The statistics are published over JMX as DBproject:type=Cache,name=results.
+ */
+
+public class ResultCache implements ResultCacheMBean {
+    public static final int DEFAULT_SIZE = 1000;
+    public static final long DEFAULT_TTL_MS = 60000;
+
+    //one answer and what it depends on
+    private static final class Entry {
+        final String key;
+        final int[] doctors;
+        final long firstDay;
+        final long lastDay;
+        final List<List<String>> rows;
+        final long expiresAt;
+
+        Entry(String key, int[] doctors, long firstDay, long lastDay, List<List<String>> rows, long expiresAt) {
+            this.key = key;
+            this.doctors = doctors;
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            this.rows = rows;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean covers(long first, long last) {
+            return this.firstDay <= last && first <= this.lastDay;
+        }
+    }
+
+    private final int _size;
+    private final long _ttlMs;
+    //in access order, the eldest is the least recently used
+    private final LinkedHashMap<String, Entry> _entries;
+    //the keys of the answers of every doctor
+    private final Map<Integer, Set<String>> _byDoctor = new HashMap<Integer, Set<String>>();
+    //counts the invalidations, and the count at the last one of every doctor
+    private long _generation = 0;
+    private final Map<Integer, Long> _invalidatedAt = new HashMap<Integer, Long>();
+    private long _clearedAt = 0;
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private final LongAdder _expirations = new LongAdder();
+    private final LongAdder _invalidations = new LongAdder();
+    private final LongAdder _stalePuts = new LongAdder();
+
+    public ResultCache(int size, long ttlMs) {
+        this._size = size;
+        this._ttlMs = ttlMs;
+        this._entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ResultCache.Entry> eldest) {
+                if (size() <= ResultCache.this._size) return false;
+                unindex(eldest.getValue());
+                ResultCache.this._evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Method to create the cache of the -Ddbproject.resultCache.* settings
+     * and publish its statistics.
+     */
+    public static ResultCache fromProperties() {
+        ResultCache cache = new ResultCache(Integer.getInteger("dbproject.resultCache.size", DEFAULT_SIZE),
+                Long.getLong("dbproject.resultCache.ttlMs", DEFAULT_TTL_MS));
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(cache, new ObjectName("DBproject:type=Cache,name=results"));
+        } catch (JMException e) {
+            // still counted, only not visible over JMX
+        }
+        return cache;
+    }
+
+    /**
+     * Method to build the key of an answer from the query and its
+     * arguments, e.g. key(5, doctorId, from, to).  Arguments are normalized
+     * by the caller, dates as LocalDate.
+     */
+    public static String key(Object... parts) {
+        StringBuilder key = new StringBuilder();
+        for (Object part : parts)
+            key.append(part).append('\u0000');
+        return key.toString();
+    }
+
+    public boolean isEnabled() {
+        return this._size > 0;
+    }
+
+    /**
+     * Method to return a cached answer, or null when it must be read.
+     */
+    public synchronized List<List<String>> get(String key) {
+        if (!isEnabled()) return null;
+        Entry entry = this._entries.get(key);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            remove(entry);
+            this._expirations.increment();
+            entry = null;
+        }
+        if (entry == null) {
+            this._misses.increment();
+            return null;
+        }
+        this._hits.increment();
+        return entry.rows;
+    }
+
+    /**
+     * Method to tell whether an answer is cached, without counting a hit or
+     * a miss, e.g. before prefetching it.
+     */
+    public synchronized boolean contains(String key) {
+        Entry entry = this._entries.get(key);
+        return entry != null && entry.expiresAt > System.currentTimeMillis();
+    }
+
+    /**
+     * Method to return the generation to pass to put() for an answer about
+     * to be read.  Take it before the query starts.
+     */
+    public synchronized long generation() {
+        return this._generation;
+    }
+
+    /**
+     * Method to keep an answer, unless one of its doctors was invalidated
+     * since the generation was taken, since the answer may then predate
+     * the change.
+     *
+     * @param generation the generation() taken before the answer was read
+     * @param doctors    the doctors the answer lists appointments of
+     * @param first      the first day the answer covers
+     * @param last       the last day the answer covers
+     */
+    public synchronized void put(String key, long generation, int[] doctors, LocalDate first, LocalDate last, List<List<String>> rows) {
+        if (!isEnabled()) return;
+        if (this._clearedAt > generation) {
+            this._stalePuts.increment();
+            return;
+        }
+        for (int doctor : doctors) {
+            Long invalidated = this._invalidatedAt.get(doctor);
+            if (invalidated != null && invalidated > generation) {
+                this._stalePuts.increment();
+                return;
+            }
+        }
+        long firstDay = Math.min(first.toEpochDay(), last.toEpochDay());
+        long lastDay = Math.max(first.toEpochDay(), last.toEpochDay());
+        Entry entry = new Entry(key, doctors.clone(), firstDay, lastDay, Collections.unmodifiableList(new ArrayList<List<String>>(rows)),
+                System.currentTimeMillis() + this._ttlMs);
+        Entry old = this._entries.put(key, entry);
+        if (old != null) unindex(old);
+        for (int doctor : entry.doctors)
+            this._byDoctor.computeIfAbsent(doctor, d -> new HashSet<String>()).add(key);
+    }
+
+    /**
+     * Method to drop the answers listing appointments of a doctor on a day,
+     * after a committed change to one of them.
+     */
+    public void invalidate(int doctor, LocalDate date) {
+        invalidate(doctor, date, date);
+    }
+
+    /**
+     * Method to drop the answers listing appointments of a doctor on any
+     * day of a range, after a committed change to them.
+     */
+    public synchronized void invalidate(int doctor, LocalDate first, LocalDate last) {
+        this._invalidatedAt.put(doctor, ++this._generation);
+        Set<String> keys = this._byDoctor.get(doctor);
+        if (keys == null) return;
+        for (String key : new ArrayList<String>(keys)) {
+            Entry entry = this._entries.get(key);
+            if (entry != null && entry.covers(first.toEpochDay(), last.toEpochDay())) {
+                remove(entry);
+                this._invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Method to drop every answer, e.g. after a bulk load.
+     */
+    public synchronized void clear() {
+        this._entries.clear();
+        this._byDoctor.clear();
+        // every answer being read may predate the change
+        this._clearedAt = ++this._generation;
+    }
+
+    private void remove(Entry entry) {
+        this._entries.remove(entry.key);
+        unindex(entry);
+    }
+
+    private void unindex(Entry entry) {
+        for (int doctor : entry.doctors) {
+            Set<String> keys = this._byDoctor.get(doctor);
+            if (keys == null) continue;
+            keys.remove(entry.key);
+            if (keys.isEmpty()) this._byDoctor.remove(doctor);
+        }
+    }
+
+    public long getHits() {
+        return this._hits.sum();
+    }
+
+    public long getMisses() {
+        return this._misses.sum();
+    }
+
+    public double getHitRatio() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public synchronized int getEntries() {
+        return this._entries.size();
+    }
+
+    public long getEvictions() {
+        return this._evictions.sum();
+    }
+
+    public long getExpirations() {
+        return this._expirations.sum();
+    }
+
+    public long getInvalidations() {
+        return this._invalidations.sum();
+    }
+
+    public long getStalePuts() {
+        return this._stalePuts.sum();
+    }
+
+    public void reset() {
+        this._hits.reset();
+        this._misses.reset();
+        this._evictions.reset();
+        this._expirations.reset();
+        this._invalidations.reset();
+        this._stalePuts.reset();
+    }
+
+    /**
+     * Method to describe the statistics in one line, e.g. for a benchmark
+     * report.
+     */
+    @Override
+    public String toString() {
+        return String.format("result cache: %d entries, %d hits, %d misses (%.1f%% hits), %d evicted, %d expired, %d invalidated, %d not kept",
+                getEntries(), getHits(), getMisses(), getHitRatio() * 100, getEvictions(), getExpirations(),
+                getInvalidations(), getStalePuts());
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * This interface is the JMX view of the result cache of Q5, registered
+ * as DBproject:type=Cache,name=results.
+ */
+
+public interface ResultCacheMBean {
+    long getHits();
+
+    long getMisses();
+
+    double getHitRatio();
+
+    int getEntries();
+
+    long getEvictions();
+
+    long getExpirations();
+
+    long getInvalidations();
+
+    long getStalePuts();
+
+    void reset();
+}
@@ -0,0 +1,170 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class applies the versioned schema migrations in sql/migrations on
+ * top of sql/create.sql and checks the plans of the menu queries.
+ *
+ * Migration files are named V<version>__<description>.sql and run in
+ * version order, each in its own transaction.  Applied versions are
+ * recorded in the schema_version table, so running migrate again only
+ * applies the new files.
+ */
+
+public class SchemaMigrator {
+    private static final Pattern MIGRATION_FILE = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+    private static final Pattern SEQ_SCAN = Pattern.compile("Seq Scan on (\\w+)");
+    //tables that grow with the number of visits, a sequential scan on them fails the plan check
+    private static final Set<String> LARGE_TABLES = new HashSet<String>(Arrays.asList(
+            "appointment", "has_appointment", "searches", "patient", "schedules", "doctor_slot"));
+
+    private final DBproject _esql;
+
+    public SchemaMigrator(DBproject esql) {
+        this._esql = esql;
+    }
+
+    /**
+     * Method to apply every migration of the directory that is not yet
+     * recorded in schema_version.
+     *
+     * @param dir the migrations directory, usually sql/migrations
+     * @return the number of migrations applied
+     * @throws java.sql.SQLException when a migration fails, it is rolled back
+     * @throws java.io.IOException   when a migration can not be read
+     */
+    public int migrate(File dir) throws SQLException, IOException {
+        File[] files = dir.listFiles();
+        if (files == null) throw new IOException("No migrations directory " + dir.getPath());
+        Arrays.sort(files, (a, b) -> Integer.compare(version(a), version(b)));
+
+        Connection conn = this._esql.getConnection();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INTEGER NOT NULL PRIMARY KEY, description VARCHAR(128) NOT NULL, " +
+                    "applied_at TIMESTAMP NOT NULL DEFAULT now())");
+        }
+        Set<Integer> applied = new HashSet<Integer>();
+        for (List<String> row : this._esql.executeQueryAndReturnResult("select version from schema_version;"))
+            applied.add(Integer.parseInt(row.get(0)));
+
+        int count = 0;
+        for (File file : files) {
+            Matcher m = MIGRATION_FILE.matcher(file.getName());
+            if (!m.matches()) continue;
+            int version = Integer.parseInt(m.group(1));
+            if (applied.contains(version)) continue;
+
+            String script = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            this._esql.out.println("Applying migration " + file.getName());
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(script);
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                    ps.setInt(1, version);
+                    ps.setString(2, m.group(2));
+                    ps.executeUpdate();
+                }
+                conn.commit();
+                count++;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw new SQLException("Migration " + file.getName() + " failed: " + e.getMessage(), e);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return count;
+    }
+
+    private static int version(File file) {
+        Matcher m = MIGRATION_FILE.matcher(file.getName());
+        return m.matches() ? Integer.parseInt(m.group(1)) : Integer.MAX_VALUE;
+    }
+
+    /*
+     * The statements of the menu operations with sample arguments.
+     */
+    private static Map<String, Object[]> menuQueries() {
+        Map<String, Object[]> queries = new LinkedHashMap<String, Object[]>();
+        queries.put("1 AddDoctor", new Object[]{DBproject.ADD_DOCTOR, 0, "NAME", "SPECIALTY", 0});
+        queries.put("2 AddPatient", new Object[]{DBproject.ADD_PATIENT, 0, "NAME", "M", 30, "ADDRESS", 0});
+        queries.put("3 AddAppointment", new Object[]{DBproject.ADD_APPOINTMENT, 0, "2021/08/16", "08:00-10:00"});
+        queries.put("4 MakeAppointment lookup", new Object[]{DBproject.FIND_DOCTOR_APPOINTMENT, 0, 0});
+        queries.put("4 MakeAppointment booking new patient", new Object[]{DBproject.BOOK_APPOINTMENT_NEW_PATIENT,
+                0, 0, 0, 0, "NAME", "M", 30, "ADDRESS", 0, 0});
+        queries.put("4 MakeAppointment booking returning patient", new Object[]{DBproject.BOOK_APPOINTMENT_RETURNING_PATIENT,
+                0, 0, 0, 0, 0, 0});
+        queries.put("5 ListAppointmentsOfDoctor", new Object[]{DBproject.LIST_APPOINTMENTS_OF_DOCTOR,
+                "2021/01/01", "2021/12/31", 0, -1, 100});
+        queries.put("6 ListAvailableAppointmentsOfDepartment", new Object[]{DBproject.LIST_AVAILABLE_APPOINTMENTS_OF_DEPARTMENT,
+                "2021/08/16", new int[]{0, 1, 2}});
+        queries.put("7 ListStatusNumberOfAppointmentsPerDoctor", new Object[]{DBproject.LIST_STATUS_NUMBER_OF_APPOINTMENTS_PER_DOCTOR});
+        queries.put("8 FindPatientsCountWithStatus", new Object[]{DBproject.FIND_PATIENTS_COUNT_WITH_STATUS, "AC"});
+        queries.put("7 ListStatusNumberOfAppointmentsPerDoctor with archive",
+                new Object[]{DBproject.LIST_STATUS_NUMBER_OF_APPOINTMENTS_PER_DOCTOR_WITH_ARCHIVE});
+        queries.put("8 FindPatientsCountWithStatus with archive", new Object[]{DBproject.FIND_PATIENTS_COUNT_WITH_STATUS_WITH_ARCHIVE, "PA"});
+        queries.put("13 CancelAppointments lock", new Object[]{WaitlistEngine.LOCK_APPOINTMENTS, new int[]{0, 1, 2}, "AC"});
+        queries.put("13 CancelAppointments queue heads", new Object[]{WaitlistEngine.QUEUE_HEADS, new int[]{0, 1, 2}, "AC"});
+        queries.put("Archiver batch", new Object[]{Archiver.PICK_BATCH, "2021/01/01", 1000});
+        queries.put("14 SearchPatients fuzzy", new Object[]{PatientSearch.FUZZY, "ENDERLE", "ENDERLE", "ENDERLE", "ENDERLE", 10});
+        queries.put("SlotGenerator week", new Object[]{SlotGenerator.GENERATE_WEEK, "2021/08/22", 0, "2021/08/15",
+                new int[]{0, 1}, new String[]{"2021-08-16", "2021-08-16"}, new String[]{"08:00-08:30", "08:30-09:00"},
+                0, 0, new int[]{0, 1}, new int[]{0, 0}});
+        queries.put("12 ListOverlappingAppointments", new Object[]{DBproject.LIST_OVERLAPPING_APPOINTMENTS,
+                "2021/08/16", "09:00-11:00"});
+        queries.put("12 ListOverlappingAppointments of a doctor", new Object[]{DBproject.LIST_OVERLAPPING_APPOINTMENTS_OF_DOCTOR,
+                0, "2021/08/16", "09:00-11:00"});
+        return queries;
+    }
+
+    /**
+     * Method to EXPLAIN every menu query and report the ones that still
+     * scan a large table sequentially.  The planner prefers sequential
+     * scans on the small bundled data set, so run this against a database
+     * loaded at production scale.
+     *
+     * @return true when no query scans a large table
+     * @throws java.sql.SQLException when a query can not be explained
+     */
+    public boolean checkPlans() throws SQLException {
+        boolean ok = true;
+        for (Map.Entry<String, Object[]> entry : menuQueries().entrySet()) {
+            Object[] query = entry.getValue();
+            Object[] params = Arrays.copyOfRange(query, 1, query.length);
+            for (int i = 0; i < params.length; ++i)
+                if (params[i] instanceof int[]) params[i] = this._esql.createIntArray((int[]) params[i]);
+                else if (params[i] instanceof String[]) params[i] = this._esql.createTextArray((String[]) params[i]);
+            List<String> scanned = new ArrayList<String>();
+            StringBuilder plan = new StringBuilder();
+            for (List<String> row : this._esql.executeQueryAndReturnResult("EXPLAIN " + query[0], params)) {
+                plan.append("    ").append(row.get(0)).append('\n');
+                Matcher m = SEQ_SCAN.matcher(row.get(0));
+                if (m.find() && LARGE_TABLES.contains(m.group(1).toLowerCase())) scanned.add(m.group(1));
+            }
+            boolean pass = scanned.isEmpty();
+            ok &= pass;
+            this._esql.out.println((pass ? "PASS " : "FAIL ") + entry.getKey()
+                    + (scanned.isEmpty() ? "" : " (sequential scan on " + String.join(", ", scanned) + ")"));
+            if (!pass) this._esql.out.print(plan);
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,358 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * This class runs menu operations from a script instead of a clerk, one
+ * command per line: the operation, by name or menu number, then its
+ * fields, separated by tabs.  Blank lines and lines starting with # are
+ * skipped.  Fields are checked with the rules of the menu prompts.
+ *
+ *   AddDoctor                              name, specialty, did
+ *   AddPatient                             name, gender, age, address, number_of_appts
+ *   AddAppointment                         YYYY/MM/DD, HH:MM-HH:MM
+ *   MakeAppointment                        patient_id or x, doctor_id, appnt_id, name, gender, age, address
+ *   ListAppointmentsOfDoctor               doctor_id, YYYY/MM/DD, YYYY/MM/DD
+ *   ListAvailableAppointmentsOfDepartment  YYYY/MM/DD, department name
+ *   ListStatusNumberOfAppointmentsPerDoctor [Y to include the archive]
+ *   FindPatientsCountWithStatus            status [, Y to include the archive]
+ *   NextAvailableAppointmentsOfDepartment  department name, YYYY/MM/DD, count
+ *   ListOverlappingAppointments            YYYY/MM/DD, HH:MM-HH:MM [, doctor_id]
+ *   CancelAppointments                     appnt_id, ...
+ *
+ * Consecutive commands of options 1 to 4 are grouped, up to the group size,
+ * into one transaction.  When a command of a group fails the group is rolled
+ * back and run again one command per transaction, so only the failing
+ * commands are lost.  Reads and cancellations end the open group and run
+ * alone.  One result line is printed per command, and the totals at the end.
+ */
+
+public class ScriptRunner {
+    public static final int DEFAULT_GROUP_SIZE = 100;
+
+    //runs a parsed command and describes its result
+    private interface Step {
+        String run() throws SQLException;
+    }
+
+    private static final class Command {
+        final int line;
+        final String operation;
+        final Step step;
+
+        Command(int line, String operation, Step step) {
+            this.line = line;
+            this.operation = operation;
+            this.step = step;
+        }
+    }
+
+    private final DBproject _esql;
+    private final int _groupSize;
+    private final List<Command> _group = new ArrayList<Command>();
+    //the patients the commands run since the last commit added, searchable once committed
+    private final List<Runnable> _afterCommit = new ArrayList<Runnable>();
+    private int _commands = 0;
+    private int _ok = 0;
+    private int _invalid = 0;
+    private int _failed = 0;
+    private int _transactions = 0;
+
+    public ScriptRunner(DBproject esql, int groupSize) {
+        this._esql = esql;
+        this._groupSize = groupSize;
+    }
+
+    /**
+     * Method to run every command of a script.
+     *
+     * @return the number of commands that were invalid or failed
+     * @throws java.sql.SQLException when the connection itself failed
+     * @throws java.io.IOException   when the script could not be read
+     */
+    public int run(BufferedReader script) throws SQLException, IOException {
+        long start = System.nanoTime();
+        this._esql.out.println("line\toperation\tresult\tdetail\t");
+        String text;
+        int line = 0;
+        while ((text = script.readLine()) != null) {
+            ++line;
+            if (text.trim().isEmpty() || text.startsWith("#")) continue;
+            ++this._commands;
+            String[] fields = text.split("\t", -1);
+            String operation = operation(fields[0].trim());
+            Command command;
+            try {
+                command = new Command(line, operation, parse(operation, fields));
+            } catch (IllegalArgumentException e) {
+                ++this._invalid;
+                report(line, operation == null ? fields[0] : operation, "INVALID", e.getMessage());
+                continue;
+            }
+            if (isGrouped(operation)) {
+                this._group.add(command);
+                if (this._group.size() >= this._groupSize) flush();
+            } else {
+                flush();
+                runAlone(command);
+            }
+        }
+        flush();
+        long ms = (System.nanoTime() - start) / 1000000;
+        this._esql.out.println(this._commands + " command(s): " + this._ok + " ok, " + this._invalid + " invalid, "
+                + this._failed + " failed, " + this._transactions + " transaction(s), " + ms + " ms ("
+                + (ms == 0 ? this._commands : this._commands * 1000L / ms) + " commands/s)");
+        return this._invalid + this._failed;
+    }
+
+    //the metrics name of an operation given by name or menu number, or null
+    private static String operation(String name) {
+        for (int i = 1; i < DBproject.OPERATIONS.length; ++i) {
+            if (DBproject.OPERATIONS[i] != null && (DBproject.OPERATIONS[i].equals(name) || String.valueOf(i).equals(name)))
+                return DBproject.OPERATIONS[i];
+        }
+        return null;
+    }
+
+    //plain inserts and bookings, the writes that can share a transaction
+    private static boolean isGrouped(String operation) {
+        return operation.equals("AddDoctor") || operation.equals("AddPatient") || operation.equals("AddAppointment")
+                || operation.equals("MakeAppointment");
+    }
+
+    //runs the open group in one transaction, or one command per transaction when it fails
+    private void flush() throws SQLException {
+        if (this._group.isEmpty()) return;
+        Connection conn = this._esql.getConnection();
+        conn.setAutoCommit(false);
+        boolean replay = false;
+        try {
+            String[] results = new String[this._group.size()];
+            String[] refused = new String[results.length];
+            for (int i = 0; i < results.length; ++i) {
+                try {
+                    results[i] = execute(this._group.get(i));
+                } catch (IllegalStateException e) {
+                    refused[i] = e.getMessage();
+                }
+            }
+            conn.commit();
+            committed();
+            ++this._transactions;
+            for (int i = 0; i < results.length; ++i) {
+                Command command = this._group.get(i);
+                if (refused[i] != null) {
+                    ++this._failed;
+                    report(command.line, command.operation, "FAILED", refused[i]);
+                } else {
+                    ++this._ok;
+                    report(command.line, command.operation, "OK", results[i]);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            // e.g. a bug in a step, the group must not be committed by setAutoCommit(true) below
+            conn.rollback();
+            replay = true;
+        } finally {
+            this._afterCommit.clear();
+            conn.setAutoCommit(true);
+            this._esql.release();
+            // the cached answers about the bookings of the group are dropped once they are committed, or rolled back
+            this._esql.invalidateChanged();
+        }
+        // the failed statement aborted the transaction, find the culprits one at a time
+        if (replay) {
+            for (Command command : this._group)
+                runAlone(command);
+        }
+        this._group.clear();
+    }
+
+    private void runAlone(Command command) {
+        try {
+            String result = execute(command);
+            committed();
+            ++this._transactions;
+            ++this._ok;
+            report(command.line, command.operation, "OK", result);
+        } catch (SQLException | RuntimeException e) {
+            ++this._failed;
+            report(command.line, command.operation, "FAILED", e.getMessage() != null ? e.getMessage() : e.toString());
+        } finally {
+            this._afterCommit.clear();
+            this._esql.release();
+        }
+    }
+
+    //makes the patients of the committed commands searchable, a rolled back group added none
+    private void committed() {
+        for (Runnable action : this._afterCommit)
+            action.run();
+        this._afterCommit.clear();
+    }
+
+    //IllegalStateException when the command was refused without an error of the transaction, e.g. a slot already taken
+    private String execute(Command command) throws SQLException {
+        this._esql.beginOperation(command.operation);
+        try {
+            return command.step.run();
+        } finally {
+            this._esql.endOperation();
+        }
+    }
+
+    private void report(int line, String operation, String result, String detail) {
+        this._esql.out.println(line + "\t" + operation + "\t" + result + "\t" + detail + "\t");
+    }
+
+    //the field at index i, checked with a rule of the menu
+    private static String field(String[] fields, int i, Predicate<String> rule, String what) {
+        if (i >= fields.length) throw new IllegalArgumentException("missing " + what);
+        String value = fields[i].trim();
+        boolean valid;
+        try {
+            valid = !value.isEmpty() && rule.test(value);
+        } catch (RuntimeException e) {
+            valid = false;
+        }
+        if (!valid) throw new IllegalArgumentException("invalid " + what + " '" + value + "'");
+        return value;
+    }
+
+    private static String optional(String[] fields, int i) {
+        return i < fields.length ? fields[i].trim() : "";
+    }
+
+    private static boolean isGender(String s) {
+        return s.toUpperCase().equals("M") || s.toUpperCase().equals("F");
+    }
+
+    private static boolean isYes(String s) {
+        return s.toUpperCase().equals("Y");
+    }
+
+    //checks the fields of a command and binds them to its step
+    private Step parse(String operation, final String[] f) {
+        if (operation == null) throw new IllegalArgumentException("unknown operation");
+        final DBproject esql = this._esql;
+        switch (operation) {
+            case "AddDoctor": {
+                final String name = field(f, 1, DBproject::checkname, "name");
+                final String specialty = field(f, 2, DBproject::checkname, "specialty");
+                final int did = Integer.parseInt(field(f, 3, DBproject::checkint, "department ID"));
+                return () -> {
+                    int id = esql.nextDoctorId();
+                    esql.executeUpdate(DBproject.ADD_DOCTOR, id, name, specialty, did);
+                    esql.getReferenceCache().invalidate();
+                    return "doctor_id " + id;
+                };
+            }
+            case "AddPatient": {
+                final String name = field(f, 1, DBproject::checkname, "name");
+                final String gtype = field(f, 2, ScriptRunner::isGender, "gender").toUpperCase();
+                final int age = Integer.parseInt(field(f, 3, DBproject::checkage, "age"));
+                final String address = optional(f, 4);
+                final int appts = Integer.parseInt(field(f, 5, DBproject::checkint, "number_of_appts"));
+                return () -> {
+                    int id = esql.nextPatientId();
+                    esql.executeUpdate(DBproject.ADD_PATIENT, id, name, gtype, age, address, appts);
+                    this._afterCommit.add(() -> esql.getPatientSearch().add(id, name, address));
+                    return "patient_id " + id;
+                };
+            }
+            case "AddAppointment": {
+                final String date = field(f, 1, DBproject::checkdate, "date");
+                final String slot = field(f, 2, DBproject::checktime, "time slot");
+                return () -> {
+                    int id = esql.nextAppointmentId();
+                    esql.executeUpdate(DBproject.ADD_APPOINTMENT, id, date, slot);
+                    return "appnt_id " + id;
+                };
+            }
+            case "MakeAppointment": {
+                final String patient = field(f, 1, s -> s.equals("x") || DBproject.checkint(s), "patient ID");
+                final int doctor = Integer.parseInt(field(f, 2, DBproject::checkint, "doctor ID"));
+                final int appt = Integer.parseInt(field(f, 3, DBproject::checkint, "appointment ID"));
+                final String name = field(f, 4, DBproject::checkname, "name");
+                final String gtype = field(f, 5, ScriptRunner::isGender, "gender").toUpperCase();
+                final int age = Integer.parseInt(field(f, 6, DBproject::checkage, "age"));
+                final String address = optional(f, 7);
+                return () -> {
+                    int pid = patient.equals("x") ? esql.nextPatientId() : Integer.parseInt(patient);
+                    List<String> booked = esql.bookAppointment(doctor, appt, pid, patient.equals("x"), name, gtype, age, address);
+                    if (booked == null) throw new IllegalStateException("appointment not available");
+                    if (patient.equals("x")) this._afterCommit.add(() -> esql.getPatientSearch().add(pid, name, address));
+                    return "patient_id " + pid + " appnt_id " + booked.get(0) + " status " + booked.get(3);
+                };
+            }
+            case "ListAppointmentsOfDoctor": {
+                final int doctor = Integer.parseInt(field(f, 1, DBproject::checkint, "doctor ID"));
+                final String from = field(f, 2, DBproject::checkdate, "start date");
+                final String to = field(f, 3, DBproject::checkdate, "end date");
+                // every page at once, there is nobody to ask for the next one
+                return () -> esql.executeQueryAndPrintResult(DBproject.LIST_APPOINTMENTS_OF_DOCTOR, from, to, doctor, -1,
+                        Integer.MAX_VALUE) + " row(s)";
+            }
+            case "ListAvailableAppointmentsOfDepartment": {
+                final String date = field(f, 1, DBproject::checkdate, "date");
+                final String department = field(f, 2, DBproject::checkname, "department name");
+                return () -> {
+                    int[] doctors = esql.getReferenceCache().doctorsOfDepartment(esql, department);
+                    if (doctors.length == 0) return "0 row(s)";
+                    return esql.executeQueryAndPrintResult(DBproject.LIST_AVAILABLE_APPOINTMENTS_OF_DEPARTMENT, date,
+                            esql.createIntArray(doctors)) + " row(s)";
+                };
+            }
+            case "ListStatusNumberOfAppointmentsPerDoctor": {
+                final boolean archive = isYes(optional(f, 1));
+                return () -> esql.executeQueryAndPrintWithDoctorNames(DBproject.statusNumberQuery(esql, archive)) + " row(s)";
+            }
+            case "FindPatientsCountWithStatus": {
+                final String status = field(f, 1, DBproject::checkstatus, "status");
+                final boolean archive = isYes(optional(f, 2));
+                return () -> esql.executeQueryAndPrintWithDoctorNames(DBproject.patientsCountQuery(esql, archive), status) + " row(s)";
+            }
+            case "NextAvailableAppointmentsOfDepartment": {
+                final String department = field(f, 1, DBproject::checkname, "department name");
+                final String date = field(f, 2, DBproject::checkdate, "date");
+                final int n = Integer.parseInt(field(f, 3, s -> DBproject.checkint(s) && Integer.parseInt(s) > 0, "count"));
+                return () -> {
+                    int[] doctors = esql.getReferenceCache().doctorsOfDepartment(esql, department);
+                    if (doctors.length == 0) return "0 row(s)";
+                    return esql.executeQueryAndPrintResult(DBproject.NEXT_AVAILABLE_APPOINTMENTS_OF_DEPARTMENT, date,
+                            esql.createIntArray(doctors), n) + " row(s)";
+                };
+            }
+            case "ListOverlappingAppointments": {
+                final String date = field(f, 1, DBproject::checkdate, "date");
+                final String slot = field(f, 2, DBproject::checktime, "time slot");
+                final String doctor = optional(f, 3);
+                if (!doctor.isEmpty()) field(f, 3, DBproject::checkint, "doctor ID");
+                return () -> (doctor.isEmpty()
+                        ? esql.executeQueryAndPrintResult(DBproject.LIST_OVERLAPPING_APPOINTMENTS, date, slot)
+                        : esql.executeQueryAndPrintResult(DBproject.LIST_OVERLAPPING_APPOINTMENTS_OF_DOCTOR,
+                                Integer.parseInt(doctor), date, slot)) + " row(s)";
+            }
+            case "CancelAppointments": {
+                final int[] ids = new int[f.length - 1];
+                if (ids.length == 0) throw new IllegalArgumentException("missing appointment ID");
+                for (int i = 0; i < ids.length; ++i)
+                    ids[i] = Integer.parseInt(field(f, i + 1, DBproject::checkint, "appointment ID"));
+                return () -> {
+                    WaitlistEngine.Released released = new WaitlistEngine(esql).cancel(ids);
+                    int promoted = 0;
+                    for (int p : released.promoted)
+                        if (p >= 0) ++promoted;
+                    return released.ids.length + " cancelled, " + promoted + " promoted from the waitlist, "
+                            + (ids.length - released.ids.length) + " not found or not Active";
+                };
+            }
+            default:
+                throw new IllegalArgumentException(operation + " can not run from a script");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This class maps hospitals to the databases holding their appointments,
+ * one connection pool per database.  A clerk session works on the shard of
+ * its hospital; cross-hospital reports such as Q7 and Q8 query every shard
+ * at once and combine the answers.
+ *
+ * The map is a properties file named by -Ddbproject.shards, with one
+ * hospital_ID=port line per hospital and default=port for the others, all
+ * databases on localhost with the same name and user.  The small reference
+ * tables (hospital, department, doctor, staff, request_maintenance) are
+ * expected on every shard; AddDoctor and BatchAdd insert a doctor on every
+ * shard.  A patient is added at the clerk's shard and copied to each other
+ * shard they book at, see DBproject.bookAppointment; lookups by ID and
+ * PatientSearch look on every shard.  The *_id_seq sequences of each shard
+ * must hand out disjoint ranges, so ids stay unique across shards.
+ */
+
+public class ShardRouter {
+    private final Map<Integer, ConnectionPool> _byHospital = new HashMap<Integer, ConnectionPool>();
+    private final ConnectionPool _default;
+    //every shard once, in the order of the map
+    private final List<ConnectionPool> _pools = new ArrayList<ConnectionPool>();
+
+    public ShardRouter(Properties map, String dbname, String user, String passwd, int maxSize) {
+        Map<String, ConnectionPool> byPort = new LinkedHashMap<String, ConnectionPool>();
+        for (String key : map.stringPropertyNames()) {
+            String port = map.getProperty(key).trim();
+            ConnectionPool pool = byPort.get(port);
+            if (pool == null) {
+                pool = DBproject.newPool(dbname, port, user, passwd, maxSize);
+                byPort.put(port, pool);
+            }
+            if (!key.equals("default")) this._byHospital.put(Integer.parseInt(key.trim()), pool);
+        }
+        String port = map.getProperty("default");
+        if (port == null) throw new IllegalArgumentException("The shard map has no default=<port> line");
+        this._default = byPort.get(port.trim());
+        this._pools.addAll(byPort.values());
+    }
+
+    /**
+     * Method to return the pool of the shard holding a hospital.
+     */
+    public ConnectionPool poolOf(int hospitalId) {
+        ConnectionPool pool = this._byHospital.get(hospitalId);
+        return pool == null ? this._default : pool;
+    }
+
+    public List<ConnectionPool> getPools() {
+        return this._pools;
+    }
+
+    /**
+     * Method to run a grouped count query on every shard in parallel and
+     * combine the answers.  Rows with the same key columns are added up in
+     * the last column, which is the count, and the combined rows are sorted
+     * like the query sorts its own.
+     *
+     * @param esql  the session the queries are counted for
+     * @param keys  the number of leading key columns
+     * @param order the order of the query
+     * @return the combined rows
+     * @throws java.sql.SQLException when a shard failed
+     */
+    public List<List<String>> gather(DBproject esql, String query, int keys, Comparator<List<String>> order, Object... params)
+            throws SQLException {
+        List<CompletableFuture<List<List<String>>>> answers = new ArrayList<CompletableFuture<List<List<String>>>>();
+        for (ConnectionPool pool : this._pools)
+            answers.add(esql.executeQueryAsync(pool, query, params));
+        Map<List<String>, List<String>> combined = new LinkedHashMap<List<String>, List<String>>();
+        for (CompletableFuture<List<List<String>>> answer : answers) {
+            for (List<String> row : DBproject.await(answer)) {
+                List<String> same = combined.putIfAbsent(row.subList(0, keys), row);
+                if (same != null) {
+                    int count = same.size() - 1;
+                    same.set(count, String.valueOf(Long.parseLong(same.get(count)) + Long.parseLong(row.get(count))));
+                }
+            }
+        }
+        List<List<String>> rows = new ArrayList<List<String>>(combined.values());
+        rows.sort(order);
+        return rows;
+    }
+
+    /**
+     * Method to close the pools of every shard.
+     */
+    public void close() {
+        for (ConnectionPool pool : this._pools)
+            pool.close();
+    }
+
+    /**
+     * Method to create the router of -Ddbproject.shards, or null when it is
+     * not set.  The shards are only reached when first used.
+     *
+     * @throws java.io.IOException when the map can not be read
+     */
+    public static ShardRouter fromProperties(String dbname, String user, String passwd, int maxSize) throws IOException {
+        String file = System.getProperty("dbproject.shards");
+        if (file == null || file.isEmpty()) return null;
+        Properties map = new Properties();
+        try (Reader reader = new FileReader(file)) {
+            map.load(reader);
+        }
+        return new ShardRouter(map, dbname, user, passwd, maxSize);
+    }
+}
@@ -0,0 +1,195 @@
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class opens the appointment slots of the doctors of
+ * request_maintenance up to a horizon.  Each row gives a doctor's working
+ * window, e.g. 8:00-10:00, its patient_per_hour and a staff member; every
+ * hour of the window is cut into patient_per_hour slots, each an AV
+ * appointment linked to the doctor and scheduled for the window's staff.
+ *
+ * A doctor's week is one statement, so one transaction and one round trip,
+ * which also moves the doctor's progress in slot_generation of migration
+ * V007.  Runs are incremental: a doctor's weeks start the day after its
+ * progress, or today for new doctors.  Slots overlapping an appointment
+ * the doctor already has are left out, and of two overlapping windows of
+ * one doctor only the earlier one is used.
+ */
+
+public class SlotGenerator {
+    public static final int DEFAULT_HORIZON_DAYS = 28;
+
+    static final String LOAD_REQUESTS =
+            "select did, time_slot, patient_per_hour, sid from request_maintenance order by did, time_slot, sid;";
+    //new doctors start with everything before today generated
+    static final String START_PROGRESS =
+            "insert into slot_generation (doctor_id, generated_through) select distinct did, ?::date from request_maintenance" +
+            " on conflict (doctor_id) do nothing;";
+    static final String LOAD_PROGRESS = "select doctor_id, generated_through from slot_generation;";
+    /*
+     * One week of one doctor.  Nothing is written unless the claim moved the
+     * progress from the value read, and slots overlapping the doctor_slot of
+     * migration V004 are skipped.
+     */
+    static final String GENERATE_WEEK =
+            "with claim as (update slot_generation set generated_through = ?::date where doctor_id = ? and generated_through = ?::date" +
+            " returning doctor_id), slot as (" +
+            " select s.appnt_id, s.adate, s.time_slot from unnest(?::int[], ?::varchar[]::date[], ?::varchar[]) as s(appnt_id, adate, time_slot)" +
+            " where exists (select 1 from claim) and not exists (select 1 from doctor_slot d where d.doctor_id = ? and d.slot && slot_range(s.adate, s.time_slot))" +
+            "), added as (" +
+            " insert into appointment (appnt_ID, adate, time_slot, status) select appnt_id, adate, time_slot, 'AV' from slot" +
+            "), linked as (" +
+            " insert into has_appointment (appt_id, doctor_id) select appnt_id, ? from slot" +
+            "), staffed as (" +
+            " insert into schedules (appt_id, staff_id) select c.appt_id, c.staff_id from unnest(?::int[], ?::int[]) as c(appt_id, staff_id)" +
+            " join slot on slot.appnt_id = c.appt_id" +
+            ") select (select count(*) from claim), (select count(*) from slot);";
+
+    //the slots of one doctor's day and the staff scheduled on each
+    private static final class Plan {
+        final int doctor;
+        final List<String> slots = new ArrayList<String>();
+        final List<int[]> staff = new ArrayList<int[]>();
+
+        Plan(int doctor) {
+            this.doctor = doctor;
+        }
+    }
+
+    private final DBproject _esql;
+    private int _skippedWindows = 0;
+
+    public SlotGenerator(DBproject esql) {
+        this._esql = esql;
+    }
+
+    public int getSkippedWindows() {
+        return this._skippedWindows;
+    }
+
+    /**
+     * Method to open the slots of every doctor of request_maintenance for
+     * the days after its progress, up to and including the horizon.
+     *
+     * @param through the last day to open
+     * @return the number of appointments added
+     * @throws java.sql.SQLException when a week failed, the weeks before it stay
+     */
+    public long generate(LocalDate through) throws SQLException {
+        LocalDate today = LocalDate.now();
+        this._esql.executeUpdate(START_PROGRESS, today.minusDays(1).toString());
+        Map<Integer, LocalDate> progress = new HashMap<Integer, LocalDate>();
+        for (List<String> row : this._esql.executeQueryAndReturnResult(LOAD_PROGRESS))
+            progress.put(Integer.parseInt(row.get(0)), LocalDate.parse(row.get(1)));
+
+        long added = 0;
+        for (Plan plan : plan()) {
+            LocalDate done = progress.get(plan.doctor);
+            if (done == null) continue;
+            while (done.isBefore(through)) {
+                // a doctor left alone for a while starts today, the past stays empty
+                LocalDate first = done.isBefore(today) ? today : done.plusDays(1);
+                LocalDate last = first.plusDays(6).isAfter(through) ? through : first.plusDays(6);
+                if (last.isBefore(first)) break;
+                long week = week(plan, done, first, last);
+                if (week < 0) break; // claimed by another generator
+                added += week;
+                done = last;
+            }
+            this._esql.release();
+        }
+        return added;
+    }
+
+    //opens the days first to last of a doctor, -1 when its progress was no longer done
+    private long week(Plan plan, LocalDate done, LocalDate first, LocalDate last) throws SQLException {
+        int days = (int) (last.toEpochDay() - first.toEpochDay()) + 1;
+        int n = days * plan.slots.size();
+        int[] ids = new int[n];
+        String[] dates = new String[n];
+        String[] slots = new String[n];
+        List<Integer> scheduled = new ArrayList<Integer>();
+        List<Integer> staff = new ArrayList<Integer>();
+        int i = 0;
+        for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+            for (int s = 0; s < plan.slots.size(); ++s, ++i) {
+                ids[i] = this._esql.nextAppointmentId();
+                dates[i] = day.toString();
+                slots[i] = plan.slots.get(s);
+                for (int sid : plan.staff.get(s)) {
+                    scheduled.add(ids[i]);
+                    staff.add(sid);
+                }
+            }
+        }
+        List<String> row = this._esql.executeQueryAndReturnResult(GENERATE_WEEK, last.toString(), plan.doctor, done.toString(),
+                this._esql.createIntArray(ids), this._esql.createTextArray(dates), this._esql.createTextArray(slots),
+                plan.doctor, plan.doctor, this._esql.createIntArray(toArray(scheduled)), this._esql.createIntArray(toArray(staff))).get(0);
+        if (row.get(0).equals("0")) return -1;
+        this._esql.getResultCache().invalidate(plan.doctor, first, last);
+        this._esql.getAvailabilityIndex().changed();
+        return Long.parseLong(row.get(1));
+    }
+
+    //the daily slots of every doctor, from its request_maintenance rows
+    private List<Plan> plan() throws SQLException {
+        // windows by doctor, each with its largest patient_per_hour and all its staff
+        Map<Integer, Map<TimeSlot, List<Integer>>> staff = new LinkedHashMap<Integer, Map<TimeSlot, List<Integer>>>();
+        Map<Integer, Map<TimeSlot, Integer>> perHour = new HashMap<Integer, Map<TimeSlot, Integer>>();
+        for (List<String> row : this._esql.executeQueryAndReturnResult(LOAD_REQUESTS)) {
+            int doctor = Integer.parseInt(row.get(0));
+            TimeSlot window = TimeSlot.parse(row.get(1).trim());
+            int pph = Integer.parseInt(row.get(2));
+            if (window == null || pph < 1) {
+                ++this._skippedWindows;
+                continue;
+            }
+            staff.computeIfAbsent(doctor, d -> new TreeMap<TimeSlot, List<Integer>>())
+                    .computeIfAbsent(window, w -> new ArrayList<Integer>()).add(Integer.parseInt(row.get(3)));
+            perHour.computeIfAbsent(doctor, d -> new HashMap<TimeSlot, Integer>()).merge(window, pph, Math::max);
+        }
+
+        List<Plan> plans = new ArrayList<Plan>();
+        for (Map.Entry<Integer, Map<TimeSlot, List<Integer>>> doctor : staff.entrySet()) {
+            Plan plan = new Plan(doctor.getKey());
+            List<TimeSlot> used = new ArrayList<TimeSlot>();
+            for (Map.Entry<TimeSlot, List<Integer>> window : doctor.getValue().entrySet()) {
+                TimeSlot w = window.getKey();
+                boolean overlaps = false;
+                for (TimeSlot other : used)
+                    overlaps |= w.overlaps(other);
+                if (overlaps) { // the doctor can not be in two places, see doctor_slot of V004
+                    ++this._skippedWindows;
+                    continue;
+                }
+                used.add(w);
+                int[] sids = toArray(window.getValue());
+                int pph = perHour.get(doctor.getKey()).get(w);
+                int length = Math.max(1, 60 / pph);
+                // at most patient_per_hour slots in every hour of the window, counted from its start
+                for (int hour = w.getStart(); hour < w.getEnd(); hour += 60) {
+                    int end = Math.min(w.getEnd(), hour + 60);
+                    for (int start = hour, k = 0; k < pph && start + length <= end; start += length, ++k) {
+                        plan.slots.add(TimeSlot.of(start, start + length).toString());
+                        plan.staff.add(sids);
+                    }
+                }
+            }
+            if (!plan.slots.isEmpty()) plans.add(plan);
+        }
+        return plans;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; ++i)
+            array[i] = values.get(i);
+        return array;
+    }
+}
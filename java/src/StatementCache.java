@@ -0,0 +1,117 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.postgresql.PGStatement;
+
+/**
+ * This class keeps a bounded, least recently used cache of prepared
+ * statements for one physical connection.  Statements are keyed by their
+ * SQL text, so every call that issues the same query shape reuses the same
+ * PreparedStatement and, once the prepare threshold is reached, the same
+ * server side plan.
+ */
+
+public class StatementCache {
+    //default number of statements kept open per connection
+    public static final int DEFAULT_CAPACITY = 64;
+    //default number of executions before the driver switches to a server side prepare
+    public static final int DEFAULT_PREPARE_THRESHOLD = 1;
+
+    private final Connection _connection;
+    private final int _capacity;
+    private final int _prepareThreshold;
+    private final LinkedHashMap<String, PreparedStatement> _statements;
+    private long _hits = 0;
+    private long _misses = 0;
+
+    /**
+     * @param connection       the connection the statements are prepared on
+     * @param capacity         the maximum number of statements kept open
+     * @param prepareThreshold executions before a statement is server side prepared,
+     *                         0 disables server side prepares
+     */
+    public StatementCache(Connection connection, int capacity, int prepareThreshold) {
+        this._connection = connection;
+        this._capacity = capacity;
+        this._prepareThreshold = prepareThreshold;
+        // access ordered map, the eldest entry is the least recently used one
+        this._statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+    }
+
+    /**
+     * Method to return the cached statement for the given SQL text, preparing
+     * it on a miss.  The caller must not close the returned statement.
+     *
+     * @param sql the SQL text with '?' placeholders
+     * @return a prepared statement with its parameters cleared
+     * @throws java.sql.SQLException when the statement can not be prepared
+     */
+    public synchronized PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement stmt = this._statements.get(sql);
+        if (stmt != null && !stmt.isClosed()) {
+            this._hits++;
+            stmt.clearParameters();
+            return stmt;
+        }
+        this._misses++;
+        stmt = this._connection.prepareStatement(sql);
+        if (stmt.isWrapperFor(PGStatement.class)) {
+            stmt.unwrap(PGStatement.class).setPrepareThreshold(this._prepareThreshold);
+        }
+        this._statements.put(sql, stmt);
+        evict();
+        return stmt;
+    }
+
+    //closes the least recently used statements until the cache fits its capacity
+    private void evict() {
+        Iterator<Map.Entry<String, PreparedStatement>> it = this._statements.entrySet().iterator();
+        while (this._statements.size() > this._capacity && it.hasNext()) {
+            PreparedStatement eldest = it.next().getValue();
+            it.remove();
+            try {
+                eldest.close();
+            } catch (SQLException e) {
+                // ignored.
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return this._capacity;
+    }
+
+    public int getPrepareThreshold() {
+        return this._prepareThreshold;
+    }
+
+    public synchronized int size() {
+        return this._statements.size();
+    }
+
+    public synchronized long getHits() {
+        return this._hits;
+    }
+
+    public synchronized long getMisses() {
+        return this._misses;
+    }
+
+    /**
+     * Method to close every cached statement.
+     */
+    public synchronized void clear() {
+        for (PreparedStatement stmt : this._statements.values()) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                // ignored.
+            }
+        }
+        this._statements.clear();
+    }
+}
@@ -0,0 +1,84 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * This class checks the trigger maintained doctor_status_counts and
+ * doctor_hospital_status_counts tables of migration V002, which Q7 and Q8
+ * read, against a full recompute from appointment, has_appointment and
+ * searches, and rebuilds them when they drifted.
+ */
+
+public class StatusCounts {
+    //the counters as they would be recomputed from scratch
+    private static final String EXPECTED_DOCTOR_COUNTS =
+            "select h.doctor_id, coalesce(a.status, '') as status, count(*) as n" +
+            " from appointment a join has_appointment h on a.appnt_id = h.appt_id group by 1, 2";
+    private static final String EXPECTED_HOSPITAL_COUNTS =
+            "select h.doctor_id, s.hid, coalesce(a.status, '') as status, count(*) as n" +
+            " from appointment a join has_appointment h on a.appnt_id = h.appt_id join searches s on s.aid = a.appnt_id group by 1, 2, 3";
+
+    private static final String CHECK_DOCTOR_COUNTS =
+            "select coalesce(e.doctor_id, c.doctor_id), coalesce(e.status, c.status), coalesce(e.n, 0), coalesce(c.n, 0)" +
+            " from (" + EXPECTED_DOCTOR_COUNTS + ") e full join doctor_status_counts c" +
+            " on c.doctor_id = e.doctor_id and c.status = e.status" +
+            " where coalesce(e.n, 0) <> coalesce(c.n, 0) order by 1, 2;";
+    private static final String CHECK_HOSPITAL_COUNTS =
+            "select coalesce(e.doctor_id, c.doctor_id), coalesce(e.hid, c.hid), coalesce(e.status, c.status), coalesce(e.n, 0), coalesce(c.n, 0)" +
+            " from (" + EXPECTED_HOSPITAL_COUNTS + ") e full join doctor_hospital_status_counts c" +
+            " on c.doctor_id = e.doctor_id and c.hid = e.hid and c.status = e.status" +
+            " where coalesce(e.n, 0) <> coalesce(c.n, 0) order by 1, 2, 3;";
+
+    private final DBproject _esql;
+
+    public StatusCounts(DBproject esql) {
+        this._esql = esql;
+    }
+
+    /**
+     * Method to compare the counters with a full recompute and print every
+     * counter that differs.
+     *
+     * @return the number of counters that differ
+     * @throws java.sql.SQLException when the recompute failed
+     */
+    public int check() throws SQLException {
+        int mismatches = 0;
+        for (List<String> row : this._esql.executeQueryAndReturnResult(CHECK_DOCTOR_COUNTS)) {
+            this._esql.out.println("doctor " + row.get(0) + " status '" + row.get(1) + "': expected "
+                    + row.get(2) + " but counted " + row.get(3));
+            mismatches++;
+        }
+        for (List<String> row : this._esql.executeQueryAndReturnResult(CHECK_HOSPITAL_COUNTS)) {
+            this._esql.out.println("doctor " + row.get(0) + " hospital " + row.get(1) + " status '" + row.get(2)
+                    + "': expected " + row.get(3) + " but counted " + row.get(4));
+            mismatches++;
+        }
+        return mismatches;
+    }
+
+    /**
+     * Method to replace the counters with a full recompute.  The source
+     * tables are locked against writers until the rebuild commits.
+     *
+     * @throws java.sql.SQLException when the rebuild failed, it is rolled back
+     */
+    public void rebuild() throws SQLException {
+        Connection conn = this._esql.getConnection();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            this._esql.executeUpdate("LOCK TABLE appointment, has_appointment, searches IN SHARE MODE;");
+            this._esql.executeUpdate("DELETE FROM doctor_status_counts;");
+            this._esql.executeUpdate("INSERT INTO doctor_status_counts (doctor_id, status, n) " + EXPECTED_DOCTOR_COUNTS + ";");
+            this._esql.executeUpdate("DELETE FROM doctor_hospital_status_counts;");
+            this._esql.executeUpdate("INSERT INTO doctor_hospital_status_counts (doctor_id, hid, status, n) " + EXPECTED_HOSPITAL_COUNTS + ";");
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * This class is a time slot of an appointment, e.g. 8:00-10:00, parsed once
+ * from the VARCHAR(11) text of appointment.time_slot into its start and end
+ * minutes after midnight.  The database side of the same value is
+ * slot_range(adate, time_slot) of migration V004.
+ */
+
+public final class TimeSlot implements Comparable<TimeSlot> {
+    //start minute in the high half, end minute in the low half
+    private final int _minutes;
+
+    private TimeSlot(int start, int end) {
+        this._minutes = start << 16 | end;
+    }
+
+    /**
+     * Method to create the slot from start to end, in minutes after
+     * midnight.
+     */
+    public static TimeSlot of(int start, int end) {
+        if (start < 0 || end < start || end > 24 * 60) throw new IllegalArgumentException("Invalid time slot " + start + "-" + end);
+        return new TimeSlot(start, end);
+    }
+
+    /**
+     * Method to parse a H:MM-HH:MM or HH:MM-HH:MM slot.
+     *
+     * @return the slot, or null when the text is not a slot or the slot
+     *         ends before it starts
+     */
+    public static TimeSlot parse(String s) {
+        if (s == null) return null;
+        int dash = s.indexOf('-');
+        if (dash < 0) return null;
+        int start = minute(s, 0, dash);
+        int end = minute(s, dash + 1, s.length());
+        if (start < 0 || end < 0 || end < start) return null;
+        return new TimeSlot(start, end);
+    }
+
+    //minutes after midnight of H:MM or HH:MM in s[from, to), -1 when invalid
+    private static int minute(String s, int from, int to) {
+        int colon = to - 3;
+        if (colon - from < 1 || colon - from > 2 || s.charAt(colon) != ':') return -1;
+        int hours = 0;
+        for (int i = from; i < colon; ++i) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            hours = hours * 10 + (c - '0');
+        }
+        char m1 = s.charAt(colon + 1), m2 = s.charAt(colon + 2);
+        if (m1 < '0' || m1 > '5' || m2 < '0' || m2 > '9' || hours > 23) return -1;
+        return hours * 60 + (m1 - '0') * 10 + (m2 - '0');
+    }
+
+    public int getStart() {
+        return this._minutes >>> 16;
+    }
+
+    public int getEnd() {
+        return this._minutes & 0xffff;
+    }
+
+    /**
+     * Method to tell whether two slots of the same day share a minute, with
+     * the end minute excluded like tsrange's [start, end).
+     */
+    public boolean overlaps(TimeSlot other) {
+        return getStart() < other.getEnd() && other.getStart() < getEnd();
+    }
+
+    public int compareTo(TimeSlot other) {
+        return Integer.compare(this._minutes, other._minutes);
+    }
+
+    public boolean equals(Object o) {
+        return o instanceof TimeSlot && ((TimeSlot) o)._minutes == this._minutes;
+    }
+
+    public int hashCode() {
+        return this._minutes;
+    }
+
+    /**
+     * Method to format the slot as HH:MM-HH:MM, the form the menu asks for.
+     */
+    public String toString() {
+        return String.format("%02d:%02d-%02d:%02d", getStart() / 60, getStart() % 60, getEnd() / 60, getEnd() % 60);
+    }
+}
@@ -0,0 +1,174 @@
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class promotes waitlisted (WL) appointments.  When AC appointments
+ * are cancelled, or AV appointments open on a slot with a queue, the head
+ * of the slot's queue of migration V006 becomes AC.  The freed appointment
+ * is removed with its links, since the slot now belongs to the promoted
+ * one; a cancelled appointment with nobody waiting becomes AV again.
+ *
+ * A batch runs in one transaction of three round trips, the locks with the
+ * queue heads, the changes, and the commit, and each queue head is one
+ * index probe, whatever the size of the batch or of the queues.
+ */
+
+public class WaitlistEngine {
+    /**
+     * The outcome of a batch.
+     */
+    public static final class Released {
+        //the appointments freed, in id order; ids that were not AC or AV are left out
+        public final int[] ids;
+        //the WL appointment promoted on the slot of ids[i], or -1 when nobody was waiting
+        public final int[] promoted;
+
+        Released(int[] ids, int[] promoted) {
+            this.ids = ids;
+            this.promoted = promoted;
+        }
+    }
+
+    //the appointments to free, locked in id order so concurrent batches do not deadlock
+    static final String LOCK_APPOINTMENTS =
+            "select appnt_id, doctor_id, adate, time_slot from appointment INNER JOIN has_appointment on appointment.appnt_id = has_appointment.appt_id" +
+            " where appnt_id = any(?) and status = ? order by appnt_id for update of appointment;";
+    //the head of the queue of every slot locked above, one probe of waitlist_slot_idx each
+    static final String QUEUE_HEADS =
+            "select f.appt_id, w.appt_id from has_appointment f INNER JOIN appointment a on a.appnt_id = f.appt_id" +
+            " cross join lateral (select appt_id from waitlist where waitlist.doctor_id = f.doctor_id and waitlist.adate = a.adate" +
+            " and waitlist.time_slot = a.time_slot order by seq limit 1) w where f.appt_id = any(?) and a.status = ?;";
+    static final String DROP_SEARCHES =
+            "with gone as (delete from searches where aid = any(?) returning pid)" +
+            " update patient set number_of_appts = greatest(coalesce(number_of_appts, 0) - g.n, 0)" +
+            " from (select pid, count(*) as n from gone group by pid) g where patient.patient_id = g.pid;";
+    static final String DROP_SCHEDULES = "delete from schedules where appt_id = any(?);";
+    static final String DROP_HAS_APPOINTMENT = "delete from has_appointment where appt_id = any(?);";
+    static final String DROP_APPOINTMENT = "delete from appointment where appnt_id = any(?);";
+    static final String PROMOTE = "update appointment set status = 'AC' where appnt_id = any(?) and status = 'WL';";
+    static final String REOPEN = "update appointment set status = 'AV' where appnt_id = any(?);";
+
+    private final DBproject _esql;
+
+    public WaitlistEngine(DBproject esql) {
+        this._esql = esql;
+    }
+
+    /**
+     * Method to cancel AC appointments and hand each slot to the head of
+     * its queue, or make it AV when nobody waits.  The patients of the
+     * cancelled appointments have them taken off number_of_appts.
+     *
+     * @param ids the appointments to cancel
+     * @throws java.sql.SQLException when the batch failed, it is rolled back
+     */
+    public Released cancel(int[] ids) throws SQLException {
+        return release(ids, "AC");
+    }
+
+    /**
+     * Method to hand AV appointments to the head of the queue of their
+     * slot, e.g. after new slots were opened.  AV appointments of slots
+     * without a queue stay as they are.
+     *
+     * @param ids the AV appointments
+     * @throws java.sql.SQLException when the batch failed, it is rolled back
+     */
+    public Released fill(int[] ids) throws SQLException {
+        return release(ids, "AV");
+    }
+
+    private Released release(int[] ids, String status) throws SQLException {
+        Connection conn = this._esql.getConnection();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        List<List<String>> locked;
+        int[] freed;
+        int[] promoted;
+        try {
+            // the heads are read after the locks, in the same round trip
+            Array requested = this._esql.createIntArray(ids);
+            List<List<List<String>>> found = this._esql.executePipelined(Arrays.asList(LOCK_APPOINTMENTS, QUEUE_HEADS),
+                    Arrays.asList(new Object[]{requested, status}, new Object[]{requested, status}));
+            locked = found.get(0);
+            freed = new int[locked.size()];
+            for (int i = 0; i < freed.length; ++i)
+                freed[i] = Integer.parseInt(locked.get(i).get(0));
+            promoted = new int[freed.length];
+            Arrays.fill(promoted, -1);
+            if (freed.length == 0) {
+                conn.commit();
+                return new Released(freed, promoted);
+            }
+
+            Map<Integer, Integer> heads = new HashMap<Integer, Integer>();
+            for (List<String> row : found.get(1))
+                heads.put(Integer.parseInt(row.get(0)), Integer.parseInt(row.get(1)));
+            List<Integer> taken = new ArrayList<Integer>();
+            List<Integer> reopened = new ArrayList<Integer>();
+            for (int i = 0; i < freed.length; ++i) {
+                Integer head = heads.get(freed[i]);
+                if (head != null) {
+                    promoted[i] = head;
+                    taken.add(freed[i]);
+                } else {
+                    reopened.add(freed[i]);
+                }
+            }
+
+            // every change in one round trip, the freed appointments go first so the promoted ones get their doctor_slot of V004
+            List<String> changes = new ArrayList<String>();
+            List<Object[]> params = new ArrayList<Object[]>();
+            if (status.equals("AC")) {
+                changes.add(DROP_SEARCHES);
+                params.add(new Object[]{this._esql.createIntArray(freed)});
+            }
+            if (!taken.isEmpty()) {
+                Array takenArray = this._esql.createIntArray(toArray(taken));
+                for (String drop : status.equals("AV") ? new String[]{DROP_SEARCHES, DROP_SCHEDULES, DROP_HAS_APPOINTMENT, DROP_APPOINTMENT}
+                        : new String[]{DROP_SCHEDULES, DROP_HAS_APPOINTMENT, DROP_APPOINTMENT}) {
+                    changes.add(drop);
+                    params.add(new Object[]{takenArray});
+                }
+                changes.add(PROMOTE);
+                params.add(new Object[]{this._esql.createIntArray(toArray(new ArrayList<Integer>(heads.values())))});
+            }
+            if (status.equals("AC") && !reopened.isEmpty()) {
+                changes.add(REOPEN);
+                params.add(new Object[]{this._esql.createIntArray(toArray(reopened))});
+            }
+            if (!changes.isEmpty()) this._esql.executePipelined(changes, params);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        // after the commit, outside of the rollback above; the availability index follows the change feed
+        boolean changed = false;
+        for (int i = 0; i < freed.length; ++i) {
+            List<String> row = locked.get(i);
+            if (promoted[i] < 0 && status.equals("AV")) continue;
+            this._esql.getResultCache().invalidate(Integer.parseInt(row.get(1)), LocalDate.parse(row.get(2)));
+            changed = true;
+        }
+        if (changed) this._esql.getAvailabilityIndex().changed();
+        return new Released(freed, promoted);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; ++i)
+            array[i] = values.get(i);
+        return array;
+    }
+}
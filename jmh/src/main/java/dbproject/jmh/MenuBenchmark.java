@@ -0,0 +1,156 @@
+package dbproject.jmh;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * This class benchmarks every menu operation with JMH, one benchmark per
+ * operation, for throughput and sampled latency (p50, p99 and the other
+ * percentiles).  The calls go through MenuWorkload, which runs the real
+ * menu methods on generated clerk input instead of stdin, against the
+ * database of -Ddbproject.db, -Ddbproject.port and -Ddbproject.user
+ * (default $USER"_DB", $PGPORT and $USER) started with the postgresql/*.sh
+ * scripts.  Options 1 to 4 and 13 write to it, so use a scratch copy.
+ *
+ * The application is in the unnamed package, which JMH does not accept
+ * for benchmarks and a named package can not import, so its classes are
+ * looked up by name once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 1, time = 10)
+@Fork(1)
+public class MenuBenchmark {
+    private Object _pool;
+    private Object _workload;
+    //the operations of MenuWorkload by menu number
+    private final Map<Integer, Object> _operations = new HashMap<Integer, Object>();
+    private Method _newClerk;
+    private Method _call;
+    private Method _close;
+    //calls that reported an error, which the timings include
+    private final AtomicLong _errors = new AtomicLong();
+
+    /**
+     * The clerk of one benchmark thread, created on that thread.
+     */
+    @State(Scope.Thread)
+    public static class Clerk {
+        Object clerk;
+
+        @Setup(Level.Trial)
+        public void open(MenuBenchmark benchmark) throws ReflectiveOperationException {
+            this.clerk = benchmark._newClerk.invoke(benchmark._workload);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void open(BenchmarkParams params) throws ReflectiveOperationException {
+        String user = System.getProperty("dbproject.user", System.getenv("USER"));
+        String db = System.getProperty("dbproject.db", user + "_DB");
+        String port = System.getProperty("dbproject.port", System.getenv("PGPORT"));
+        Class<?> dbproject = Class.forName("DBproject");
+        Class<?> pool = Class.forName("ConnectionPool");
+        Class<?> workload = Class.forName("MenuWorkload");
+        Class<?> operation = Class.forName("MenuWorkload$Operation");
+        // one connection per benchmark thread, reads go to the standby of -Ddbproject.replica.port if set
+        this._pool = dbproject.getMethod("createPool", String.class, String.class, String.class, String.class, int.class)
+                .invoke(null, db, port, user, "", params.getThreads());
+        dbproject.getMethod("startReplica", String.class, String.class, String.class).invoke(null, db, user, "");
+        this._workload = workload.getConstructor(pool).newInstance(this._pool);
+        workload.getMethod("sample").invoke(this._workload);
+        for (Object op : (List<?>) workload.getMethod("getOperations").invoke(this._workload))
+            this._operations.put(operation.getField("number").getInt(op), op);
+        this._newClerk = workload.getMethod("newClerk");
+        this._call = Class.forName("MenuWorkload$Clerk").getMethod("call", operation);
+        this._close = pool.getMethod("close");
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws ReflectiveOperationException {
+        if (this._errors.get() > 0) System.out.println(this._errors.get() + " call(s) reported an error");
+        this._close.invoke(this._pool);
+    }
+
+    private boolean call(Clerk clerk, int number) throws Throwable {
+        try {
+            boolean ok = (Boolean) this._call.invoke(clerk.clerk, this._operations.get(number));
+            if (!ok) this._errors.incrementAndGet();
+            return ok;
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Benchmark
+    public boolean addDoctor(Clerk clerk) throws Throwable {
+        return call(clerk, 1);
+    }
+
+    @Benchmark
+    public boolean addPatient(Clerk clerk) throws Throwable {
+        return call(clerk, 2);
+    }
+
+    @Benchmark
+    public boolean addAppointment(Clerk clerk) throws Throwable {
+        return call(clerk, 3);
+    }
+
+    @Benchmark
+    public boolean makeAppointment(Clerk clerk) throws Throwable {
+        return call(clerk, 4);
+    }
+
+    @Benchmark
+    public boolean listAppointmentsOfDoctor(Clerk clerk) throws Throwable {
+        return call(clerk, 5);
+    }
+
+    @Benchmark
+    public boolean listAvailableAppointmentsOfDepartment(Clerk clerk) throws Throwable {
+        return call(clerk, 6);
+    }
+
+    @Benchmark
+    public boolean listStatusNumberOfAppointmentsPerDoctor(Clerk clerk) throws Throwable {
+        return call(clerk, 7);
+    }
+
+    @Benchmark
+    public boolean findPatientsCountWithStatus(Clerk clerk) throws Throwable {
+        return call(clerk, 8);
+    }
+
+    //bulk cancellations, 20 appointments per call
+    @Benchmark
+    public boolean cancelAppointments(Clerk clerk) throws Throwable {
+        return call(clerk, 13);
+    }
+
+    @Benchmark
+    public boolean searchPatients(Clerk clerk) throws Throwable {
+        return call(clerk, 14);
+    }
+}
@@ -0,0 +1,24 @@
+#! /bin/bash
+# hot standby of the database started by startPostgreSQL.sh, which must be running
+folder=/tmp/$USER
+export REPLICA_PGDATA=$folder/myReplica/data
+export REPLICA_PGSOCKETS=$folder/myReplica/sockets
+export REPLICA_PGPORT=${REPLICA_PGPORT:-9998}
+
+echo $folder
+
+#Clear folder
+rm -rf $folder/myReplica
+
+#Initialize folders
+mkdir $folder/myReplica
+mkdir $folder/myReplica/sockets
+sleep 1
+
+#Copy the primary, -R makes it a standby streaming from the primary
+pg_basebackup -h localhost -p $PGPORT -D $REPLICA_PGDATA -R -X stream
+chmod 700 $REPLICA_PGDATA
+
+sleep 1
+#Start folder
+pg_ctl -o "-c unix_socket_directories=$REPLICA_PGSOCKETS -p $REPLICA_PGPORT -c hot_standby=on" -D $REPLICA_PGDATA -l $folder/replica_logfile start
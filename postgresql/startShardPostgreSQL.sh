@@ -0,0 +1,43 @@
+#! /bin/bash
+# one more database cluster for the shard map of -Ddbproject.shards
+# usage: source ./postgresql/startShardPostgreSQL.sh <port> <shard number, 1 and up>
+folder=/tmp/$USER
+export SHARD_PGPORT=$1
+export SHARD_PGDATA=$folder/myShard$1/data
+export SHARD_PGSOCKETS=$folder/myShard$1/sockets
+
+echo $folder
+
+#Clear folder
+rm -rf $folder/myShard$1
+
+#Initialize folders
+mkdir -p $folder/myShard$1
+mkdir $folder/myShard$1/data
+mkdir $folder/myShard$1/sockets
+sleep 1
+
+#Initialize DB
+initdb -D $SHARD_PGDATA
+
+sleep 1
+#Start folder
+pg_ctl -o "-c unix_socket_directories=$SHARD_PGSOCKETS -p $SHARD_PGPORT" -D $SHARD_PGDATA -l $folder/shard$1_logfile start
+sleep 2
+
+echo "creating db named ... "$USER"_DB"
+createdb -h localhost -p $SHARD_PGPORT $USER"_DB"
+
+echo "Copying csv files ... "
+cp ./data/*.csv $SHARD_PGDATA/.
+
+echo "Initializing tables .. "
+psql -h localhost -p $SHARD_PGPORT $USER"_DB" < ./sql/create.sql
+
+#The bundled appointments stay on the first database, the shard keeps the reference tables only
+psql -h localhost -p $SHARD_PGPORT $USER"_DB" -c "TRUNCATE searches, schedules, has_appointment, appointment, patient CASCADE;"
+
+#Ids of this shard start at <shard number> * 100000000, so they never meet the ids of another shard
+for seq in doctor_id_seq patient_id_seq appointment_id_seq; do
+	psql -h localhost -p $SHARD_PGPORT $USER"_DB" -c "SELECT setval('$seq', $2 * 100000000);"
+done
@@ -1,3 +1,12 @@
+-- what sql/migrations made of the old tables, so that -migrate applies it again
+DROP TABLE IF EXISTS schema_version;
+DROP TABLE IF EXISTS doctor_status_counts, doctor_hospital_status_counts, doctor_slot, waitlist, slot_generation CASCADE;
+DROP TABLE IF EXISTS appointment_archive, has_appointment_archive, searches_archive, schedules_archive CASCADE;
+DROP TABLE IF EXISTS doctor_status_counts_archive, doctor_hospital_status_counts_archive CASCADE;
+DROP FUNCTION IF EXISTS has_appointment_inserted(), has_appointment_deleted(), searches_inserted(), searches_deleted(),
+	appointment_status_updated(), availability_linked(), availability_unlinked(), availability_updated(),
+	doctor_slot_linked(), doctor_slot_updated(), waitlist_linked(), waitlist_updated(), slot_range(DATE, TEXT) CASCADE;
+
 DROP TABLE IF EXISTS Hospital CASCADE;--OK
 DROP TABLE IF EXISTS Patient CASCADE;--OK
 DROP TABLE IF EXISTS Department CASCADE;--OK
@@ -8,6 +17,9 @@ DROP TABLE IF EXISTS has_appointment CASCADE;--OK
 DROP TABLE IF EXISTS request_maintenance CASCADE;--OK
 DROP TABLE IF EXISTS searches CASCADE;--OK
 DROP TABLE IF EXISTS schedules CASCADE;--OK
+DROP SEQUENCE IF EXISTS doctor_id_seq;
+DROP SEQUENCE IF EXISTS patient_id_seq;
+DROP SEQUENCE IF EXISTS appointment_id_seq;
 
 
 -------------
@@ -221,3 +233,15 @@ COPY has_appointment (
 FROM 'has_appointment.csv'
 WITH DELIMITER ',';
 
+---------------
+---SEQUENCES---
+---------------
+-- Key blocks for the Java IdAllocator: every nextval reserves the 1000 ids
+-- ending at the returned value, so INCREMENT BY must match its block size.
+CREATE SEQUENCE doctor_id_seq INCREMENT BY 1000 MINVALUE 0;
+CREATE SEQUENCE patient_id_seq INCREMENT BY 1000 MINVALUE 0;
+CREATE SEQUENCE appointment_id_seq INCREMENT BY 1000 MINVALUE 0;
+
+SELECT setval('doctor_id_seq', (SELECT coalesce(max(doctor_ID), 0) FROM Doctor));
+SELECT setval('patient_id_seq', (SELECT coalesce(max(patient_ID), 0) FROM Patient));
+SELECT setval('appointment_id_seq', (SELECT coalesce(max(appnt_ID), 0) FROM Appointment));
@@ -0,0 +1,27 @@
+-- Secondary indexes for the menu queries of java/src/DBproject.java.
+-- create.sql only declares primary keys, so every lookup below was a
+-- sequential scan.
+
+-- Q5 ListAppointmentsOfDoctor and the MakeAppointment lookup start from a
+-- doctor; the primary key of has_appointment leads with appt_id.
+CREATE INDEX has_appointment_doctor_idx ON has_appointment (doctor_id, appt_id);
+
+-- Q6 ListAvailableAppointmentsOfDepartment: only AV rows of one date.
+CREATE INDEX appointment_available_adate_idx ON appointment (adate, appnt_id) WHERE status = 'AV';
+
+-- Q5, Q7 and Q8 filter on status and dates and join on appnt_id; the
+-- trailing columns let the status filters run as index only scans.
+CREATE INDEX appointment_status_adate_idx ON appointment (status, adate, appnt_id);
+
+-- Q6 resolves a department by name and its doctors by did.
+CREATE INDEX department_name_idx ON department (name, dept_ID);
+CREATE INDEX doctor_did_idx ON doctor (did, doctor_ID);
+
+-- Q8 joins searches on the appointment and filters on the hospital.
+CREATE INDEX searches_aid_idx ON searches (aid, hid);
+
+ANALYZE appointment;
+ANALYZE has_appointment;
+ANALYZE doctor;
+ANALYZE department;
+ANALYZE searches;
@@ -0,0 +1,151 @@
+-- Counters behind Q7 ListStatusNumberOfAppointmentsPerDoctor and Q8
+-- FindPatientsCountWithStatus of java/src/DBproject.java.  Both used to
+-- aggregate the whole appointment/has_appointment(/searches) join on every
+-- call; they now read one row per doctor (and hospital) from these tables.
+--
+-- doctor_status_counts.n is the number of has_appointment rows of the
+-- doctor whose appointment has the status.  doctor_hospital_status_counts.n
+-- is the number of (has_appointment, searches) pairs on the same
+-- appointment, per doctor, searching hospital and status.  A NULL status is
+-- stored as ''.  Rows are not deleted when n drops to 0.
+--
+-- The statement level triggers below keep both tables up to date from the
+-- transition tables, so a COPY or a multi-row insert updates each counter
+-- once.  Two cases are not covered and need StatusCounts.rebuild(), which
+-- `DBproject ... -checkcounts` runs when the counters are off:
+--   * a has_appointment row and a searches row of the same appointment
+--     written by two concurrent transactions, e.g. a parallel -load;
+--   * one statement that links an appointment and also changes its status.
+
+CREATE TABLE doctor_status_counts
+(
+	doctor_id INTEGER NOT NULL,
+	status VARCHAR(2) NOT NULL,
+	n BIGINT NOT NULL,
+	PRIMARY KEY (doctor_id, status)
+);
+
+CREATE TABLE doctor_hospital_status_counts
+(
+	doctor_id INTEGER NOT NULL,
+	hid INTEGER NOT NULL,
+	status VARCHAR(2) NOT NULL,
+	n BIGINT NOT NULL,
+	PRIMARY KEY (doctor_id, hid, status)
+);
+CREATE INDEX doctor_hospital_status_counts_hid_idx ON doctor_hospital_status_counts (hid, status, doctor_id);
+
+-- transition tables are only visible inside the trigger function itself,
+-- so every trigger has its own function
+
+-- has_appointment rows added or removed
+CREATE FUNCTION has_appointment_inserted() RETURNS trigger AS $$
+BEGIN
+	INSERT INTO doctor_status_counts (doctor_id, status, n)
+		SELECT h.doctor_id, coalesce(a.status, ''), count(*)
+		FROM new_rows h JOIN appointment a ON a.appnt_id = h.appt_id
+		GROUP BY 1, 2 ORDER BY 1, 2
+		ON CONFLICT (doctor_id, status) DO UPDATE SET n = doctor_status_counts.n + excluded.n;
+	INSERT INTO doctor_hospital_status_counts (doctor_id, hid, status, n)
+		SELECT h.doctor_id, s.hid, coalesce(a.status, ''), count(*)
+		FROM new_rows h JOIN appointment a ON a.appnt_id = h.appt_id JOIN searches s ON s.aid = h.appt_id
+		GROUP BY 1, 2, 3 ORDER BY 1, 2, 3
+		ON CONFLICT (doctor_id, hid, status) DO UPDATE SET n = doctor_hospital_status_counts.n + excluded.n;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION has_appointment_deleted() RETURNS trigger AS $$
+BEGIN
+	INSERT INTO doctor_status_counts (doctor_id, status, n)
+		SELECT h.doctor_id, coalesce(a.status, ''), -count(*)
+		FROM old_rows h JOIN appointment a ON a.appnt_id = h.appt_id
+		GROUP BY 1, 2 ORDER BY 1, 2
+		ON CONFLICT (doctor_id, status) DO UPDATE SET n = doctor_status_counts.n + excluded.n;
+	INSERT INTO doctor_hospital_status_counts (doctor_id, hid, status, n)
+		SELECT h.doctor_id, s.hid, coalesce(a.status, ''), -count(*)
+		FROM old_rows h JOIN appointment a ON a.appnt_id = h.appt_id JOIN searches s ON s.aid = h.appt_id
+		GROUP BY 1, 2, 3 ORDER BY 1, 2, 3
+		ON CONFLICT (doctor_id, hid, status) DO UPDATE SET n = doctor_hospital_status_counts.n + excluded.n;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- searches rows added or removed
+CREATE FUNCTION searches_inserted() RETURNS trigger AS $$
+BEGIN
+	INSERT INTO doctor_hospital_status_counts (doctor_id, hid, status, n)
+		SELECT h.doctor_id, s.hid, coalesce(a.status, ''), count(*)
+		FROM new_rows s JOIN appointment a ON a.appnt_id = s.aid JOIN has_appointment h ON h.appt_id = s.aid
+		GROUP BY 1, 2, 3 ORDER BY 1, 2, 3
+		ON CONFLICT (doctor_id, hid, status) DO UPDATE SET n = doctor_hospital_status_counts.n + excluded.n;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION searches_deleted() RETURNS trigger AS $$
+BEGIN
+	INSERT INTO doctor_hospital_status_counts (doctor_id, hid, status, n)
+		SELECT h.doctor_id, s.hid, coalesce(a.status, ''), -count(*)
+		FROM old_rows s JOIN appointment a ON a.appnt_id = s.aid JOIN has_appointment h ON h.appt_id = s.aid
+		GROUP BY 1, 2, 3 ORDER BY 1, 2, 3
+		ON CONFLICT (doctor_id, hid, status) DO UPDATE SET n = doctor_hospital_status_counts.n + excluded.n;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- an appointment status change moves the counts of all its links from the
+-- old status to the new one
+CREATE FUNCTION appointment_status_updated() RETURNS trigger AS $$
+BEGIN
+	WITH changes AS (
+		SELECT o.appnt_id, d.status, d.sign
+		FROM old_rows o JOIN new_rows n ON n.appnt_id = o.appnt_id
+		CROSS JOIN LATERAL (VALUES (coalesce(o.status, ''), -1), (coalesce(n.status, ''), 1)) d (status, sign)
+		WHERE o.status IS DISTINCT FROM n.status
+	)
+	INSERT INTO doctor_status_counts (doctor_id, status, n)
+		SELECT h.doctor_id, c.status, sum(c.sign)
+		FROM changes c JOIN has_appointment h ON h.appt_id = c.appnt_id
+		GROUP BY 1, 2 ORDER BY 1, 2
+		ON CONFLICT (doctor_id, status) DO UPDATE SET n = doctor_status_counts.n + excluded.n;
+	IF FOUND THEN
+		WITH changes AS (
+			SELECT o.appnt_id, d.status, d.sign
+			FROM old_rows o JOIN new_rows n ON n.appnt_id = o.appnt_id
+			CROSS JOIN LATERAL (VALUES (coalesce(o.status, ''), -1), (coalesce(n.status, ''), 1)) d (status, sign)
+			WHERE o.status IS DISTINCT FROM n.status
+		)
+		INSERT INTO doctor_hospital_status_counts (doctor_id, hid, status, n)
+			SELECT h.doctor_id, s.hid, c.status, sum(c.sign)
+			FROM changes c JOIN has_appointment h ON h.appt_id = c.appnt_id JOIN searches s ON s.aid = c.appnt_id
+			GROUP BY 1, 2, 3 ORDER BY 1, 2, 3
+			ON CONFLICT (doctor_id, hid, status) DO UPDATE SET n = doctor_hospital_status_counts.n + excluded.n;
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER has_appointment_counts_insert AFTER INSERT ON has_appointment
+	REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE has_appointment_inserted();
+CREATE TRIGGER has_appointment_counts_delete AFTER DELETE ON has_appointment
+	REFERENCING OLD TABLE AS old_rows FOR EACH STATEMENT EXECUTE PROCEDURE has_appointment_deleted();
+CREATE TRIGGER searches_counts_insert AFTER INSERT ON searches
+	REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE searches_inserted();
+CREATE TRIGGER searches_counts_delete AFTER DELETE ON searches
+	REFERENCING OLD TABLE AS old_rows FOR EACH STATEMENT EXECUTE PROCEDURE searches_deleted();
+CREATE TRIGGER appointment_counts_update AFTER UPDATE ON appointment
+	REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE appointment_status_updated();
+
+-- initial counts, writers wait until the migration commits
+LOCK TABLE appointment, has_appointment, searches IN SHARE MODE;
+
+INSERT INTO doctor_status_counts (doctor_id, status, n)
+	SELECT h.doctor_id, coalesce(a.status, ''), count(*)
+	FROM appointment a JOIN has_appointment h ON a.appnt_id = h.appt_id
+	GROUP BY 1, 2;
+
+INSERT INTO doctor_hospital_status_counts (doctor_id, hid, status, n)
+	SELECT h.doctor_id, s.hid, coalesce(a.status, ''), count(*)
+	FROM appointment a JOIN has_appointment h ON a.appnt_id = h.appt_id JOIN searches s ON s.aid = a.appnt_id
+	GROUP BY 1, 2, 3;
@@ -0,0 +1,72 @@
+-- Change feed of the in-JVM AvailabilityIndex of java/src: every
+-- committed change to the set of AV appointments linked to a doctor is
+-- sent on the 'availability' channel as
+--   +,<appnt_id>,<dept_id>,<adate>,<time_slot>   the appointment became available
+--   -,<appnt_id>,<dept_id>,<adate>,<time_slot>   it is no longer available
+-- A statement changing more than 100 of them, e.g. a bulk load, sends a
+-- single 'reload' instead and the listeners rebuild their index.
+-- NOTIFY is transactional, so rolled back changes are never sent.
+
+CREATE FUNCTION availability_linked() RETURNS trigger AS $$
+DECLARE
+	changed BIGINT;
+BEGIN
+	SELECT count(*) INTO changed FROM new_rows h JOIN appointment a ON a.appnt_id = h.appt_id WHERE a.status = 'AV';
+	IF changed > 100 THEN
+		PERFORM pg_notify('availability', 'reload');
+	ELSIF changed > 0 THEN
+		PERFORM pg_notify('availability', concat_ws(',', '+', a.appnt_id, d.did, a.adate, a.time_slot))
+		FROM new_rows h JOIN appointment a ON a.appnt_id = h.appt_id JOIN doctor d ON d.doctor_ID = h.doctor_id
+		WHERE a.status = 'AV';
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION availability_unlinked() RETURNS trigger AS $$
+DECLARE
+	changed BIGINT;
+BEGIN
+	SELECT count(*) INTO changed FROM old_rows h JOIN appointment a ON a.appnt_id = h.appt_id WHERE a.status = 'AV';
+	IF changed > 100 THEN
+		PERFORM pg_notify('availability', 'reload');
+	ELSIF changed > 0 THEN
+		PERFORM pg_notify('availability', concat_ws(',', '-', a.appnt_id, d.did, a.adate, a.time_slot))
+		FROM old_rows h JOIN appointment a ON a.appnt_id = h.appt_id JOIN doctor d ON d.doctor_ID = h.doctor_id
+		WHERE a.status = 'AV';
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- a status change to or from AV, or a moved AV appointment, of a linked appointment
+CREATE FUNCTION availability_updated() RETURNS trigger AS $$
+DECLARE
+	changed BIGINT;
+BEGIN
+	SELECT count(*) INTO changed
+	FROM old_rows o JOIN new_rows n ON n.appnt_id = o.appnt_id JOIN has_appointment h ON h.appt_id = n.appnt_id
+	WHERE (o.status = 'AV' OR n.status = 'AV')
+		AND (o.status, o.adate, o.time_slot) IS DISTINCT FROM (n.status, n.adate, n.time_slot);
+	IF changed > 100 THEN
+		PERFORM pg_notify('availability', 'reload');
+	ELSIF changed > 0 THEN
+		PERFORM pg_notify('availability', concat_ws(',', '-', o.appnt_id, d.did, o.adate, o.time_slot))
+		FROM old_rows o JOIN new_rows n ON n.appnt_id = o.appnt_id
+		JOIN has_appointment h ON h.appt_id = o.appnt_id JOIN doctor d ON d.doctor_ID = h.doctor_id
+		WHERE o.status = 'AV' AND (o.status, o.adate, o.time_slot) IS DISTINCT FROM (n.status, n.adate, n.time_slot);
+		PERFORM pg_notify('availability', concat_ws(',', '+', n.appnt_id, d.did, n.adate, n.time_slot))
+		FROM old_rows o JOIN new_rows n ON n.appnt_id = o.appnt_id
+		JOIN has_appointment h ON h.appt_id = n.appnt_id JOIN doctor d ON d.doctor_ID = h.doctor_id
+		WHERE n.status = 'AV' AND (o.status, o.adate, o.time_slot) IS DISTINCT FROM (n.status, n.adate, n.time_slot);
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER has_appointment_availability_insert AFTER INSERT ON has_appointment
+	REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE availability_linked();
+CREATE TRIGGER has_appointment_availability_delete AFTER DELETE ON has_appointment
+	REFERENCING OLD TABLE AS old_rows FOR EACH STATEMENT EXECUTE PROCEDURE availability_unlinked();
+CREATE TRIGGER appointment_availability_update AFTER UPDATE ON appointment
+	REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE availability_updated();
@@ -0,0 +1,78 @@
+-- Typed time slots.  appointment.time_slot stays the 'H:MM-HH:MM' text
+-- the menu and the csv files use; slot_range() turns it, with adate, into
+-- a tsrange, so overlap and range questions run as GiST index probes
+-- instead of string comparisons.  Slots that do not parse give NULL; a
+-- slot ending before it starts is rejected on insert by the index below.
+--
+-- doctor_slot holds the range of every appointment linked to a doctor,
+-- except WL ones, which share the slot of the AC appointment they wait
+-- for.  Its exclusion constraint makes the database reject a second
+-- appointment of a doctor overlapping an existing one, whichever client
+-- writes it.  Triggers keep it up to date; -load copies has_appointment
+-- after appointment, so the insert trigger sees every slot.
+--
+-- request_maintenance.time_slot has no date and no doctor overlap rule,
+-- so it is left as text.
+
+CREATE EXTENSION IF NOT EXISTS btree_gist;
+
+CREATE FUNCTION slot_range(adate DATE, time_slot TEXT) RETURNS tsrange AS $$
+	SELECT CASE WHEN time_slot ~ '^([01]?[0-9]|2[0-3]):[0-5][0-9]-([01]?[0-9]|2[0-3]):[0-5][0-9]$'
+		THEN tsrange(adate + split_part(time_slot, '-', 1)::time, adate + split_part(time_slot, '-', 2)::time)
+	END;
+$$ LANGUAGE sql IMMUTABLE;
+
+-- "which appointments overlap 9:00-11:00 on this date"
+CREATE INDEX appointment_slot_idx ON appointment USING gist (slot_range(adate, time_slot));
+
+CREATE TABLE doctor_slot
+(
+	appt_id INTEGER NOT NULL,
+	doctor_id INTEGER NOT NULL,
+	slot tsrange NOT NULL,
+	PRIMARY KEY (appt_id, doctor_id),
+	FOREIGN KEY (appt_id, doctor_id) REFERENCES has_appointment(appt_id, doctor_id) ON DELETE CASCADE,
+	EXCLUDE USING gist (doctor_id WITH =, slot WITH &&)
+);
+
+-- transition tables are only visible inside the trigger function itself,
+-- so every trigger has its own function
+
+CREATE FUNCTION doctor_slot_linked() RETURNS trigger AS $$
+BEGIN
+	INSERT INTO doctor_slot (appt_id, doctor_id, slot)
+		SELECT h.appt_id, h.doctor_id, slot_range(a.adate, a.time_slot)
+		FROM new_rows h JOIN appointment a ON a.appnt_id = h.appt_id
+		WHERE a.status IS DISTINCT FROM 'WL' AND slot_range(a.adate, a.time_slot) IS NOT NULL;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- a moved appointment, or one entering or leaving WL; other updates, e.g.
+-- AV to AC bookings, leave the slot as it is
+CREATE FUNCTION doctor_slot_updated() RETURNS trigger AS $$
+BEGIN
+	DELETE FROM doctor_slot s USING old_rows o JOIN new_rows n ON n.appnt_id = o.appnt_id
+		WHERE s.appt_id = o.appnt_id
+			AND (o.adate, o.time_slot, o.status IS NOT DISTINCT FROM 'WL') IS DISTINCT FROM (n.adate, n.time_slot, n.status IS NOT DISTINCT FROM 'WL');
+	INSERT INTO doctor_slot (appt_id, doctor_id, slot)
+		SELECT h.appt_id, h.doctor_id, slot_range(n.adate, n.time_slot)
+		FROM old_rows o JOIN new_rows n ON n.appnt_id = o.appnt_id JOIN has_appointment h ON h.appt_id = n.appnt_id
+		WHERE (o.adate, o.time_slot, o.status IS NOT DISTINCT FROM 'WL') IS DISTINCT FROM (n.adate, n.time_slot, n.status IS NOT DISTINCT FROM 'WL')
+			AND n.status IS DISTINCT FROM 'WL' AND slot_range(n.adate, n.time_slot) IS NOT NULL;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER has_appointment_doctor_slot_insert AFTER INSERT ON has_appointment
+	REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE doctor_slot_linked();
+CREATE TRIGGER appointment_doctor_slot_update AFTER UPDATE ON appointment
+	REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE doctor_slot_updated();
+
+INSERT INTO doctor_slot (appt_id, doctor_id, slot)
+	SELECT h.appt_id, h.doctor_id, slot_range(a.adate, a.time_slot)
+	FROM has_appointment h JOIN appointment a ON a.appnt_id = h.appt_id
+	WHERE a.status IS DISTINCT FROM 'WL' AND slot_range(a.adate, a.time_slot) IS NOT NULL;
+
+ANALYZE appointment;
+ANALYZE doctor_slot;
@@ -0,0 +1,65 @@
+-- Cold storage for past (PA) appointments, filled by java/src/Archiver.java.
+-- Most appointment rows are PA, and the live tables keep only the recent
+-- ones, so the menu queries and their indexes cover a small working set.
+--
+-- appointment itself is not partitioned: a unique key of a partitioned
+-- table must include the partition key, and searches, schedules and
+-- has_appointment reference appointment(appnt_ID) alone.  The archive
+-- tables carry no foreign keys and are partitioned by adate instead, one
+-- partition per year, created by the archiver when it first moves a row of
+-- that year.
+--
+-- The archive counters hold the doctor_status_counts and
+-- doctor_hospital_status_counts of migration V002 for the archived rows,
+-- so Q7 and Q8 can add them on request.
+
+CREATE TABLE appointment_archive
+(
+	appnt_ID INTEGER NOT NULL,
+	adate DATE NOT NULL,
+	time_slot VARCHAR(11),
+	status _STATUS,
+	PRIMARY KEY (appnt_ID, adate)
+) PARTITION BY RANGE (adate);
+
+CREATE TABLE has_appointment_archive
+(
+	appt_id INTEGER NOT NULL,
+	doctor_id INTEGER NOT NULL,
+	adate DATE NOT NULL,
+	PRIMARY KEY (appt_id, doctor_id, adate)
+) PARTITION BY RANGE (adate);
+
+CREATE TABLE searches_archive
+(
+	hid INTEGER NOT NULL,
+	pid INTEGER NOT NULL,
+	aid INTEGER NOT NULL,
+	PRIMARY KEY (hid, pid, aid)
+);
+
+CREATE TABLE schedules_archive
+(
+	appt_id INTEGER NOT NULL,
+	staff_id INTEGER NOT NULL,
+	PRIMARY KEY (appt_id, staff_id)
+);
+
+CREATE TABLE doctor_status_counts_archive
+(
+	doctor_id INTEGER NOT NULL,
+	status VARCHAR(2) NOT NULL,
+	n BIGINT NOT NULL,
+	PRIMARY KEY (doctor_id, status)
+);
+
+CREATE TABLE doctor_hospital_status_counts_archive
+(
+	doctor_id INTEGER NOT NULL,
+	hid INTEGER NOT NULL,
+	status VARCHAR(2) NOT NULL,
+	n BIGINT NOT NULL,
+	PRIMARY KEY (doctor_id, hid, status)
+);
+CREATE INDEX doctor_hospital_status_counts_archive_hid_idx ON doctor_hospital_status_counts_archive (hid, status, doctor_id);
+
@@ -0,0 +1,63 @@
+-- FIFO queues of the WL appointments of java/src/WaitlistEngine.java, one
+-- queue per (doctor, date, time slot).  seq orders a queue, so its head is
+-- one probe of waitlist_slot_idx instead of a scan of appointment.
+--
+-- Triggers keep the queues in step with the appointments: a WL appointment
+-- joins the back of its queue when it is linked to a doctor, and leaves it
+-- when it is unlinked or its status changes.  An appointment moved to
+-- another date or slot goes to the back of the new queue.
+
+CREATE TABLE waitlist
+(
+	seq BIGSERIAL NOT NULL,
+	appt_id INTEGER NOT NULL,
+	doctor_id INTEGER NOT NULL,
+	adate DATE NOT NULL,
+	time_slot VARCHAR(11) NOT NULL,
+	PRIMARY KEY (appt_id, doctor_id),
+	FOREIGN KEY (appt_id, doctor_id) REFERENCES has_appointment(appt_id, doctor_id) ON DELETE CASCADE
+);
+CREATE INDEX waitlist_slot_idx ON waitlist (doctor_id, adate, time_slot, seq);
+
+-- transition tables are only visible inside the trigger function itself,
+-- so every trigger has its own function
+
+CREATE FUNCTION waitlist_linked() RETURNS trigger AS $$
+BEGIN
+	INSERT INTO waitlist (appt_id, doctor_id, adate, time_slot)
+		SELECT h.appt_id, h.doctor_id, a.adate, a.time_slot
+		FROM new_rows h JOIN appointment a ON a.appnt_id = h.appt_id
+		WHERE a.status = 'WL' AND a.time_slot IS NOT NULL
+		ORDER BY h.appt_id;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION waitlist_updated() RETURNS trigger AS $$
+BEGIN
+	DELETE FROM waitlist w USING new_rows n
+		WHERE w.appt_id = n.appnt_id
+			AND (n.status IS DISTINCT FROM 'WL' OR (n.adate, n.time_slot) IS DISTINCT FROM (w.adate, w.time_slot));
+	INSERT INTO waitlist (appt_id, doctor_id, adate, time_slot)
+		SELECT h.appt_id, h.doctor_id, n.adate, n.time_slot
+		FROM new_rows n JOIN has_appointment h ON h.appt_id = n.appnt_id
+		WHERE n.status = 'WL' AND n.time_slot IS NOT NULL
+			AND NOT EXISTS (SELECT 1 FROM waitlist w WHERE w.appt_id = h.appt_id AND w.doctor_id = h.doctor_id)
+		ORDER BY h.appt_id;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER has_appointment_waitlist_insert AFTER INSERT ON has_appointment
+	REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE waitlist_linked();
+CREATE TRIGGER appointment_waitlist_update AFTER UPDATE ON appointment
+	REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE waitlist_updated();
+
+-- the WL appointments there are, oldest first
+INSERT INTO waitlist (appt_id, doctor_id, adate, time_slot)
+	SELECT h.appt_id, h.doctor_id, a.adate, a.time_slot
+	FROM has_appointment h JOIN appointment a ON a.appnt_id = h.appt_id
+	WHERE a.status = 'WL' AND a.time_slot IS NOT NULL
+	ORDER BY h.appt_id;
+
+ANALYZE waitlist;
@@ -0,0 +1,16 @@
+-- Progress of java/src/SlotGenerator.java, which opens the appointment
+-- slots of every doctor of request_maintenance a week at a time.  A doctor
+-- has all slots up to generated_through; the next run starts the day after,
+-- so every run only adds the days that came into the horizon since.
+--
+-- A week is claimed by moving generated_through from the value the
+-- generator read, in the same statement that inserts the week's rows, so
+-- two generators running at once never open the same week twice.
+
+CREATE TABLE slot_generation
+(
+	doctor_id INTEGER NOT NULL,
+	generated_through DATE NOT NULL,
+	PRIMARY KEY (doctor_id),
+	FOREIGN KEY (doctor_id) REFERENCES Doctor(doctor_ID)
+);
@@ -0,0 +1,11 @@
+-- Fuzzy patient search of java/src/PatientSearch.java, so a returning
+-- patient is found by a misspelt name or address instead of being added
+-- again.  The trigram GIN indexes answer lower(name) % ? and
+-- lower(address) % ?, and LIKE/ILIKE patterns, without scanning patient.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX patient_name_trgm_idx ON patient USING gin (lower(name) gin_trgm_ops);
+CREATE INDEX patient_address_trgm_idx ON patient USING gin (lower(address) gin_trgm_ops);
+
+ANALYZE patient;